@@ -2,19 +2,27 @@ package controlador;
 
 import dao.UsuarioDAO;
 
+import java.lang.management.ManagementFactory;
 import java.time.LocalDate;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 
 import dao.ContactoIndividualDAO;
 import dao.DAOException;
 import dao.FactoriaDAO;
+import dao.FactoriaDAODiferida;
 import dao.GrupoDAO;
 import dao.MensajeDAO;
+import dominio.BusquedaMensajes;
 import dominio.Usuario;
 import dto.MensajeContextualizado;
+import dto.VistaMensaje;
 import tds.BubbleText;
 import utils.Utils;
 import dominio.Contacto;
@@ -45,7 +53,12 @@ public enum Controlador {
 	// repo
 	private RepositorioUsuarios repositorioUsuarios;
 
+	// oyentes de los cambios del usuario actual (ver publicar)
+	private final List<OyenteCambios> oyentes = new CopyOnWriteArrayList<>();
+
 	private static final double PRECIO_APLICACION = 100;
+	// con -Dappchat.tiempos=true se muestra cuánto tarda el inicio de sesión
+	private static final boolean MOSTRAR_TIEMPOS = Boolean.getBoolean("appchat.tiempos");
 
 	/**
 	 * Constructor privado del controlador. Inicializa la factoría DAO y los
@@ -57,6 +70,11 @@ public enum Controlador {
 			// por defecto usará la factoría TDS, pero sería simple crear un método
 			// sobrecargado para usar otro tipo de persistencia
 			factoria = FactoriaDAO.getInstancia();
+			// las escrituras se hacen en segundo plano para no bloquear la interfaz
+			// (se desactiva con -Dappchat.escritura.diferida=false)
+			if (Boolean.parseBoolean(System.getProperty("appchat.escritura.diferida", "true"))) {
+				factoria = new FactoriaDAODiferida(factoria);
+			}
 
 			usuarioDAO = factoria.getUsuarioDAO();
 			contactoIndividualDAO = factoria.getContactoIndividualDAO();
@@ -70,6 +88,33 @@ public enum Controlador {
 		}
 	}
 
+	/**
+	 * Registra un oyente al que se avisará de los cambios en los contactos, los mensajes y la
+	 * suscripción del usuario actual.
+	 * 
+	 * @param oyente El oyente.
+	 */
+	public void addOyenteCambios(OyenteCambios oyente) {
+		oyentes.add(oyente);
+	}
+
+	/**
+	 * Deja de avisar a un oyente registrado con {@link #addOyenteCambios(OyenteCambios)}.
+	 * 
+	 * @param oyente El oyente.
+	 */
+	public void removeOyenteCambios(OyenteCambios oyente) {
+		oyentes.remove(oyente);
+	}
+
+	private void publicar(EventoCambio.Tipo tipo, Contacto contacto) {
+		if (oyentes.isEmpty()) return;
+		EventoCambio evento = new EventoCambio(tipo, contacto);
+		for (OyenteCambios oyente : oyentes) {
+			oyente.cambio(evento);
+		}
+	}
+
 	/**
 	 * Obtiene el usuario actualmente autenticado.
 	 * 
@@ -99,7 +144,7 @@ public enum Controlador {
 	 * @return true si el número de móvil está registrado, false en caso contrario.
 	 */
 	public boolean esUsuarioRegistrado(String movil) {
-		return RepositorioUsuarios.INSTANCE.findUsuario(movil) != null;
+		return RepositorioUsuarios.INSTANCE.existeUsuario(movil);
 	}
 
 	/**
@@ -111,9 +156,14 @@ public enum Controlador {
 	 * @return true si la autenticación fue exitosa, false en caso contrario.
 	 */
 	public boolean loginUsuario(String movil, String password) {
+		long inicio = System.nanoTime();
 		Usuario usuario = RepositorioUsuarios.INSTANCE.findUsuario(movil);
 		if (usuario != null && usuario.getPassword().equals(password)) {
 			this.usuarioActual = usuario;
+			if (MOSTRAR_TIEMPOS) {
+				System.out.println("Inicio de sesión en " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio)
+						+ " ms (" + ManagementFactory.getRuntimeMXBean().getUptime() + " ms desde el arranque)");
+			}
 			return true;
 		}
 		return false;
@@ -163,19 +213,19 @@ public enum Controlador {
 	/**
 	 * Obtiene la lista de contactos del usuario actual.
 	 * 
-	 * @return Una LinkedList de objetos Contacto.
+	 * @return Una lista inmutable de objetos Contacto.
 	 */
-	public LinkedList<Contacto> getContactosUsuario() {
+	public List<Contacto> getContactosUsuario() {
 		return this.usuarioActual.getContactos();
 	}
 
 	/**
 	 * Obtiene la lista de contactos individuales del usuario actual.
 	 * 
-	 * @return Una LinkedList de objetos ContactoIndividual.
+	 * @return Una lista inmutable de objetos ContactoIndividual.
 	 */
-	public LinkedList<ContactoIndividual> getContactosIndividualesUsuario() {
-		return (LinkedList<ContactoIndividual>) this.usuarioActual.getContactosIndividuales();
+	public List<ContactoIndividual> getContactosIndividualesUsuario() {
+		return this.usuarioActual.getContactosIndividuales();
 	}
 
 	/**
@@ -199,26 +249,34 @@ public enum Controlador {
 	}
 
 	/**
-	 * Obtiene el contenido de los mensajes enviados en una conversación con un
-	 * contacto.
+	 * Obtiene los mensajes de un tramo de una conversación, preparados para pintarlos.
+	 * Recorre una sola vez el tramo y solo carga las páginas del historial que lo contienen.
+	 * Puede llamarse desde fuera del hilo de eventos, aunque se añadan mensajes a la vez.
 	 * 
 	 * @param contacto El objeto Contacto de la conversación.
-	 * @return Una lista de objetos que representan el contenido de los mensajes
-	 *         (texto o emoticono).
-	 */
-	public List<Object> getContenidoMensajes(Contacto contacto) {
-		return contacto.getTextoMensajesEnviados();
+	 * @param desde    Posición del primer mensaje (incluida).
+	 * @param hasta    Posición del último mensaje (excluida).
+	 * @return Las vistas de los mensajes del tramo, del más antiguo al más reciente.
+	 */
+	public List<VistaMensaje> getVistaMensajes(Contacto contacto, int desde, int hasta) {
+		// por posición y no con un iterador, que fallaría si se añade un mensaje mientras tanto
+		List<Mensaje> historial = contacto.getMensajesEnviados();
+		String nombreContacto = contacto.getNombre();
+		List<VistaMensaje> vistas = new ArrayList<>(hasta - desde);
+		for (int i = desde; i < hasta; i++) {
+			vistas.add(new VistaMensaje(historial.get(i), nombreContacto));
+		}
+		return vistas;
 	}
 
 	/**
-	 * Obtiene información detallada sobre los mensajes enviados en una conversación
-	 * con un contacto.
+	 * Obtiene el número de mensajes de una conversación sin cargarlos.
 	 * 
 	 * @param contacto El objeto Contacto de la conversación.
-	 * @return Una lista de cadenas de texto con información de los mensajes.
+	 * @return El número total de mensajes.
 	 */
-	public List<String> getInfoMensajes(Contacto contacto) {
-		return contacto.getInfoMensajesEnviados();
+	public int getNumeroMensajes(Contacto contacto) {
+		return contacto.getNumeroMensajes();
 	}
 
 	/**
@@ -242,15 +300,15 @@ public enum Controlador {
 		// Si no existe, creamos el contacto con el número de teléfono del emisor como
 		// nombre
 		if (receptor instanceof ContactoIndividual contactoIndividual) {
-			contactoIndividualDAO.updateContactoIndividual((ContactoIndividual) receptor);
+			contactoIndividualDAO.addMensaje(contactoIndividual, mensajeSent);
 			recibirMensaje(contenido, -1, contactoIndividual);
 		} else if (receptor instanceof Grupo grupo) {
-			grupoDAO.updateGrupo((Grupo) receptor);
+			grupoDAO.addMensaje(grupo, mensajeSent);
 			grupo.getMiembros().forEach(miembro -> {
-				contactoIndividualDAO.updateContactoIndividual((ContactoIndividual) miembro);
 				recibirMensaje(contenido, -1, (ContactoIndividual) miembro);
 			});
 		}
+		if (receptor != null) publicar(EventoCambio.Tipo.MENSAJE_ANADIDO, receptor);
 	}
 
 	/**
@@ -262,18 +320,20 @@ public enum Controlador {
 	public void enviarEmoji(int id, int emojiId) {
 		Mensaje mensajeSent = this.usuarioActual.enviarMensaje(id, emojiId, BubbleText.SENT);
 		mensajeDAO.registrarMensaje(mensajeSent);
+
+		usuarioDAO.updateUsuario(usuarioActual);
 		// Añadir el contacto al usuario actual como enviado
 		Contacto receptor = this.usuarioActual.getContactoConId(id);
 		if (receptor instanceof ContactoIndividual contactoIndividual) {
-			contactoIndividualDAO.updateContactoIndividual((ContactoIndividual) receptor);
+			contactoIndividualDAO.addMensaje(contactoIndividual, mensajeSent);
 			recibirMensaje("", emojiId, contactoIndividual);
 		} else if (receptor instanceof Grupo grupo) {
-			grupoDAO.updateGrupo((Grupo) receptor);
+			grupoDAO.addMensaje(grupo, mensajeSent);
 			grupo.getMiembros().forEach(miembro -> {
-				contactoIndividualDAO.updateContactoIndividual((ContactoIndividual) miembro);
 				recibirMensaje("", emojiId, (ContactoIndividual) miembro);
 			});
 		}
+		if (receptor != null) publicar(EventoCambio.Tipo.MENSAJE_ANADIDO, receptor);
 	}
 
 	/**
@@ -315,8 +375,11 @@ public enum Controlador {
 			    m = opuestoContacto.addMensaje(contenido, BubbleText.RECEIVED); // Se pasa el 'contenido' (String)
 			}
 			mensajeDAO.registrarMensaje(m);
-			contactoIndividualDAO.updateContactoIndividual((ContactoIndividual) opuestoContacto);
+			contactoIndividualDAO.addMensaje((ContactoIndividual) opuestoContacto, m);
 			// usuarioDAO.updateUsuario(receptor.getUsuario());
+			if (receptor.getUsuario() == usuarioActual) {
+				publicar(EventoCambio.Tipo.MENSAJE_ANADIDO, opuestoContacto); // mensaje a uno mismo
+			}
 		} else {
 			// Si no existe, se crea el contacto con el número de teléfono del emisor como
 			// nombre
@@ -330,8 +393,11 @@ public enum Controlador {
 			    m_nuevo = nuevoContacto.addMensaje(contenido, BubbleText.RECEIVED);
 			}
 			mensajeDAO.registrarMensaje(m_nuevo); // Usar m_nuevo
-			contactoIndividualDAO.updateContactoIndividual((ContactoIndividual) nuevoContacto);
+			contactoIndividualDAO.addMensaje((ContactoIndividual) nuevoContacto, m_nuevo);
 			usuarioDAO.updateUsuario(receptor.getUsuario());
+			if (receptor.getUsuario() == usuarioActual) {
+				publicar(EventoCambio.Tipo.CONTACTO_ANADIDO, nuevoContacto); // mensaje a uno mismo
+			}
 		}
 	}
 
@@ -354,6 +420,24 @@ public enum Controlador {
 		return this.usuarioActual.buscarMisMensajes(texto, telefono, nContacto);
 	}
 
+	/**
+	 * Inicia una búsqueda de mensajes en las conversaciones del usuario actual cuyos
+	 * resultados se recorren por páginas, en orden de fecha.
+	 *
+	 * @param texto     Texto a buscar en el contenido de los mensajes.
+	 * @param telefono  Número de teléfono del contacto para filtrar la búsqueda.
+	 * @param nContacto Nombre del contacto para filtrar la búsqueda.
+	 * @param cancelada Indica si se ha cancelado la búsqueda (por ejemplo, al iniciar otra).
+	 * @return La {@link BusquedaMensajes} con los mensajes encontrados.
+	 * @throws java.util.concurrent.CancellationException Si la búsqueda se cancela antes de terminar.
+	 */
+	public BusquedaMensajes iniciarBusqueda(String texto, String telefono, String nContacto, BooleanSupplier cancelada) {
+		if (this.usuarioActual == null) {
+			return BusquedaMensajes.vacia(""); // búsqueda sin resultados si no hay usuario logueado
+		}
+		return this.usuarioActual.buscarMensajes(texto, telefono, nContacto, cancelada);
+	}
+
 	/**
 	 * Crea un nuevo contacto individual para el usuario actual.
 	 * 
@@ -374,6 +458,7 @@ public enum Controlador {
 			contactoIndividualDAO.registrarContactoIndividual((ContactoIndividual) contacto);
 			// this.usuarioActual.addContacto(contacto);
 			usuarioDAO.updateUsuario(usuarioActual);
+			publicar(EventoCambio.Tipo.CONTACTO_ANADIDO, contacto);
 			return "Contacto creado correctamente.";
 		}
 	}
@@ -386,7 +471,7 @@ public enum Controlador {
 	 *                    grupo.
 	 * @return true si el grupo se creó correctamente, false en caso contrario.
 	 */
-	public boolean crearGrupo(String nombreGrupo, LinkedList<ContactoIndividual> miembros) {
+	public boolean crearGrupo(String nombreGrupo, List<ContactoIndividual> miembros) {
 		// Comprobamos que no existe un grupo con el mismo nombre
 		// Grupo grupo = new Grupo(nombreGrupo, miembros.toArray(new
 		// ContactoIndividual[0]));
@@ -394,6 +479,7 @@ public enum Controlador {
 		grupoDAO.registrarGrupo(grupo);
 		// this.usuarioActual.addContacto(grupo);
 		usuarioDAO.updateUsuario(usuarioActual);
+		publicar(EventoCambio.Tipo.CONTACTO_ANADIDO, grupo);
 		return true;
 	}
 
@@ -414,6 +500,7 @@ public enum Controlador {
 	public boolean convertirPremium() {
 		this.usuarioActual.activarPremium();
 		usuarioDAO.updateUsuario(usuarioActual);
+		publicar(EventoCambio.Tipo.PREMIUM_CAMBIADO, null);
 		return true;
 	}
 
@@ -438,6 +525,7 @@ public enum Controlador {
 	public boolean anularPremium() {
 		this.usuarioActual.desactivarPremium();
 		usuarioDAO.updateUsuario(usuarioActual);
+		publicar(EventoCambio.Tipo.PREMIUM_CAMBIADO, null);
 		return true;
 	}
 
@@ -485,6 +573,7 @@ public enum Controlador {
 		;
 
 		usuarioDAO.updateUsuario(usuarioActual);
+		publicar(EventoCambio.Tipo.CONTACTO_MODIFICADO, contacto);
 	}
 
 	/**
@@ -687,11 +776,12 @@ public enum Controlador {
 	 * @param nuevosMiembros La nueva lista de miembros del grupo.
 	 * @return true si la modificación fue exitosa, false si el grupo es null.
 	 */
-	public boolean modificarGrupo(Grupo grupo, String nuevoNombre, LinkedList<ContactoIndividual> nuevosMiembros) {
+	public boolean modificarGrupo(Grupo grupo, String nuevoNombre, List<ContactoIndividual> nuevosMiembros) {
 		if (grupo != null) {
 			grupo.setNombre(nuevoNombre);
 			grupo.setMiembros(nuevosMiembros);
 			grupoDAO.updateGrupo(grupo);
+			publicar(EventoCambio.Tipo.CONTACTO_MODIFICADO, grupo);
 			return true;
 		}
 		return false;
@@ -701,9 +791,9 @@ public enum Controlador {
 	 * Obtiene la lista de miembros de un grupo.
 	 * 
 	 * @param grupo El objeto Grupo.
-	 * @return Una LinkedList de objetos Contacto que son miembros del grupo.
+	 * @return Una lista inmutable de objetos Contacto que son miembros del grupo.
 	 */
-	public LinkedList<Contacto> getMiembrosGrupo(Grupo grupo) {
-		return (LinkedList<Contacto>) grupo.getMiembros();
+	public List<Contacto> getMiembrosGrupo(Grupo grupo) {
+		return grupo.getMiembros();
 	}
 }
\ No newline at end of file
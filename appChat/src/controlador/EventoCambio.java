@@ -0,0 +1,56 @@
+package controlador;
+
+import dominio.Contacto;
+
+/**
+ * Cambio en los datos del usuario actual que publica el {@link Controlador} para que la
+ * interfaz actualice solo lo afectado, en lugar de consultarlo todo periódicamente.
+ */
+public final class EventoCambio {
+
+	/**
+	 * Tipos de cambio.
+	 */
+	public enum Tipo {
+		/** Se ha añadido un contacto o grupo. */
+		CONTACTO_ANADIDO,
+		/** Ha cambiado el nombre u otros datos de un contacto o grupo (por ejemplo, sus miembros). */
+		CONTACTO_MODIFICADO,
+		/** Se ha añadido un mensaje a la conversación con un contacto o grupo. */
+		MENSAJE_ANADIDO,
+		/** El usuario ha activado o anulado la suscripción premium. */
+		PREMIUM_CAMBIADO
+	}
+
+	private final Tipo tipo;
+	private final Contacto contacto;
+
+	/**
+	 * Crea un evento.
+	 * @param tipo El tipo de cambio.
+	 * @param contacto El contacto afectado, o null si el cambio no afecta a ninguno.
+	 */
+	public EventoCambio(Tipo tipo, Contacto contacto) {
+		this.tipo = tipo;
+		this.contacto = contacto;
+	}
+
+	/**
+	 * @return El tipo de cambio.
+	 */
+	public Tipo getTipo() {
+		return tipo;
+	}
+
+	/**
+	 * @return El contacto afectado, o null si el cambio no afecta a ninguno.
+	 */
+	public Contacto getContacto() {
+		return contacto;
+	}
+
+	@Override
+	public String toString() {
+		return "EventoCambio{" + tipo + ", contacto=" + (contacto != null ? contacto.getNombre() : null) + '}';
+	}
+}
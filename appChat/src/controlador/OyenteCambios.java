@@ -0,0 +1,18 @@
+package controlador;
+
+/**
+ * Recibe los cambios que publica el {@link Controlador} (ver {@link EventoCambio}).
+ * <p>
+ * Se avisa en el hilo que hizo el cambio, que no tiene por qué ser el de Swing: los oyentes
+ * de la interfaz deben pasar al EDT lo que actualicen.
+ * </p>
+ */
+@FunctionalInterface
+public interface OyenteCambios {
+
+	/**
+	 * Avisa de un cambio.
+	 * @param evento El cambio.
+	 */
+	void cambio(EventoCambio evento);
+}
@@ -0,0 +1,421 @@
+package dao;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+import utils.IntObjectMap;
+
+/**
+ * Caché de entidades recuperadas de la base de datos, indexada por su identificador.
+ * <p>
+ * La caché está acotada: mantiene referencias fuertes como máximo a {@code capacidad}
+ * entidades y, al superarla, expulsa la usada hace más tiempo (LRU). Una entidad expulsada
+ * no se olvida mientras siga siendo alcanzable desde la aplicación: se conserva mediante
+ * una referencia débil, de modo que una nueva recuperación devuelve la misma instancia
+ * (se mantiene la identidad de los objetos) sin que la caché impida que el recolector
+ * de basura libere los {@code Usuario} o {@code Mensaje} que ya nadie utiliza.
+ * </p>
+ * <p>
+ * Para permitir el acceso concurrente, las entradas se reparten en segmentos
+ * independientes, cada uno con su propio cerrojo. Los contadores de aciertos, fallos
+ * y expulsiones no requieren cerrojo.
+ * </p>
+ * <p>
+ * Las cachés de entidades que se referencian en ciclo comparten una {@link ConstruccionEntidades}:
+ * sus cargas se hacen de una en una, y lo que se publica durante una carga no lo ven otros hilos
+ * hasta que termina.
+ * </p>
+ *
+ * @param <T> El tipo de las entidades almacenadas.
+ */
+public class CacheEntidades<T> {
+
+	private static final int BITS_SEGMENTOS = 4;
+	private static final int NUM_SEGMENTOS = 1 << BITS_SEGMENTOS;
+
+	private final Segmento<T>[] segmentos;
+	private final int capacidad;
+	private final ConstruccionEntidades construccion; // null si las cargas son independientes
+
+	private final LongAdder aciertos = new LongAdder();
+	private final LongAdder fallos = new LongAdder();
+	private final LongAdder expulsiones = new LongAdder();
+
+	/**
+	 * Crea una caché con la capacidad indicada.
+	 * @param capacidad Número máximo de entidades retenidas con referencia fuerte. Debe ser positivo.
+	 * @throws IllegalArgumentException Si la capacidad no es positiva.
+	 */
+	public CacheEntidades(int capacidad) {
+		this(capacidad, null);
+	}
+
+	/**
+	 * Crea una caché con la capacidad indicada cuyas cargas se coordinan con las de otras cachés.
+	 * @param capacidad Número máximo de entidades retenidas con referencia fuerte. Debe ser positivo.
+	 * @param construccion La construcción compartida por las cachés cuyas entidades se referencian
+	 *                     entre sí, o null si las cargas son independientes.
+	 * @throws IllegalArgumentException Si la capacidad no es positiva.
+	 */
+	@SuppressWarnings("unchecked")
+	CacheEntidades(int capacidad, ConstruccionEntidades construccion) {
+		if (capacidad <= 0) {
+			throw new IllegalArgumentException("La capacidad de la caché debe ser positiva: " + capacidad);
+		}
+		this.capacidad = capacidad;
+		this.construccion = construccion;
+		int capacidadSegmento = Math.max(1, (capacidad + NUM_SEGMENTOS - 1) / NUM_SEGMENTOS);
+		segmentos = (Segmento<T>[]) new Segmento<?>[NUM_SEGMENTOS];
+		for (int i = 0; i < NUM_SEGMENTOS; i++) {
+			segmentos[i] = new Segmento<T>(capacidadSegmento);
+		}
+	}
+
+	/**
+	 * Añade (o reemplaza) una entidad en la caché.
+	 * @param id El identificador de la entidad.
+	 * @param valor La entidad. No debe ser nula.
+	 */
+	public void put(int id, T valor) {
+		if (valor == null) {
+			throw new NullPointerException("No se pueden almacenar entidades nulas en la caché");
+		}
+		Segmento<T> seg = segmentoDe(id);
+		synchronized (seg) {
+			expulsiones.add(seg.put(id, valor));
+		}
+	}
+
+	/**
+	 * Recupera una entidad de la caché y la marca como usada recientemente.
+	 * @param id El identificador de la entidad.
+	 * @return La entidad, o null si no está en la caché.
+	 */
+	public T get(int id) {
+		Segmento<T> seg = segmentoDe(id);
+		T valor;
+		synchronized (seg) {
+			valor = seg.get(id);
+			if (valor != null) expulsiones.add(seg.ajustar());
+		}
+		if (valor != null) aciertos.increment();
+		else fallos.increment();
+		return valor;
+	}
+
+	/**
+	 * Recupera una entidad de la caché o, si no está, la carga con {@code cargador} y la añade.
+	 * En caso de acierto solo se realiza una búsqueda.
+	 * <p>
+	 * El cargador se ejecuta sin mantener el cerrojo de ningún segmento, por lo que puede
+	 * recuperar a su vez otras entidades. Si, para romper ciclos entre entidades, el cargador
+	 * publica la entidad con {@link #putIfAbsent(int, Object)} antes de terminar de construirla,
+	 * o si otro hilo la añade mientras tanto, se devuelve la instancia ya publicada. Si la caché
+	 * comparte una {@link ConstruccionEntidades}, el cargador se ejecuta con su cerrojo y lo
+	 * publicado no llega a la caché hasta que termina la carga más externa.
+	 * </p>
+	 * @param id El identificador de la entidad.
+	 * @param cargador Función que recupera la entidad de la persistencia a partir de su id.
+	 * @return La entidad, o null si no está en la caché y el cargador devuelve null.
+	 */
+	public T obtener(int id, IntFunction<? extends T> cargador) {
+		Segmento<T> seg = segmentoDe(id);
+		T valor;
+		synchronized (seg) {
+			valor = seg.get(id);
+			if (valor != null) expulsiones.add(seg.ajustar());
+		}
+		if (valor != null) {
+			aciertos.increment();
+			return valor;
+		}
+		fallos.increment();
+		if (construccion != null) return construccion.cargar(this, id, cargador);
+		T cargado = cargador.apply(id);
+		if (cargado == null) return null;
+		return putIfAbsent(id, cargado);
+	}
+
+	/**
+	 * Busca una entidad sin contarlo como acierto o fallo.
+	 * @return La entidad, o null si no está en la caché.
+	 */
+	T buscar(int id) {
+		Segmento<T> seg = segmentoDe(id);
+		synchronized (seg) {
+			T valor = seg.get(id);
+			if (valor != null) expulsiones.add(seg.ajustar());
+			return valor;
+		}
+	}
+
+	/**
+	 * Añade una entidad a la caché salvo que ya haya otra con el mismo identificador.
+	 * Durante una carga de la {@link ConstruccionEntidades} de la caché, la entidad solo la ve
+	 * el hilo que carga hasta que termina la carga.
+	 * @param id El identificador de la entidad.
+	 * @param valor La entidad. No debe ser nula.
+	 * @return La instancia que queda en la caché: la ya existente o {@code valor}.
+	 */
+	public T putIfAbsent(int id, T valor) {
+		if (valor == null) {
+			throw new NullPointerException("No se pueden almacenar entidades nulas en la caché");
+		}
+		if (construccion != null && construccion.enCurso()) return construccion.publicar(this, id, valor);
+		return anadirSiFalta(id, valor);
+	}
+
+	/**
+	 * Añade una entidad directamente a la caché salvo que ya haya otra con el mismo identificador.
+	 */
+	T anadirSiFalta(int id, T valor) {
+		Segmento<T> seg = segmentoDe(id);
+		synchronized (seg) {
+			T existente = seg.get(id);
+			if (existente != null) {
+				expulsiones.add(seg.ajustar());
+				return existente;
+			}
+			expulsiones.add(seg.put(id, valor));
+			return valor;
+		}
+	}
+
+	/**
+	 * Comprueba si la caché contiene una entidad con el identificador dado.
+	 * Si la entidad solo se conservaba mediante referencia débil, vuelve a retenerse
+	 * con referencia fuerte para que una llamada posterior a {@link #get(int)} la encuentre.
+	 * @param id El identificador a comprobar.
+	 * @return true si la entidad está en la caché.
+	 */
+	public boolean contains(int id) {
+		Segmento<T> seg = segmentoDe(id);
+		synchronized (seg) {
+			boolean encontrado = seg.get(id) != null;
+			if (encontrado) expulsiones.add(seg.ajustar());
+			return encontrado;
+		}
+	}
+
+	/**
+	 * Elimina una entidad de la caché.
+	 * @param id El identificador de la entidad a eliminar.
+	 */
+	public void remove(int id) {
+		Segmento<T> seg = segmentoDe(id);
+		synchronized (seg) {
+			seg.remove(id);
+		}
+	}
+
+	/**
+	 * Vacía la caché. Los contadores no se reinician.
+	 */
+	public void clear() {
+		for (Segmento<T> seg : segmentos) {
+			synchronized (seg) {
+				seg.clear();
+			}
+		}
+	}
+
+	/**
+	 * @return La capacidad máxima (entidades con referencia fuerte) de la caché.
+	 */
+	public int getCapacidad() {
+		return capacidad;
+	}
+
+	/**
+	 * @return El número de entidades retenidas actualmente con referencia fuerte.
+	 */
+	public int getNumeroEntradas() {
+		int total = 0;
+		for (Segmento<T> seg : segmentos) {
+			synchronized (seg) {
+				total += seg.tamanoFuerte;
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * @return Número de búsquedas que encontraron la entidad en la caché.
+	 */
+	public long getAciertos() {
+		return aciertos.sum();
+	}
+
+	/**
+	 * @return Número de búsquedas que no encontraron la entidad en la caché.
+	 */
+	public long getFallos() {
+		return fallos.sum();
+	}
+
+	/**
+	 * @return Número de entidades que han dejado de retenerse con referencia fuerte por falta de capacidad.
+	 */
+	public long getExpulsiones() {
+		return expulsiones.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "CacheEntidades{capacidad=" + capacidad +
+				", entradas=" + getNumeroEntradas() +
+				", aciertos=" + getAciertos() +
+				", fallos=" + getFallos() +
+				", expulsiones=" + getExpulsiones() + '}';
+	}
+
+	private Segmento<T> segmentoDe(int id) {
+		// bits altos del hash: los bajos los usa el mapa de cada segmento
+		return segmentos[(id * 0x9E3779B9) >>> (32 - BITS_SEGMENTOS)];
+	}
+
+	/**
+	 * Entrada de la caché. Es a la vez la referencia débil a la entidad y el nodo de la
+	 * lista LRU; {@code valor} solo es distinto de null mientras la entrada está en dicha lista.
+	 */
+	private static final class Entrada<T> extends WeakReference<T> {
+		final int id;
+		T valor;
+		Entrada<T> anterior;
+		Entrada<T> siguiente;
+
+		Entrada(int id, T valor, ReferenceQueue<? super T> cola) {
+			super(valor, cola);
+			this.id = id;
+		}
+	}
+
+	/**
+	 * Segmento de la caché. No es seguro para hilos: el acceso se sincroniza sobre el propio segmento.
+	 */
+	private static final class Segmento<T> {
+		private final int capacidad;
+		private final IntObjectMap<Entrada<T>> entradas = new IntObjectMap<>();
+		private final ReferenceQueue<T> cola = new ReferenceQueue<>();
+		// centinela de la lista LRU: cabeza.siguiente es la más reciente, cabeza.anterior la más antigua
+		private final Entrada<T> cabeza = new Entrada<>(0, null, null);
+		private int tamanoFuerte;
+
+		Segmento(int capacidad) {
+			this.capacidad = capacidad;
+			cabeza.anterior = cabeza;
+			cabeza.siguiente = cabeza;
+		}
+
+		T get(int id) {
+			purgar();
+			Entrada<T> e = entradas.get(id);
+			if (e == null) return null;
+			if (e.valor != null) {
+				desenlazar(e);
+				enlazar(e);
+				return e.valor;
+			}
+			T valor = e.get();
+			if (valor == null) {
+				entradas.remove(id);
+				return null;
+			}
+			// sigue siendo alcanzable: vuelve a retenerse con referencia fuerte
+			e.valor = valor;
+			enlazar(e);
+			tamanoFuerte++;
+			return valor;
+		}
+
+		int put(int id, T valor) {
+			purgar();
+			Entrada<T> e = entradas.get(id);
+			if (e != null && e.get() == valor) {
+				if (e.valor != null) {
+					desenlazar(e);
+				} else {
+					e.valor = valor;
+					tamanoFuerte++;
+				}
+				enlazar(e);
+				return ajustar();
+			}
+			if (e != null) quitar(e);
+			e = new Entrada<>(id, valor, cola);
+			e.valor = valor;
+			entradas.put(id, e);
+			enlazar(e);
+			tamanoFuerte++;
+			return ajustar();
+		}
+
+		void remove(int id) {
+			purgar();
+			Entrada<T> e = entradas.remove(id);
+			if (e != null) quitar(e);
+		}
+
+		void clear() {
+			entradas.forEachValue(Entrada::clear);
+			entradas.clear();
+			cabeza.anterior = cabeza;
+			cabeza.siguiente = cabeza;
+			tamanoFuerte = 0;
+		}
+
+		/**
+		 * Expulsa de la lista LRU las entradas más antiguas hasta respetar la capacidad.
+		 * @return El número de entradas expulsadas.
+		 */
+		int ajustar() {
+			int expulsadas = 0;
+			while (tamanoFuerte > capacidad) {
+				Entrada<T> antigua = cabeza.anterior;
+				desenlazar(antigua);
+				antigua.valor = null;
+				tamanoFuerte--;
+				expulsadas++;
+			}
+			return expulsadas;
+		}
+
+		private void quitar(Entrada<T> e) {
+			if (e.valor != null) {
+				desenlazar(e);
+				e.valor = null;
+				tamanoFuerte--;
+			}
+			e.clear();
+		}
+
+		private void enlazar(Entrada<T> e) {
+			e.anterior = cabeza;
+			e.siguiente = cabeza.siguiente;
+			cabeza.siguiente.anterior = e;
+			cabeza.siguiente = e;
+		}
+
+		private void desenlazar(Entrada<T> e) {
+			e.anterior.siguiente = e.siguiente;
+			e.siguiente.anterior = e.anterior;
+			e.anterior = null;
+			e.siguiente = null;
+		}
+
+		/**
+		 * Elimina las entradas cuyas entidades ya han sido liberadas por el recolector de basura.
+		 */
+		@SuppressWarnings("unchecked")
+		private void purgar() {
+			Entrada<T> e;
+			while ((e = (Entrada<T>) cola.poll()) != null) {
+				if (entradas.get(e.id) == e && e.valor == null) {
+					entradas.remove(e.id);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,320 @@
+package dao;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Cola de escrituras diferidas (write-behind) hacia la capa de persistencia.
+ * <p>
+ * Las escrituras se encolan y las ejecuta, en el mismo orden, un único hilo en segundo plano,
+ * de modo que quien las pide no espera al servidor de persistencia. Tras la primera escritura
+ * pendiente, el hilo espera una ventana de {@code appchat.escritura.ventanaMs} milisegundos
+ * (20 por defecto) para vaciar la cola por lotes; durante ese tiempo, las actualizaciones
+ * repetidas de un mismo objeto se agrupan en una sola, que al ejecutarse escribe su estado
+ * en ese momento.
+ * </p>
+ * <p>
+ * Las operaciones cuyo resultado se necesita de inmediato (por ejemplo, el registro de una
+ * entidad, que le asigna su identificador) se ejecutan con {@link #ejecutar(Supplier)}: esperan
+ * a que terminen las escrituras anteriores. Las lecturas se hacen en el hilo que las pide, pero
+ * nunca a la vez que una escritura (ver {@link #leer(Supplier)}).
+ * </p>
+ * <p>
+ * Una escritura diferida que falla se reintenta en el acto, hasta
+ * {@code appchat.escritura.intentos} veces en total (3 por defecto), antes de pasar a la
+ * siguiente, para no alterar el orden. Si sigue fallando se guarda su error en
+ * {@link #getFallidas()}, y {@link #vaciar()} y {@link #cerrar()} lo notifican lanzando una
+ * excepción. Las actualizaciones que fallan vuelven a marcar sus campos como modificados (ver
+ * {@link dominio.CambiosPendientes#restaurar(java.util.Set)}), así que cada reintento, o la
+ * siguiente actualización del mismo objeto, los escribe de nuevo.
+ * </p>
+ */
+public final class ColaEscrituras {
+
+	private static final long VENTANA_MS = Long.getLong("appchat.escritura.ventanaMs", 20);
+	private static final long ESPERA_CIERRE_MS = 10_000;
+	private static final int INTENTOS = Math.max(1, Integer.getInteger("appchat.escritura.intentos", 3));
+	private static final long ESPERA_REINTENTO_MS = 50;
+
+	private final ArrayDeque<Tarea> cola = new ArrayDeque<>();
+	// actualizaciones aún en la cola, por objeto actualizado
+	private final IdentityHashMap<Object, Tarea> actualizaciones = new IdentityHashMap<>();
+	private final Object cerrojoPersistencia = new Object();
+	private final Thread escritor;
+	private int sincronasPendientes;
+	private boolean cerrada;
+	// errores de las escrituras diferidas que han agotado sus intentos
+	private final List<RuntimeException> fallidas = new ArrayList<>();
+	private int fallidasNotificadas;
+
+	private final LongAdder encoladas = new LongAdder();
+	private final LongAdder agrupadas = new LongAdder();
+	private final LongAdder lotes = new LongAdder();
+	private final LongAdder errores = new LongAdder();
+	private final LongAdder reintentos = new LongAdder();
+
+	/**
+	 * Escritura pendiente. Si tiene {@code resultado}, alguien espera a que termine.
+	 */
+	private static final class Tarea {
+		final Runnable accion;
+		final CompletableFuture<Void> resultado;
+
+		Tarea(Runnable accion, CompletableFuture<Void> resultado) {
+			this.accion = accion;
+			this.resultado = resultado;
+		}
+	}
+
+	/**
+	 * Crea la cola y arranca su hilo de escritura.
+	 */
+	public ColaEscrituras() {
+		escritor = new Thread(this::escribir, "appchat-escrituras");
+		escritor.setDaemon(true);
+		escritor.start();
+	}
+
+	/**
+	 * Encola una escritura sin esperar a que se ejecute.
+	 * @param escritura La escritura a realizar.
+	 * @throws IllegalStateException Si la cola está cerrada.
+	 */
+	public void encolar(Runnable escritura) {
+		anadir(new Tarea(escritura, null), null);
+	}
+
+	/**
+	 * Encola la actualización de un objeto, salvo que ya haya una actualización suya pendiente:
+	 * en ese caso ambas se agrupan en la que ya estaba en la cola.
+	 * @param objeto El objeto a actualizar.
+	 * @param actualizacion La escritura que guarda el estado actual del objeto.
+	 */
+	public void encolarActualizacion(Object objeto, Runnable actualizacion) {
+		anadir(new Tarea(actualizacion, null), objeto);
+	}
+
+	/**
+	 * Ejecuta una operación tras las escrituras pendientes y espera a que termine.
+	 * @param <T> El tipo del resultado.
+	 * @param operacion La operación.
+	 * @return El resultado de la operación.
+	 * @throws IllegalStateException Si la cola está cerrada.
+	 */
+	public <T> T ejecutar(Supplier<T> operacion) {
+		if (Thread.currentThread() == escritor) return operacion.get();
+		List<T> resultado = new ArrayList<>(1);
+		CompletableFuture<Void> fin = new CompletableFuture<>();
+		anadir(new Tarea(() -> resultado.add(operacion.get()), fin), null);
+		try {
+			fin.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			throw e;
+		}
+		return resultado.get(0);
+	}
+
+	/**
+	 * Realiza una lectura en el hilo que la pide, sin que coincida con ninguna escritura.
+	 * @param <T> El tipo del resultado.
+	 * @param lectura La lectura.
+	 * @return El resultado de la lectura.
+	 */
+	public <T> T leer(Supplier<T> lectura) {
+		synchronized (cerrojoPersistencia) {
+			return lectura.get();
+		}
+	}
+
+	/**
+	 * Espera a que se hayan ejecutado todas las escrituras encoladas hasta ahora.
+	 * @throws IllegalStateException Si desde la última llamada a {@code vaciar} o {@link #cerrar()}
+	 * alguna escritura diferida ha fallado en todos sus intentos.
+	 */
+	public void vaciar() {
+		if (Thread.currentThread() != escritor && escritor.isAlive()) ejecutar(() -> null);
+		notificarFallidas();
+	}
+
+	/**
+	 * Ejecuta las escrituras pendientes y detiene el hilo de escritura. Las escrituras
+	 * encoladas después se rechazan.
+	 * @throws IllegalStateException Si no se han podido ejecutar todas las escrituras pendientes,
+	 * o si alguna escritura diferida aún no notificada ha fallado en todos sus intentos.
+	 */
+	public void cerrar() {
+		synchronized (this) {
+			cerrada = true;
+			notifyAll();
+		}
+		try {
+			escritor.join(ESPERA_CIERRE_MS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (escritor.isAlive()) {
+			throw new IllegalStateException("No se han podido guardar todas las escrituras pendientes: " + this);
+		}
+		notificarFallidas();
+	}
+
+	/**
+	 * Lanza una excepción con las escrituras fallidas que aún no se hayan notificado.
+	 */
+	private void notificarFallidas() {
+		IllegalStateException error;
+		synchronized (this) {
+			if (fallidasNotificadas == fallidas.size()) return;
+			List<RuntimeException> nuevas = fallidas.subList(fallidasNotificadas, fallidas.size());
+			error = new IllegalStateException(nuevas.size() + " escrituras diferidas han fallado", nuevas.get(0));
+			nuevas.stream().skip(1).forEach(error::addSuppressed);
+			fallidasNotificadas = fallidas.size();
+		}
+		throw error;
+	}
+
+	private synchronized void anadir(Tarea tarea, Object objeto) {
+		if (cerrada) {
+			throw new IllegalStateException("La cola de escrituras está cerrada");
+		}
+		encoladas.increment();
+		if (objeto != null) {
+			if (actualizaciones.containsKey(objeto)) {
+				agrupadas.increment();
+				return;
+			}
+			actualizaciones.put(objeto, tarea);
+		}
+		if (tarea.resultado != null) sincronasPendientes++;
+		cola.add(tarea);
+		notifyAll();
+	}
+
+	/**
+	 * Bucle del hilo de escritura: espera a que haya escrituras, deja pasar la ventana de agrupación
+	 * (salvo que alguien espere) y ejecuta todas las pendientes como un lote.
+	 */
+	private void escribir() {
+		while (true) {
+			List<Tarea> lote;
+			synchronized (this) {
+				try {
+					while (cola.isEmpty() && !cerrada) wait();
+					long fin = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(VENTANA_MS);
+					long restante;
+					while (!cerrada && sincronasPendientes == 0 && (restante = fin - System.nanoTime()) > 0) {
+						TimeUnit.NANOSECONDS.timedWait(this, restante);
+					}
+				} catch (InterruptedException e) {
+					cerrada = true;
+				}
+				if (cola.isEmpty()) return; // cerrada y sin pendientes
+				lote = new ArrayList<>(cola);
+				cola.clear();
+				actualizaciones.clear();
+				sincronasPendientes = 0;
+			}
+			lotes.increment();
+			for (Tarea tarea : lote) {
+				realizar(tarea);
+			}
+		}
+	}
+
+	/**
+	 * Ejecuta una escritura del lote. Si falla, quien la espera recibe el error; si no la espera
+	 * nadie, se reintenta y, agotados los intentos, se guarda entre las fallidas.
+	 */
+	private void realizar(Tarea tarea) {
+		for (int intento = 1; ; intento++) {
+			try {
+				synchronized (cerrojoPersistencia) {
+					tarea.accion.run();
+				}
+				if (tarea.resultado != null) tarea.resultado.complete(null);
+				return;
+			} catch (RuntimeException e) {
+				if (tarea.resultado == null && intento < INTENTOS && !Thread.currentThread().isInterrupted()) {
+					reintentos.increment();
+					try {
+						Thread.sleep(ESPERA_REINTENTO_MS * intento);
+					} catch (InterruptedException ie) {
+						Thread.currentThread().interrupt();
+					}
+					continue;
+				}
+				errores.increment();
+				if (tarea.resultado != null) {
+					tarea.resultado.completeExceptionally(e);
+				} else {
+					System.err.println("Error en una escritura diferida tras " + intento + " intentos: " + e);
+					synchronized (this) {
+						fallidas.add(e);
+					}
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return Los errores de las escrituras diferidas que han fallado en todos sus intentos,
+	 * de la más antigua a la más reciente.
+	 */
+	public synchronized List<RuntimeException> getFallidas() {
+		return new ArrayList<>(fallidas);
+	}
+
+	/**
+	 * @return Número de escrituras encoladas, incluidas las agrupadas.
+	 */
+	public long getEncoladas() {
+		return encoladas.sum();
+	}
+
+	/**
+	 * @return Número de actualizaciones que se han agrupado con otra pendiente del mismo objeto.
+	 */
+	public long getAgrupadas() {
+		return agrupadas.sum();
+	}
+
+	/**
+	 * @return Número de lotes ejecutados.
+	 */
+	public long getLotes() {
+		return lotes.sum();
+	}
+
+	/**
+	 * @return Número de veces que se ha reintentado una escritura diferida.
+	 */
+	public long getReintentos() {
+		return reintentos.sum();
+	}
+
+	/**
+	 * @return Número de escrituras que han fallado, tras agotar sus intentos las diferidas.
+	 */
+	public long getErrores() {
+		return errores.sum();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "ColaEscrituras{pendientes=" + cola.size() +
+				", encoladas=" + getEncoladas() +
+				", agrupadas=" + getAgrupadas() +
+				", lotes=" + getLotes() +
+				", reintentos=" + getReintentos() +
+				", errores=" + getErrores() + '}';
+	}
+}
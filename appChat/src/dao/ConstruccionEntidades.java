@@ -0,0 +1,91 @@
+package dao;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntFunction;
+
+/**
+ * Construcción de las entidades de varias {@link CacheEntidades} sin que otros hilos las vean a
+ * medio construir.
+ * <p>
+ * Usuarios, contactos y grupos se referencian en ciclo (un usuario, sus contactos, los usuarios
+ * de estos...), así que el cargador de una entidad la publica con
+ * {@link CacheEntidades#putIfAbsent(int, Object)} antes de recuperar las demás. Para que esa
+ * entidad a medias no llegue a otro hilo, las cargas se hacen de una en una, con un cerrojo común
+ * a todas las cachés, y lo publicado durante una carga solo lo ve el hilo que carga: pasa a las
+ * cachés cuando termina la carga más externa. Mientras, los demás hilos que no encuentran una
+ * entidad en su caché esperan al cerrojo. Un cerrojo por entidad no bastaría: dos hilos que
+ * cargasen a la vez dos usuarios que se tienen como contacto se esperarían el uno al otro.
+ * </p>
+ */
+final class ConstruccionEntidades {
+
+	private final ReentrantLock cerrojo = new ReentrantLock();
+	// entidades publicadas en la carga en curso, por caché; solo se accede con el cerrojo
+	private final Map<CacheEntidades<?>, Map<Integer, Object>> provisionales = new IdentityHashMap<>();
+
+	/**
+	 * Recupera una entidad de una caché o, si no está, la carga con el cerrojo de construcción.
+	 * @return La entidad, o null si no está y el cargador devuelve null.
+	 */
+	<T> T cargar(CacheEntidades<T> cache, int id, IntFunction<? extends T> cargador) {
+		cerrojo.lock();
+		boolean completa = false;
+		try {
+			// otro hilo puede haberla cargado mientras se esperaba el cerrojo
+			T valor = cache.buscar(id);
+			if (valor == null) valor = provisional(cache, id);
+			if (valor == null) {
+				T cargado = cargador.apply(id);
+				valor = (cargado != null) ? publicar(cache, id, cargado) : null;
+			}
+			completa = true;
+			return valor;
+		} finally {
+			if (cerrojo.getHoldCount() == 1) terminar(completa);
+			cerrojo.unlock();
+		}
+	}
+
+	/**
+	 * @return true si el hilo actual está cargando entidades.
+	 */
+	boolean enCurso() {
+		return cerrojo.isHeldByCurrentThread();
+	}
+
+	/**
+	 * Publica una entidad cargada en el hilo actual, visible solo para él hasta que termine la carga.
+	 * @return La instancia ya publicada con ese id, si la hay, o {@code valor}.
+	 */
+	<T> T publicar(CacheEntidades<T> cache, int id, T valor) {
+		T existente = cache.buscar(id);
+		if (existente == null) existente = provisional(cache, id);
+		if (existente != null) return existente;
+		provisionales.computeIfAbsent(cache, c -> new HashMap<>()).put(id, valor);
+		return valor;
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> T provisional(CacheEntidades<T> cache, int id) {
+		Map<Integer, Object> publicadas = provisionales.get(cache);
+		return (publicadas != null) ? (T) publicadas.get(id) : null;
+	}
+
+	/**
+	 * Al terminar la carga más externa pasa a las cachés lo publicado, o lo descarta si la carga
+	 * ha fallado, ya que puede estar a medias.
+	 */
+	@SuppressWarnings("unchecked")
+	private void terminar(boolean completa) {
+		if (completa) {
+			provisionales.forEach((cache, publicadas) -> {
+				CacheEntidades<Object> destino = (CacheEntidades<Object>) cache;
+				publicadas.forEach(destino::anadirSiFalta);
+			});
+		}
+		provisionales.clear();
+	}
+}
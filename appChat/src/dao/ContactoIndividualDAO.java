@@ -2,6 +2,7 @@ package dao;
 
 import java.util.List;
 import dominio.ContactoIndividual;
+import dominio.Mensaje;
 
 /**
  * Interfaz para el acceso a datos de la entidad ContactoIndividual.
@@ -27,6 +28,14 @@ public interface ContactoIndividualDAO {
 		 */
 		void updateContactoIndividual(ContactoIndividual contInd);
 
+		/**
+		 * Añade al historial persistido de un contacto individual un mensaje ya registrado,
+		 * sin reescribir los mensajes anteriores.
+		 * @param contInd El contacto al que se ha añadido el mensaje.
+		 * @param mensaje El mensaje, ya registrado.
+		 */
+		void addMensaje(ContactoIndividual contInd, Mensaje mensaje);
+
 		/**
 		 * Recupera un contacto individual de la capa de persistencia dado su identificador.
 		 * @param id El identificador único del contacto individual.
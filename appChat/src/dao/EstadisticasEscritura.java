@@ -0,0 +1,70 @@
+package dao;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contadores de las escrituras de propiedades que realizan las actualizaciones de los DAO.
+ * <p>
+ * Las actualizaciones solo escriben las propiedades cuyos campos han cambiado (ver
+ * {@link dominio.CambiosPendientes}); estos contadores permiten comprobar cuántas
+ * escrituras se evitan respecto a reescribir todas las propiedades en cada actualización.
+ * </p>
+ */
+public enum EstadisticasEscritura {
+
+	/**
+	 * Instancia única de las estadísticas.
+	 */
+	INSTANCE;
+
+	private final LongAdder actualizaciones = new LongAdder();
+	private final LongAdder escrituras = new LongAdder();
+	private final LongAdder evitadas = new LongAdder();
+
+	/**
+	 * Registra el resultado de una actualización.
+	 * @param escritas Número de propiedades escritas.
+	 * @param evitadas Número de propiedades que no se han escrito porque no habían cambiado.
+	 */
+	void registrar(int escritas, int evitadas) {
+		actualizaciones.increment();
+		escrituras.add(escritas);
+		this.evitadas.add(evitadas);
+	}
+
+	/**
+	 * @return Número de actualizaciones realizadas.
+	 */
+	public long getActualizaciones() {
+		return actualizaciones.sum();
+	}
+
+	/**
+	 * @return Número de propiedades escritas por las actualizaciones.
+	 */
+	public long getEscrituras() {
+		return escrituras.sum();
+	}
+
+	/**
+	 * @return Número de escrituras de propiedades evitadas por no haber cambiado.
+	 */
+	public long getEscriturasEvitadas() {
+		return evitadas.sum();
+	}
+
+	/**
+	 * @return Media de escrituras evitadas por actualización.
+	 */
+	public double getEvitadasPorActualizacion() {
+		long n = getActualizaciones();
+		return (n == 0) ? 0 : (double) getEscriturasEvitadas() / n;
+	}
+
+	@Override
+	public String toString() {
+		return "EstadisticasEscritura{actualizaciones=" + getActualizaciones() +
+				", escrituras=" + getEscrituras() +
+				", evitadas=" + getEscriturasEvitadas() + '}';
+	}
+}
@@ -7,13 +7,19 @@ package dao;
 public abstract class FactoriaDAO {
 
 	public static final String DAO_TDS = "dao.TDSFactoriaDAO";
+	public static final String DAO_MEMORIA = "dao.MemoriaFactoriaDAO";
+
+	/**
+	 * Propiedad del sistema con el tipo de la factoría por defecto ({@link #DAO_TDS} si no se indica).
+	 */
+	public static final String PROPIEDAD_TIPO = "appchat.dao";
 
 	private static FactoriaDAO unicaInstancia = null;
 
 	/**
 	 * Crea un tipo de factoria DAO.
-	 * Solo existe el tipo TDSFactoriaDAO
-	 * @param tipo El tipo de factoría a crear (actualmente solo soporta DAO_TDS).
+	 * Existen los tipos TDSFactoriaDAO (servidor de persistencia) y MemoriaFactoriaDAO (en memoria)
+	 * @param tipo El tipo de factoría a crear (DAO_TDS o DAO_MEMORIA).
 	 * @return Una instancia de la factoría DAO especificada.
 	 * @throws DAOException Si ocurre un error al instanciar la factoría.
 	 */
@@ -31,12 +37,13 @@ public abstract class FactoriaDAO {
 
 
 	/**
-	 * Obtiene la instancia única de la factoría DAO por defecto (TDSFactoriaDAO).
+	 * Obtiene la instancia única de la factoría DAO por defecto: la indicada en la propiedad
+	 * del sistema {@value #PROPIEDAD_TIPO} o, si no se indica, TDSFactoriaDAO.
 	 * @return La instancia única de FactoriaDAO.
 	 * @throws DAOException Si ocurre un error al instanciar la factoría.
 	 */
 	public static FactoriaDAO getInstancia() throws DAOException{
-		return getInstancia(FactoriaDAO.DAO_TDS);
+		return getInstancia(System.getProperty(PROPIEDAD_TIPO, FactoriaDAO.DAO_TDS));
 	}
 
 	/**
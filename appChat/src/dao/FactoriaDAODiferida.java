@@ -0,0 +1,241 @@
+package dao;
+
+import java.util.List;
+import java.util.Map;
+
+import dominio.ContactoIndividual;
+import dominio.Grupo;
+import dominio.Mensaje;
+import dominio.Usuario;
+
+/**
+ * Factoría DAO que añade escritura diferida (write-behind) a los adaptadores de otra factoría.
+ * <p>
+ * Las actualizaciones, eliminaciones, el registro de mensajes y la ampliación del historial de
+ * una conversación se encolan en una {@link ColaEscrituras} y vuelven de inmediato. El registro
+ * de usuarios, contactos y grupos espera a las escrituras anteriores y a la suya propia, ya que
+ * quien lo pide necesita el identificador asignado. Las lecturas se delegan directamente, sin
+ * coincidir con ninguna escritura; también las de los mensajes de los historiales que se
+ * cargan bajo demanda, para lo que los adaptadores TDS usan el {@link MensajeDAO} de esta factoría.
+ * </p>
+ * <p>
+ * Al terminar la aplicación se ejecutan todas las escrituras pendientes.
+ * </p>
+ */
+public final class FactoriaDAODiferida extends FactoriaDAO {
+
+	private final ColaEscrituras cola;
+	private final UsuarioDAO usuarioDAO;
+	private final GrupoDAO grupoDAO;
+	private final MensajeDAO mensajeDAO;
+	private final ContactoIndividualDAO contactoIndividualDAO;
+
+	/**
+	 * Crea una factoría con escritura diferida sobre los adaptadores de {@code destino}.
+	 * @param destino La factoría cuyos adaptadores realizan las escrituras.
+	 */
+	public FactoriaDAODiferida(FactoriaDAO destino) {
+		cola = new ColaEscrituras();
+		usuarioDAO = new UsuarioDiferido(destino.getUsuarioDAO(), cola);
+		grupoDAO = new GrupoDiferido(destino.getGrupoDAO(), cola);
+		mensajeDAO = new MensajeDiferido(destino.getMensajeDAO(), cola);
+		contactoIndividualDAO = new ContactoIndividualDiferido(destino.getContactoIndividualDAO(), cola);
+		// los historiales se cargan bajo demanda: sus lecturas también deben pasar por la cola
+		if (destino.getContactoIndividualDAO() instanceof TDSContactoIndividualDAO) {
+			((TDSContactoIndividualDAO) destino.getContactoIndividualDAO()).setCargadorMensajes(mensajeDAO::getMensajes);
+		}
+		if (destino.getGrupoDAO() instanceof TDSGrupoDAO) {
+			((TDSGrupoDAO) destino.getGrupoDAO()).setCargadorMensajes(mensajeDAO::getMensajes);
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			try {
+				cola.cerrar();
+			} catch (IllegalStateException e) {
+				System.err.println(e.getMessage() + (e.getCause() != null ? ": " + e.getCause() : ""));
+			}
+		}, "appchat-cierre-escrituras"));
+	}
+
+	/**
+	 * @return La cola de escrituras de esta factoría.
+	 */
+	public ColaEscrituras getCola() {
+		return cola;
+	}
+
+	@Override
+	public UsuarioDAO getUsuarioDAO() {
+		return usuarioDAO;
+	}
+
+	@Override
+	public GrupoDAO getGrupoDAO() {
+		return grupoDAO;
+	}
+
+	@Override
+	public MensajeDAO getMensajeDAO() {
+		return mensajeDAO;
+	}
+
+	@Override
+	public ContactoIndividualDAO getContactoIndividualDAO() {
+		return contactoIndividualDAO;
+	}
+
+	private static final class UsuarioDiferido implements UsuarioDAO {
+		private final UsuarioDAO dao;
+		private final ColaEscrituras cola;
+
+		UsuarioDiferido(UsuarioDAO dao, ColaEscrituras cola) {
+			this.dao = dao;
+			this.cola = cola;
+		}
+
+		@Override
+		public void registrarUsuario(Usuario usuario) {
+			cola.ejecutar(() -> { dao.registrarUsuario(usuario); return null; });
+		}
+
+		@Override
+		public void eliminarUsuario(Usuario usuario) {
+			cola.encolar(() -> dao.eliminarUsuario(usuario));
+		}
+
+		@Override
+		public void updateUsuario(Usuario usuario) {
+			cola.encolarActualizacion(usuario, () -> dao.updateUsuario(usuario));
+		}
+
+		@Override
+		public Usuario getUsuario(int id) {
+			return cola.leer(() -> dao.getUsuario(id));
+		}
+
+		@Override
+		public List<Usuario> getAll() {
+			return cola.leer(dao::getAll);
+		}
+
+		@Override
+		public Map<String, Integer> getIdsPorMovil() {
+			return cola.leer(dao::getIdsPorMovil);
+		}
+	}
+
+	private static final class ContactoIndividualDiferido implements ContactoIndividualDAO {
+		private final ContactoIndividualDAO dao;
+		private final ColaEscrituras cola;
+
+		ContactoIndividualDiferido(ContactoIndividualDAO dao, ColaEscrituras cola) {
+			this.dao = dao;
+			this.cola = cola;
+		}
+
+		@Override
+		public void registrarContactoIndividual(ContactoIndividual contInd) {
+			cola.ejecutar(() -> { dao.registrarContactoIndividual(contInd); return null; });
+		}
+
+		@Override
+		public void eliminarContactoIndividual(ContactoIndividual contInd) {
+			cola.encolar(() -> dao.eliminarContactoIndividual(contInd));
+		}
+
+		@Override
+		public void updateContactoIndividual(ContactoIndividual contInd) {
+			cola.encolarActualizacion(contInd, () -> dao.updateContactoIndividual(contInd));
+		}
+
+		@Override
+		public void addMensaje(ContactoIndividual contInd, Mensaje mensaje) {
+			cola.encolar(() -> dao.addMensaje(contInd, mensaje));
+		}
+
+		@Override
+		public ContactoIndividual getContactoIndividual(int id) {
+			return cola.leer(() -> dao.getContactoIndividual(id));
+		}
+
+		@Override
+		public List<ContactoIndividual> getAll() {
+			return cola.leer(dao::getAll);
+		}
+	}
+
+	private static final class GrupoDiferido implements GrupoDAO {
+		private final GrupoDAO dao;
+		private final ColaEscrituras cola;
+
+		GrupoDiferido(GrupoDAO dao, ColaEscrituras cola) {
+			this.dao = dao;
+			this.cola = cola;
+		}
+
+		@Override
+		public void registrarGrupo(Grupo grupo) {
+			cola.ejecutar(() -> { dao.registrarGrupo(grupo); return null; });
+		}
+
+		@Override
+		public void eliminarGrupo(Grupo grupo) {
+			cola.encolar(() -> dao.eliminarGrupo(grupo));
+		}
+
+		@Override
+		public void updateGrupo(Grupo grupo) {
+			cola.encolarActualizacion(grupo, () -> dao.updateGrupo(grupo));
+		}
+
+		@Override
+		public void addMensaje(Grupo grupo, Mensaje mensaje) {
+			cola.encolar(() -> dao.addMensaje(grupo, mensaje));
+		}
+
+		@Override
+		public Grupo getGrupo(int id) {
+			return cola.leer(() -> dao.getGrupo(id));
+		}
+
+		@Override
+		public List<Grupo> getAll() {
+			return cola.leer(dao::getAll);
+		}
+	}
+
+	private static final class MensajeDiferido implements MensajeDAO {
+		private final MensajeDAO dao;
+		private final ColaEscrituras cola;
+
+		MensajeDiferido(MensajeDAO dao, ColaEscrituras cola) {
+			this.dao = dao;
+			this.cola = cola;
+		}
+
+		@Override
+		public void registrarMensaje(Mensaje msj) {
+			// el identificador solo lo usan las escrituras posteriores, que se ejecutan después
+			cola.encolar(() -> dao.registrarMensaje(msj));
+		}
+
+		@Override
+		public void eliminarMensaje(Mensaje msj) {
+			cola.encolar(() -> dao.eliminarMensaje(msj));
+		}
+
+		@Override
+		public Mensaje getMensaje(int id) {
+			return cola.leer(() -> dao.getMensaje(id));
+		}
+
+		@Override
+		public List<Mensaje> getMensajes(int[] ids) {
+			return cola.leer(() -> dao.getMensajes(ids));
+		}
+
+		@Override
+		public List<Mensaje> getAll() {
+			return cola.leer(dao::getAll);
+		}
+	}
+}
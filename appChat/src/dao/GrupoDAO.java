@@ -3,6 +3,7 @@ package dao;
 import java.util.List;
 
 import dominio.Grupo;
+import dominio.Mensaje;
 
 
 /**
@@ -29,6 +30,14 @@ public interface GrupoDAO{
 	 */
 	void updateGrupo(Grupo grupo);
 
+	/**
+	 * Añade al historial persistido de un grupo un mensaje ya registrado,
+	 * sin reescribir los mensajes anteriores.
+	 * @param grupo El grupo al que se ha añadido el mensaje.
+	 * @param mensaje El mensaje, ya registrado.
+	 */
+	void addMensaje(Grupo grupo, Mensaje mensaje);
+
 	/**
 	 * Recupera un grupo de la capa de persistencia dado su identificador.
 	 * @param id El identificador único del grupo.
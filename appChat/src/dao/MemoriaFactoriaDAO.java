@@ -0,0 +1,58 @@
+package dao;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Factoria concreta DAO que guarda los datos en memoria, sin servidor de persistencia.
+ * <p>
+ * Usa los adaptadores de TDS sobre un {@link ServicioPersistenciaMemoria}, cuya latencia y
+ * probabilidad de fallo por llamada se configuran con las propiedades del sistema
+ * {@code appchat.memoria.latenciaMicros} y {@code appchat.memoria.probabilidadFallo}
+ * (0 por defecto). Pensada para pruebas de carga y benchmarks: los datos se pierden al
+ * terminar la aplicación.
+ * </p>
+ */
+
+public final class MemoriaFactoriaDAO extends FactoriaDAO {
+
+	private final ServicioPersistenciaMemoria servicio;
+	private final TDSFactoriaDAO tds = new TDSFactoriaDAO();
+
+	/**
+	 * Crea la factoría e instala su servicio en memoria en los adaptadores TDS.
+	 * @throws IllegalStateException Si los adaptadores TDS ya usan otro servicio de persistencia.
+	 */
+	public MemoriaFactoriaDAO() {
+		servicio = new ServicioPersistenciaMemoria(
+				Long.getLong("appchat.memoria.latenciaMicros", 0), TimeUnit.MICROSECONDS,
+				Double.parseDouble(System.getProperty("appchat.memoria.probabilidadFallo", "0")));
+		TDSFactoriaDAO.setServicioPersistencia(servicio);
+	}
+
+	/**
+	 * @return El servicio de persistencia en memoria, para ajustar su latencia o sus fallos.
+	 */
+	public ServicioPersistenciaMemoria getServicio() {
+		return servicio;
+	}
+
+	@Override
+	public UsuarioDAO getUsuarioDAO() {
+		return tds.getUsuarioDAO();
+	}
+
+	@Override
+	public GrupoDAO getGrupoDAO() {
+		return tds.getGrupoDAO();
+	}
+
+	@Override
+	public MensajeDAO getMensajeDAO() {
+		return tds.getMensajeDAO();
+	}
+
+	@Override
+	public ContactoIndividualDAO getContactoIndividualDAO() {
+		return tds.getContactoIndividualDAO();
+	}
+}
@@ -30,6 +30,14 @@ public interface MensajeDAO {
 	 */
 	Mensaje getMensaje(int id);
 
+	/**
+	 * Recupera en bloque los mensajes con los identificadores dados.
+	 * @param ids Los identificadores de los mensajes.
+	 * @return Una lista con los mensajes, en el mismo orden que {@code ids}. Los identificadores
+	 * que no corresponden a ningún mensaje se omiten.
+	 */
+	List<Mensaje> getMensajes(int[] ids);
+
 	/**
 	 * Recupera todos los mensajes existentes en la capa de persistencia.
 	 * @return Una lista de todos los objetos Mensaje.
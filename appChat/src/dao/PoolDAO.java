@@ -1,10 +1,23 @@
 package dao;
 
-import java.util.HashMap;
+import dominio.ContactoIndividual;
+import dominio.Grupo;
+import dominio.Mensaje;
+import dominio.Usuario;
 
 /**
  * Enumeración que actúa como un pool de objetos DAO recuperados de la base de datos
  * para evitar recuperaciones duplicadas.
+ * <p>
+ * Cada tipo de entidad tiene su propia caché tipada y acotada (ver {@link CacheEntidades}),
+ * con su capacidad y sus estadísticas. La capacidad de cada una puede fijarse mediante
+ * las propiedades del sistema {@code appchat.pool.usuarios}, {@code appchat.pool.contactos},
+ * {@code appchat.pool.grupos} y {@code appchat.pool.mensajes}.
+ * </p>
+ * <p>
+ * Usuarios, contactos y grupos se referencian entre sí, así que sus cachés comparten una
+ * {@link ConstruccionEntidades}: ningún hilo obtiene uno de ellos a medio construir.
+ * </p>
  */
 public enum PoolDAO {
 /*Hay que crear una colección genérica para almacenar todos los objetos que se hayan recuperado de la
@@ -15,48 +28,64 @@ public enum PoolDAO {
 	 */
 	INSTANCE;
 
-	private HashMap<Integer, Object> pool;
+	private static final String PREFIJO_PROPIEDAD = "appchat.pool.";
+
+	private final CacheEntidades<Usuario> usuarios;
+	private final CacheEntidades<ContactoIndividual> contactos;
+	private final CacheEntidades<Grupo> grupos;
+	private final CacheEntidades<Mensaje> mensajes;
 
 	/**
-	 * Constructor privado de la enumeración. Inicializa el mapa para almacenar objetos.
+	 * Constructor privado de la enumeración. Inicializa una caché por tipo de entidad.
 	 */
 	private PoolDAO () {
-		pool = new HashMap<Integer, Object>();
+		ConstruccionEntidades grafo = new ConstruccionEntidades();
+		usuarios = crearCache("usuarios", 5000, grafo);
+		contactos = crearCache("contactos", 20000, grafo);
+		grupos = crearCache("grupos", 5000, grafo);
+		// los historiales guardan sus mensajes por columnas: aquí solo los pedidos uno a uno
+		mensajes = crearCache("mensajes", 1000, null);
+	}
+
+	private static <T> CacheEntidades<T> crearCache(String tipo, int capacidadPorDefecto,
+			ConstruccionEntidades construccion) {
+		return new CacheEntidades<T>(Integer.getInteger(PREFIJO_PROPIEDAD + tipo, capacidadPorDefecto), construccion);
 	}
 
 	/**
-	 * Añade un objeto al pool con su identificador único.
-	 * @param id El identificador único del objeto.
-	 * @param object El objeto a añadir al pool.
+	 * @return La caché de usuarios.
 	 */
-	public void addObject(int id, Object object) {
-		pool.put(id, object);
+	public CacheEntidades<Usuario> getUsuarios() {
+		return usuarios;
 	}
 
 	/**
-	 * Recupera un objeto del pool dado su identificador.
-	 * @param id El identificador único del objeto a recuperar.
-	 * @return El objeto del pool, o null si no se encuentra.
+	 * @return La caché de contactos individuales.
 	 */
-	public Object getObject(int id) {
-		return pool.get(id);
+	public CacheEntidades<ContactoIndividual> getContactos() {
+		return contactos;
 	}
 
 	/**
-	 * Comprueba si un objeto con el identificador dado se encuentra en el pool.
-	 * @param id El identificador único a comprobar.
-	 * @return true si el pool contiene un objeto con el id, false en caso contrario.
+	 * @return La caché de grupos.
 	 */
-	public boolean contains(int id) {
-		return pool.containsKey(id);
+	public CacheEntidades<Grupo> getGrupos() {
+		return grupos;
 	}
 
 	/**
-	 * Elimina un objeto del pool dado su identificador.
-	 * @param id El identificador único del objeto a eliminar.
+	 * @return La caché de mensajes.
 	 */
-	public void removeObjet(int id) {
-		pool.remove(id);
+	public CacheEntidades<Mensaje> getMensajes() {
+		return mensajes;
+	}
+
+	@Override
+	public String toString() {
+		return "PoolDAO{usuarios=" + usuarios +
+				", contactos=" + contactos +
+				", grupos=" + grupos +
+				", mensajes=" + mensajes + '}';
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,346 @@
+package dao;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import beans.Entidad;
+import beans.Propiedad;
+import tds.driver.ServicioPersistencia;
+
+/**
+ * Servicio de persistencia que guarda las entidades en memoria, dentro del propio proceso.
+ * <p>
+ * Sustituye al servidor de persistencia H2 en pruebas de carga y benchmarks. Como el servidor,
+ * asigna identificadores a las entidades y propiedades registradas, y trabaja con copias: las
+ * entidades recuperadas no comparten estado con las almacenadas, de modo que los cambios en ellas
+ * solo se guardan al escribirlas explícitamente. Es seguro para hilos.
+ * </p>
+ * <p>
+ * Para simular el coste de ida y vuelta al servidor, cada llamada al servicio puede esperar una
+ * latencia fija y fallar con una probabilidad dada, lanzando {@link FalloSimulado} antes de
+ * modificar nada. Por defecto no hay latencia ni fallos.
+ * </p>
+ */
+public class ServicioPersistenciaMemoria implements ServicioPersistencia {
+
+	private final AtomicInteger siguienteIdEntidad = new AtomicInteger(1);
+	private final AtomicInteger siguienteIdPropiedad = new AtomicInteger(1);
+
+	private final Map<Integer, EntidadAlmacenada> entidades = new ConcurrentHashMap<>();
+	private final Map<Integer, Propiedad> propiedades = new ConcurrentHashMap<>();
+	private final Map<String, ConcurrentSkipListSet<Integer>> idsPorNombre = new ConcurrentHashMap<>();
+
+	private volatile long latenciaNanos;
+	private volatile double probabilidadFallo;
+	private final LongAdder llamadas = new LongAdder();
+	private final LongAdder fallos = new LongAdder();
+
+	/**
+	 * Fallo inyectado por el servicio al llamarlo (ver {@link #setProbabilidadFallo(double)}).
+	 */
+	public static final class FalloSimulado extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		FalloSimulado(String operacion) {
+			super("Fallo simulado de persistencia en " + operacion);
+		}
+	}
+
+	/**
+	 * Crea un servicio vacío, sin latencia ni fallos.
+	 */
+	public ServicioPersistenciaMemoria() {
+	}
+
+	/**
+	 * Crea un servicio vacío con la latencia y la probabilidad de fallo indicadas.
+	 * @param latencia Latencia de cada llamada.
+	 * @param unidad Unidad de la latencia.
+	 * @param probabilidadFallo Probabilidad, entre 0 y 1, de que una llamada falle.
+	 */
+	public ServicioPersistenciaMemoria(long latencia, TimeUnit unidad, double probabilidadFallo) {
+		setLatencia(latencia, unidad);
+		setProbabilidadFallo(probabilidadFallo);
+	}
+
+	/**
+	 * Fija la latencia que espera cada llamada al servicio.
+	 * @param latencia Latencia de cada llamada; 0 para no esperar.
+	 * @param unidad Unidad de la latencia.
+	 */
+	public void setLatencia(long latencia, TimeUnit unidad) {
+		if (latencia < 0) throw new IllegalArgumentException("La latencia no puede ser negativa");
+		latenciaNanos = unidad.toNanos(latencia);
+	}
+
+	/**
+	 * Fija la probabilidad de que una llamada al servicio falle con {@link FalloSimulado}.
+	 * @param probabilidad Probabilidad entre 0 (nunca) y 1 (siempre).
+	 */
+	public void setProbabilidadFallo(double probabilidad) {
+		if (probabilidad < 0 || probabilidad > 1) {
+			throw new IllegalArgumentException("La probabilidad de fallo debe estar entre 0 y 1");
+		}
+		probabilidadFallo = probabilidad;
+	}
+
+	/**
+	 * Entidad almacenada: su nombre y los identificadores de sus propiedades, en orden.
+	 */
+	private static final class EntidadAlmacenada {
+		final String nombre;
+		final List<Integer> idsPropiedades = new ArrayList<>();
+
+		EntidadAlmacenada(String nombre) {
+			this.nombre = nombre;
+		}
+	}
+
+	@Override
+	public Entidad registrarEntidad(Entidad entidad) {
+		llamada("registrarEntidad");
+		EntidadAlmacenada almacenada = new EntidadAlmacenada(entidad.getNombre());
+		if (entidad.getPropiedades() != null) {
+			for (Propiedad prop : entidad.getPropiedades()) {
+				almacenada.idsPropiedades.add(guardarPropiedad(prop).getId());
+			}
+		}
+		int id = siguienteIdEntidad.getAndIncrement();
+		entidad.setId(id);
+		entidades.put(id, almacenada);
+		idsPorNombre.computeIfAbsent(almacenada.nombre, n -> new ConcurrentSkipListSet<>()).add(id);
+		return entidad;
+	}
+
+	@Override
+	public boolean borrarEntidad(Entidad entidad) {
+		llamada("borrarEntidad");
+		EntidadAlmacenada almacenada = entidades.remove(entidad.getId());
+		if (almacenada == null) return false;
+		synchronized (almacenada) {
+			almacenada.idsPropiedades.forEach(propiedades::remove);
+		}
+		idsPorNombre.get(almacenada.nombre).remove(entidad.getId());
+		return true;
+	}
+
+	@Override
+	public boolean modificarEntidad(Entidad entidad) {
+		llamada("modificarEntidad");
+		EntidadAlmacenada almacenada = entidades.get(entidad.getId());
+		if (almacenada == null) return false;
+		synchronized (almacenada) {
+			Set<Integer> ids = new LinkedHashSet<>();
+			for (Propiedad prop : entidad.getPropiedades()) {
+				if (prop.getId() == 0 || !propiedades.containsKey(prop.getId())) {
+					guardarPropiedad(prop);
+				} else {
+					reemplazarPropiedad(prop);
+				}
+				ids.add(prop.getId());
+			}
+			almacenada.idsPropiedades.stream().filter(id -> !ids.contains(id)).forEach(propiedades::remove);
+			almacenada.idsPropiedades.clear();
+			almacenada.idsPropiedades.addAll(ids);
+		}
+		return true;
+	}
+
+	@Override
+	public Entidad recuperarEntidad(int id) {
+		llamada("recuperarEntidad");
+		return leerEntidad(id);
+	}
+
+	private Entidad leerEntidad(int id) {
+		EntidadAlmacenada almacenada = entidades.get(id);
+		if (almacenada == null) return null;
+		Entidad entidad = new Entidad();
+		entidad.setId(id);
+		entidad.setNombre(almacenada.nombre);
+		List<Propiedad> props = new ArrayList<>();
+		synchronized (almacenada) {
+			for (int idProp : almacenada.idsPropiedades) {
+				Propiedad prop = leerPropiedad(idProp);
+				if (prop != null) props.add(prop);
+			}
+		}
+		entidad.setPropiedades(props);
+		return entidad;
+	}
+
+	@Override
+	public List<Entidad> recuperarEntidades() {
+		llamada("recuperarEntidades");
+		List<Entidad> resultado = new ArrayList<>();
+		for (int id : entidades.keySet()) {
+			Entidad entidad = leerEntidad(id);
+			if (entidad != null) resultado.add(entidad);
+		}
+		return resultado;
+	}
+
+	@Override
+	public List<Entidad> recuperarEntidades(String nombre) {
+		llamada("recuperarEntidades");
+		List<Entidad> resultado = new ArrayList<>();
+		ConcurrentSkipListSet<Integer> ids = idsPorNombre.get(nombre);
+		if (ids == null) return resultado;
+		for (int id : ids) {
+			Entidad entidad = leerEntidad(id);
+			if (entidad != null) resultado.add(entidad);
+		}
+		return resultado;
+	}
+
+	@Override
+	public Propiedad registrarPropiedad(Propiedad propiedad) {
+		llamada("registrarPropiedad");
+		return guardarPropiedad(propiedad);
+	}
+
+	private Propiedad guardarPropiedad(Propiedad propiedad) {
+		propiedad.setId(siguienteIdPropiedad.getAndIncrement());
+		propiedades.put(propiedad.getId(), copiar(propiedad));
+		return propiedad;
+	}
+
+	@Override
+	public boolean borrarPropiedad(Propiedad propiedad) {
+		llamada("borrarPropiedad");
+		return propiedades.remove(propiedad.getId()) != null;
+	}
+
+	@Override
+	public boolean modificarPropiedad(Propiedad propiedad) {
+		llamada("modificarPropiedad");
+		return reemplazarPropiedad(propiedad);
+	}
+
+	private boolean reemplazarPropiedad(Propiedad propiedad) {
+		return propiedades.replace(propiedad.getId(), copiar(propiedad)) != null;
+	}
+
+	@Override
+	public Propiedad recuperarPropiedad(int id) {
+		llamada("recuperarPropiedad");
+		return leerPropiedad(id);
+	}
+
+	private Propiedad leerPropiedad(int id) {
+		Propiedad prop = propiedades.get(id);
+		return (prop != null) ? copiar(prop) : null;
+	}
+
+	@Override
+	public boolean anadirPropiedadEntidad(Entidad entidad, String nombre, String valor) {
+		llamada("anadirPropiedadEntidad");
+		EntidadAlmacenada almacenada = entidades.get(entidad.getId());
+		if (almacenada == null) return false;
+		Propiedad prop = guardarPropiedad(new Propiedad(nombre, valor));
+		synchronized (almacenada) {
+			almacenada.idsPropiedades.add(prop.getId());
+		}
+		entidad.getPropiedades().add(prop);
+		return true;
+	}
+
+	@Override
+	public boolean eliminarPropiedadEntidad(Entidad entidad, String nombre) {
+		llamada("eliminarPropiedadEntidad");
+		EntidadAlmacenada almacenada = entidades.get(entidad.getId());
+		if (almacenada == null) return false;
+		boolean eliminada = false;
+		synchronized (almacenada) {
+			for (Propiedad prop : entidad.getPropiedades()) {
+				if (nombre.equals(prop.getNombre())) {
+					almacenada.idsPropiedades.remove(Integer.valueOf(prop.getId()));
+					propiedades.remove(prop.getId());
+					eliminada = true;
+				}
+			}
+		}
+		entidad.getPropiedades().removeIf(p -> nombre.equals(p.getNombre()));
+		return eliminada;
+	}
+
+	@Override
+	public boolean modificarPropiedadEntidad(Entidad entidad, String nombre, String valor) {
+		llamada("modificarPropiedadEntidad");
+		boolean modificada = false;
+		for (Propiedad prop : entidad.getPropiedades()) {
+			if (nombre.equals(prop.getNombre())) {
+				prop.setValor(valor);
+				modificada |= reemplazarPropiedad(prop);
+			}
+		}
+		return modificada;
+	}
+
+	@Override
+	public String recuperarPropiedadEntidad(Entidad entidad, String nombre) {
+		llamada("recuperarPropiedadEntidad");
+		for (Propiedad prop : entidad.getPropiedades()) {
+			if (nombre.equals(prop.getNombre())) return prop.getValor();
+		}
+		return null;
+	}
+
+	/**
+	 * @return Número de llamadas recibidas por el servicio, incluidas las que han fallado.
+	 */
+	public long getLlamadas() {
+		return llamadas.sum();
+	}
+
+	/**
+	 * @return Número de llamadas que han fallado con {@link FalloSimulado}.
+	 */
+	public long getFallos() {
+		return fallos.sum();
+	}
+
+	/**
+	 * @return Número de entidades almacenadas.
+	 */
+	public int getNumeroEntidades() {
+		return entidades.size();
+	}
+
+	/**
+	 * Simula el coste de una llamada al servidor: espera la latencia configurada y, con la
+	 * probabilidad de fallo configurada, falla sin llegar a realizar la operación.
+	 */
+	private void llamada(String operacion) {
+		llamadas.increment();
+		long latencia = latenciaNanos;
+		if (latencia > 0) {
+			long fin = System.nanoTime() + latencia;
+			long restante;
+			while ((restante = fin - System.nanoTime()) > 0) {
+				LockSupport.parkNanos(restante);
+			}
+		}
+		double probabilidad = probabilidadFallo;
+		if (probabilidad > 0 && ThreadLocalRandom.current().nextDouble() < probabilidad) {
+			fallos.increment();
+			throw new FalloSimulado(operacion);
+		}
+	}
+
+	private static Propiedad copiar(Propiedad propiedad) {
+		Propiedad copia = new Propiedad(propiedad.getNombre(), propiedad.getValor());
+		copia.setId(propiedad.getId());
+		return copia;
+	}
+}
@@ -0,0 +1,186 @@
+package dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import beans.Entidad;
+import beans.Propiedad;
+import tds.driver.ServicioPersistencia;
+import utils.IntObjectMap;
+
+/**
+ * Lista de identificadores de los mensajes de una conversación (contacto individual o grupo),
+ * almacenada por bloques en propiedades de su entidad.
+ * <p>
+ * El primer bloque es la propiedad {@value #MENSAJES}; los siguientes son las propiedades
+ * {@code mensajes.1}, {@code mensajes.2}, ..., de como mucho {@link #TAMANO_BLOQUE} ids cada una.
+ * Añadir un mensaje solo modifica el último bloque, o registra uno nuevo cuando está lleno, de modo
+ * que el coste de la escritura no depende de la longitud de la conversación. Las entidades guardadas
+ * con el formato anterior, con todos los ids en la propiedad {@value #MENSAJES}, se leen igual: ese
+ * bloque se considera lleno.
+ * </p>
+ * <p>
+ * La primera vez que se añade un mensaje a una conversación se recupera su entidad y se recuerda su
+ * último bloque para las siguientes escrituras. No se guarda esa entidad: las demás propiedades
+ * pueden haber cambiado entretanto (por ejemplo, el nombre de un grupo). Un bloque nuevo se enlaza
+ * con {@code anadirPropiedadEntidad} sobre la entidad recién recuperada, ya que el servidor guarda
+ * la entidad entera que recibe: con una incompleta se perderían las propiedades que le faltasen.
+ * </p>
+ */
+final class TDSBloquesMensajes {
+
+	/**
+	 * Nombre de la propiedad con el primer bloque de ids.
+	 */
+	static final String MENSAJES = "mensajes";
+
+	/**
+	 * Número máximo de ids por bloque. Configurable con la propiedad del sistema
+	 * {@code appchat.mensajes.tamanoBloque}.
+	 */
+	static final int TAMANO_BLOQUE = Integer.getInteger("appchat.mensajes.tamanoBloque", 256);
+
+	private static final String PREFIJO_BLOQUE = MENSAJES + ".";
+
+	private final ServicioPersistencia servPersistencia;
+	// estado de escritura de las conversaciones a las que se ha añadido algún mensaje, por id de entidad
+	private final IntObjectMap<Cola> colas = new IntObjectMap<>();
+
+	/**
+	 * Último bloque de una conversación, al que se añaden los nuevos ids.
+	 */
+	private static final class Cola {
+		Propiedad ultimo;
+		int idsEnUltimo;
+		int numBloques;
+	}
+
+	TDSBloquesMensajes(ServicioPersistencia servPersistencia) {
+		this.servPersistencia = servPersistencia;
+	}
+
+	/**
+	 * Lee los ids de todos los bloques de una entidad.
+	 * @param entidad La entidad de la conversación.
+	 * @return Los identificadores de los mensajes, del más antiguo al más reciente.
+	 */
+	int[] leerIds(Entidad entidad) {
+		List<Propiedad> bloques = getBloques(entidad);
+		int[][] ids = new int[bloques.size()][];
+		int total = 0;
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = TDSMensajeDAO.obtenerIdsDeCodigos(bloques.get(i).getValor());
+			total += ids[i].length;
+		}
+		if (ids.length == 1) return ids[0];
+		int[] resultado = new int[total];
+		int pos = 0;
+		for (int[] bloque : ids) {
+			System.arraycopy(bloque, 0, resultado, pos, bloque.length);
+			pos += bloque.length;
+		}
+		return resultado;
+	}
+
+	/**
+	 * Añade el id de un mensaje al final de la lista persistida de una conversación.
+	 * Solo escribe el último bloque, o registra uno nuevo si está lleno.
+	 * @param idEntidad El identificador de la entidad de la conversación.
+	 * @param idMensaje El identificador del mensaje, ya registrado.
+	 */
+	synchronized void anadir(int idEntidad, int idMensaje) {
+		Cola cola = colas.get(idEntidad);
+		if (cola == null) {
+			cola = crearCola(servPersistencia.recuperarEntidad(idEntidad));
+			colas.put(idEntidad, cola);
+		}
+		String id = String.valueOf(idMensaje);
+		if (cola.idsEnUltimo < TAMANO_BLOQUE) {
+			String valor = cola.ultimo.getValor();
+			cola.ultimo.setValor((valor == null || valor.isBlank()) ? id : valor + " " + id);
+			try {
+				servPersistencia.modificarPropiedad(cola.ultimo);
+			} catch (RuntimeException e) {
+				cola.ultimo.setValor(valor); // para que reintentar no duplique el id
+				throw e;
+			}
+			cola.idsEnUltimo++;
+		} else {
+			cola.ultimo = anadirBloque(idEntidad, PREFIJO_BLOQUE + cola.numBloques, id);
+			cola.idsEnUltimo = 1;
+			cola.numBloques++;
+		}
+	}
+
+	/**
+	 * Olvida el estado de escritura de una conversación eliminada.
+	 * @param idEntidad El identificador de la entidad de la conversación.
+	 */
+	synchronized void olvidar(int idEntidad) {
+		colas.remove(idEntidad);
+	}
+
+	/**
+	 * Enlaza un bloque nuevo a la entidad de una conversación, conservando sus otras propiedades.
+	 * @return La propiedad del bloque, para las siguientes escrituras.
+	 */
+	private Propiedad anadirBloque(int idEntidad, String nombre, String valor) {
+		// el servidor fusiona la entidad recibida con la guardada: debe ir completa y al día
+		Entidad entidad = servPersistencia.recuperarEntidad(idEntidad);
+		if (entidad == null) {
+			throw new IllegalStateException("No existe la entidad " + idEntidad);
+		}
+		if (!servPersistencia.anadirPropiedadEntidad(entidad, nombre, valor)) {
+			throw new IllegalStateException("No se pudo añadir el bloque " + nombre + " a la entidad " + idEntidad);
+		}
+		for (Propiedad prop : entidad.getPropiedades()) {
+			if (nombre.equals(prop.getNombre())) return prop;
+		}
+		// el servicio no ha devuelto la propiedad en la entidad: se busca en la guardada
+		for (Propiedad prop : servPersistencia.recuperarEntidad(idEntidad).getPropiedades()) {
+			if (nombre.equals(prop.getNombre())) return prop;
+		}
+		throw new IllegalStateException("No se encuentra el bloque " + nombre + " de la entidad " + idEntidad);
+	}
+
+	private static Cola crearCola(Entidad entidad) {
+		List<Propiedad> bloques = getBloques(entidad);
+		Cola cola = new Cola();
+		cola.ultimo = bloques.get(bloques.size() - 1);
+		cola.idsEnUltimo = TDSMensajeDAO.obtenerIdsDeCodigos(cola.ultimo.getValor()).length;
+		cola.numBloques = indiceBloque(cola.ultimo.getNombre()) + 1;
+		return cola;
+	}
+
+	/**
+	 * Obtiene las propiedades con los bloques de ids de una entidad, en orden.
+	 */
+	private static List<Propiedad> getBloques(Entidad entidad) {
+		Propiedad[] bloques = new Propiedad[entidad.getPropiedades().size()];
+		int numBloques = 0;
+		for (Propiedad prop : entidad.getPropiedades()) {
+			int indice = indiceBloque(prop.getNombre());
+			if (indice >= 0 && indice < bloques.length) {
+				bloques[indice] = prop;
+				numBloques = Math.max(numBloques, indice + 1);
+			}
+		}
+		if (numBloques == 0 || bloques[0] == null) {
+			throw new IllegalStateException("La entidad " + entidad.getId() + " no tiene la propiedad " + MENSAJES);
+		}
+		List<Propiedad> resultado = new ArrayList<>(Arrays.asList(bloques).subList(0, numBloques));
+		resultado.removeIf(p -> p == null);
+		return resultado;
+	}
+
+	private static int indiceBloque(String nombre) {
+		if (MENSAJES.equals(nombre)) return 0;
+		if (nombre == null || !nombre.startsWith(PREFIJO_BLOQUE)) return -1;
+		try {
+			return Integer.parseInt(nombre.substring(PREFIJO_BLOQUE.length()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+}
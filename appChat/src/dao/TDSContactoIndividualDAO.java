@@ -4,14 +4,15 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 import beans.Entidad;
 import beans.Propiedad;
+import dominio.CargadorMensajes;
+import dominio.Contacto;
 import dominio.ContactoIndividual;
 import dominio.Mensaje;
 import dominio.Usuario;
-import tds.driver.FactoriaServicioPersistencia;
 import tds.driver.ServicioPersistencia;
 
 
@@ -23,18 +24,23 @@ public class TDSContactoIndividualDAO implements ContactoIndividualDAO {
 	private static final String CONTACTOINDIVIDUAL = "ContactoIndividual";
 	private static final String USUARIO = "usuario";
 	private static final String NOMBRE = "nombre";
-	private static final String MENSAJES = "mensajes";
+	private static final String MENSAJES = TDSBloquesMensajes.MENSAJES;
+	// propiedades que puede escribir una actualización: nombre y usuario
+	private static final int CAMPOS_MODIFICABLES = 2;
 
 
 
 	private ServicioPersistencia servPersistencia;
+	private TDSBloquesMensajes bloquesMensajes;
+	private volatile CargadorMensajes cargadorMensajes = TDSMensajeDAO.getInstance()::getMensajes;
 	private static TDSContactoIndividualDAO unicaInstancia = null;
 
 	/**
 	 * Constructor privado para asegurar una única instancia (Singleton).
 	 */
 	private TDSContactoIndividualDAO() {
-		servPersistencia = FactoriaServicioPersistencia.getInstance().getServicioPersistencia();
+		servPersistencia = TDSFactoriaDAO.getServicioPersistencia();
+		bloquesMensajes = new TDSBloquesMensajes(servPersistencia);
 	}
 
 	/**
@@ -46,6 +52,16 @@ public class TDSContactoIndividualDAO implements ContactoIndividualDAO {
 		return unicaInstancia;
 	}
 
+	/**
+	 * Fija cómo recuperan sus mensajes los historiales de los contactos que se carguen a partir de
+	 * ahora. Por defecto se leen directamente con {@link TDSMensajeDAO}; una factoría que
+	 * envuelve este adaptador puede pasar su propio {@link MensajeDAO}.
+	 * @param cargador La estrategia de carga de mensajes.
+	 */
+	void setCargadorMensajes(CargadorMensajes cargador) {
+		cargadorMensajes = cargador;
+	}
+
 
 	/**
 	 * Registra un contacto individual en la capa de persistencia.
@@ -73,12 +89,13 @@ public class TDSContactoIndividualDAO implements ContactoIndividualDAO {
 				new ArrayList<Propiedad>(Arrays.asList(
 						new Propiedad(NOMBRE, contInd.getNombre()),
 						new Propiedad(USUARIO, String.valueOf(contInd.getUsuario().getId())),
-						new Propiedad(MENSAJES, obtenerCodigosMensajes(contInd.getMensajesEnviados()))
+						new Propiedad(MENSAJES, obtenerCodigosMensajes(contInd.getIdsMensajes()))
 						)));
 
 		eNuevoContInd = servPersistencia.registrarEntidad(eNuevoContInd);
 		contInd.setId(eNuevoContInd.getId());
-		PoolDAO.INSTANCE.addObject(contInd.getId(), contInd);
+		contInd.getCambios().limpiar();
+		PoolDAO.INSTANCE.getContactos().put(contInd.getId(), contInd);
 	}
 
 
@@ -94,7 +111,8 @@ public class TDSContactoIndividualDAO implements ContactoIndividualDAO {
 		contInd.getMensajesEnviados().stream()
 										.forEach(TDSMensajeDAO.getInstance()::eliminarMensaje);
 		servPersistencia.borrarEntidad(eContInd.get());
-		if (PoolDAO.INSTANCE.contains(contInd.getId())) PoolDAO.INSTANCE.removeObjet(eContInd.get().getId());
+		bloquesMensajes.olvidar(eContInd.get().getId());
+		PoolDAO.INSTANCE.getContactos().remove(eContInd.get().getId());
 		//supongo que mejor no usar la entidad que acabamos de borrar
 	}
 
@@ -103,23 +121,58 @@ public class TDSContactoIndividualDAO implements ContactoIndividualDAO {
 	//mantenemos actualizar el Usuario asociado al contacto?
 	/**
 	 * Actualiza la información de un contacto individual en la capa de persistencia.
+	 * El historial de mensajes no se reescribe: los mensajes nuevos se persisten con
+	 * {@link #addMensaje(ContactoIndividual, Mensaje)}.
 	 * @param contInd El objeto ContactoIndividual con la información actualizada.
 	 */
 	@Override
 	public void updateContactoIndividual(ContactoIndividual contInd) {
+		// solo se escriben las propiedades de los campos modificados desde la última escritura
+		Set<Contacto.Campo> modificados = contInd.getCambios().consumir();
+		if (modificados.isEmpty()) {
+			EstadisticasEscritura.INSTANCE.registrar(0, CAMPOS_MODIFICABLES);
+			return;
+		}
+		try {
+			escribirCampos(contInd, modificados);
+		} catch (RuntimeException e) {
+			// lo no escrito sigue pendiente: se escribirá en la siguiente actualización
+			contInd.getCambios().restaurar(modificados);
+			throw e;
+		}
+	}
+
+	/**
+	 * Escribe las propiedades de los campos modificados.
+	 */
+	private void escribirCampos(ContactoIndividual contInd, Set<Contacto.Campo> modificados) {
 		Entidad eContInd = servPersistencia.recuperarEntidad(contInd.getId());
 
+		int escritas = 0;
 		for(Propiedad prop : eContInd.getPropiedades()) {
-			if(prop.getNombre().equals(NOMBRE)) {
+			if(prop.getNombre().equals(NOMBRE) && modificados.contains(Contacto.Campo.NOMBRE)) {
 				prop.setValor(contInd.getNombre());
-			} else if (prop.getNombre().equals(USUARIO)) {
+			} else if (prop.getNombre().equals(USUARIO) && modificados.contains(Contacto.Campo.USUARIO)) {
 				prop.setValor(String.valueOf(contInd.getUsuario().getId()));
-			} else if (prop.getNombre().equals(MENSAJES)) {
-				prop.setValor(obtenerCodigosMensajes(contInd.getMensajesEnviados()));
+			} else {
+				continue;
 			}
 
 			servPersistencia.modificarPropiedad(prop);
+			escritas++;
 		}
+		EstadisticasEscritura.INSTANCE.registrar(escritas, CAMPOS_MODIFICABLES - escritas);
+	}
+
+	/**
+	 * Añade un mensaje ya registrado al historial persistido del contacto. Solo se escribe
+	 * el último bloque de la lista de mensajes, sea cual sea la longitud de la conversación.
+	 * @param contInd El contacto al que se ha añadido el mensaje.
+	 * @param mensaje El mensaje, ya registrado.
+	 */
+	@Override
+	public void addMensaje(ContactoIndividual contInd, Mensaje mensaje) {
+		bloquesMensajes.anadir(contInd.getId(), mensaje.getId());
 	}
 
 	/**
@@ -129,8 +182,15 @@ public class TDSContactoIndividualDAO implements ContactoIndividualDAO {
 	 */
 	@Override
 	public ContactoIndividual getContactoIndividual(int id) {
-		if(PoolDAO.INSTANCE.contains(id)) return (ContactoIndividual) PoolDAO.INSTANCE.getObject(id);
+		return PoolDAO.INSTANCE.getContactos().obtener(id, this::cargarContactoIndividual);
+	}
 
+	/**
+	 * Construye un contacto individual a partir de su entidad en la capa de persistencia.
+	 * @param id El identificador único del contacto individual.
+	 * @return El objeto ContactoIndividual recuperado.
+	 */
+	private ContactoIndividual cargarContactoIndividual(int id) {
 		Entidad eContaEntidad = servPersistencia.recuperarEntidad(id);
 
 		String nombre = servPersistencia.recuperarPropiedadEntidad(eContaEntidad, NOMBRE);
@@ -141,14 +201,18 @@ public class TDSContactoIndividualDAO implements ContactoIndividualDAO {
 		//creamos con user null para evitar bulces
 		ContactoIndividual contInd = new ContactoIndividual(nombre);
 		contInd.setId(id);
-		PoolDAO.INSTANCE.addObject(id, contInd);
+		ContactoIndividual publicado = PoolDAO.INSTANCE.getContactos().putIfAbsent(id, contInd);
+		if (publicado != contInd) return publicado;
 
 		//recuperamos agregados
 		user = TDSUsuarioDAO.getInstance().getUsuario(Integer.parseInt(servPersistencia.recuperarPropiedadEntidad(eContaEntidad, USUARIO)));
 		contInd.setUsuario(user);
 
-		List<Mensaje> mensajes =obtenerMensajesDeCodigos(servPersistencia.recuperarPropiedadEntidad(eContaEntidad, MENSAJES));
-		mensajes.stream().forEach(contInd::addMensaje);
+		//los mensajes se cargan bajo demanda a partir de sus ids
+		contInd.setMensajesPersistidos(
+				bloquesMensajes.leerIds(eContaEntidad),
+				cargadorMensajes);
+		contInd.getCambios().limpiar();
 
 		return contInd;
 	}
@@ -168,25 +232,17 @@ public class TDSContactoIndividualDAO implements ContactoIndividualDAO {
 	}
 
 	/**
-	 * Convierte una lista de mensajes a una cadena de texto con sus códigos separados por espacios.
-	 * @param mensajes La lista de mensajes.
+	 * Convierte una lista de identificadores de mensajes a una cadena de texto con los códigos separados por espacios.
+	 * @param ids Los identificadores de los mensajes.
 	 * @return Una cadena de texto con los códigos de los mensajes.
 	 */
-	private String obtenerCodigosMensajes(List<Mensaje> mensajes) {
-
-		return mensajes.stream().map(m -> String.valueOf(m.getId())).reduce("", (i, m) -> i + m + " ").trim();
-	}
-
-	/**
-	 * Convierte una cadena de texto con códigos de mensajes separados por espacios a una lista de mensajes.
-	 * @param codigos La cadena de texto con los códigos.
-	 * @return Una lista de objetos Mensaje.
-	 */
-	private List<Mensaje> obtenerMensajesDeCodigos(String codigos) {
-	    return Arrays.stream(codigos.split(" "))
-	                 .filter(c -> !c.isEmpty())
-	                 .map(c -> TDSMensajeDAO.getInstance().getMensaje(Integer.parseInt(c)))
-	                 .collect(Collectors.toList());
+	private String obtenerCodigosMensajes(int[] ids) {
+		StringBuilder codigos = new StringBuilder(ids.length * 8);
+		for (int id : ids) {
+			if (codigos.length() > 0) codigos.append(' ');
+			codigos.append(id);
+		}
+		return codigos.toString();
 	}
 
 
@@ -1,17 +1,52 @@
 package dao;
 
+import tds.driver.FactoriaServicioPersistencia;
+import tds.driver.ServicioPersistencia;
+
 /**
  * Factoria concreta DAO para el Servidor de Persistencia de la asignatura TDS.
- *
+ * <p>
+ * Por defecto los adaptadores usan el servicio de persistencia del servidor H2; puede
+ * sustituirse por otro, como {@link ServicioPersistenciaMemoria}, con
+ * {@link #setServicioPersistencia(ServicioPersistencia)}.
+ * </p>
  */
 
 public final class TDSFactoriaDAO extends FactoriaDAO {
 
+	private static ServicioPersistencia servicioPersistencia;
+
 	/**
 	 * Constructor por defecto.
 	 */
 	public TDSFactoriaDAO() {	}
 
+	/**
+	 * Obtiene el servicio de persistencia de los adaptadores TDS: el fijado con
+	 * {@link #setServicioPersistencia(ServicioPersistencia)} o, si no se ha fijado ninguno,
+	 * el del servidor de persistencia H2.
+	 * @return El servicio de persistencia.
+	 */
+	static synchronized ServicioPersistencia getServicioPersistencia() {
+		if (servicioPersistencia == null) {
+			servicioPersistencia = FactoriaServicioPersistencia.getInstance().getServicioPersistencia();
+		}
+		return servicioPersistencia;
+	}
+
+	/**
+	 * Fija el servicio de persistencia de los adaptadores TDS. Debe llamarse antes de usar
+	 * cualquiera de ellos, ya que cada adaptador lo obtiene una sola vez al crearse.
+	 * @param servicio El servicio de persistencia a usar.
+	 * @throws IllegalStateException Si los adaptadores ya usan otro servicio.
+	 */
+	public static synchronized void setServicioPersistencia(ServicioPersistencia servicio) {
+		if (servicioPersistencia != null && servicioPersistencia != servicio) {
+			throw new IllegalStateException("Los adaptadores TDS ya usan otro servicio de persistencia");
+		}
+		servicioPersistencia = servicio;
+	}
+
 	/**
 	 * Obtiene la implementación DAO para Usuario.
 	 * @return La instancia de UsuarioDAO.
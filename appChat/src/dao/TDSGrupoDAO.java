@@ -5,15 +5,16 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import beans.Entidad;
 import beans.Propiedad;
+import dominio.CargadorMensajes;
 import dominio.Contacto;
 import dominio.ContactoIndividual;
 import dominio.Grupo;
 import dominio.Mensaje;
-import tds.driver.FactoriaServicioPersistencia;
 import tds.driver.ServicioPersistencia;
 
 /**
@@ -24,17 +25,22 @@ public class TDSGrupoDAO implements GrupoDAO {
 
 	private static final String GRUPO = "Grupo";
 	private static final String NOMBRE = "nombre";
-	private static final String MENSAJES = "mensajes";
+	private static final String MENSAJES = TDSBloquesMensajes.MENSAJES;
+	// propiedades que puede escribir una actualización: nombre y miembros
+	private static final int CAMPOS_MODIFICABLES = 2;
 	private static final String MIEMBROS = "miembros";
 
 	private ServicioPersistencia servPersistencia;
+	private TDSBloquesMensajes bloquesMensajes;
+	private volatile CargadorMensajes cargadorMensajes = TDSMensajeDAO.getInstance()::getMensajes;
 	private static TDSGrupoDAO unicaInstancia = null;
 
 	/**
 	 * Constructor privado para asegurar una única instancia (Singleton).
 	 */
 	private TDSGrupoDAO() {
-		servPersistencia = FactoriaServicioPersistencia.getInstance().getServicioPersistencia();
+		servPersistencia = TDSFactoriaDAO.getServicioPersistencia();
+		bloquesMensajes = new TDSBloquesMensajes(servPersistencia);
 	}
 
 	/**
@@ -46,6 +52,16 @@ public class TDSGrupoDAO implements GrupoDAO {
 		return unicaInstancia;
 	}
 
+	/**
+	 * Fija cómo recuperan sus mensajes los historiales de los grupos que se carguen a partir de
+	 * ahora. Por defecto se leen directamente con {@link TDSMensajeDAO}; una factoría que
+	 * envuelve este adaptador puede pasar su propio {@link MensajeDAO}.
+	 * @param cargador La estrategia de carga de mensajes.
+	 */
+	void setCargadorMensajes(CargadorMensajes cargador) {
+		cargadorMensajes = cargador;
+	}
+
 
 	/**
 	 * Registra un grupo en la capa de persistencia.
@@ -76,13 +92,14 @@ public class TDSGrupoDAO implements GrupoDAO {
 		eNuevoGrupo.setPropiedades(
 				new ArrayList<Propiedad>(Arrays.asList(
 						new Propiedad(NOMBRE, grupo.getNombre()),
-						new Propiedad(MENSAJES, obtenerCodigosMensajes(grupo.getMensajesEnviados())),
+						new Propiedad(MENSAJES, obtenerCodigosMensajes(grupo.getIdsMensajes())),
 						new Propiedad(MIEMBROS, obtenerCodigosMiembros(grupo.getMiembros()))
 						)));
 
 		eNuevoGrupo = servPersistencia.registrarEntidad(eNuevoGrupo);
 		grupo.setId(eNuevoGrupo.getId());
-		PoolDAO.INSTANCE.addObject(grupo.getId(), grupo);
+		grupo.getCambios().limpiar();
+		PoolDAO.INSTANCE.getGrupos().put(grupo.getId(), grupo);
 	}
 
 	/**
@@ -97,30 +114,64 @@ public class TDSGrupoDAO implements GrupoDAO {
 		grupo.getMensajesEnviados().stream().forEach(TDSMensajeDAO.getInstance()::eliminarMensaje);
 
 		servPersistencia.borrarEntidad(eGrupo.get());
-		if (PoolDAO.INSTANCE.contains(grupo.getId())) PoolDAO.INSTANCE.removeObjet(grupo.getId());
+		bloquesMensajes.olvidar(grupo.getId());
+		PoolDAO.INSTANCE.getGrupos().remove(grupo.getId());
 	}
 
 	//consideramos necesario comprobar que exista?
 	/**
 	 * Actualiza la información de un grupo en la capa de persistencia.
+	 * El historial de mensajes no se reescribe: los mensajes nuevos se persisten con
+	 * {@link #addMensaje(Grupo, Mensaje)}.
 	 * @param grupo El objeto Grupo con la información actualizada.
 	 */
 	@Override
 	public void updateGrupo(Grupo grupo) {
+		// solo se escriben las propiedades de los campos modificados desde la última escritura
+		Set<Contacto.Campo> modificados = grupo.getCambios().consumir();
+		if (modificados.isEmpty()) {
+			EstadisticasEscritura.INSTANCE.registrar(0, CAMPOS_MODIFICABLES);
+			return;
+		}
+		try {
+			escribirCampos(grupo, modificados);
+		} catch (RuntimeException e) {
+			// lo no escrito sigue pendiente: se escribirá en la siguiente actualización
+			grupo.getCambios().restaurar(modificados);
+			throw e;
+		}
+	}
 
+	/**
+	 * Escribe las propiedades de los campos modificados.
+	 */
+	private void escribirCampos(Grupo grupo, Set<Contacto.Campo> modificados) {
 		Entidad eGrupo = servPersistencia.recuperarEntidad(grupo.getId());
+		int escritas = 0;
 		for(Propiedad prop : eGrupo.getPropiedades()) {
-			if(prop.getNombre().equals(NOMBRE)) {
+			if(prop.getNombre().equals(NOMBRE) && modificados.contains(Contacto.Campo.NOMBRE)) {
 				prop.setValor(grupo.getNombre());
-			} else if (prop.getNombre().equals(MIEMBROS)) {
+			} else if (prop.getNombre().equals(MIEMBROS) && modificados.contains(Contacto.Campo.MIEMBROS)) {
 				prop.setValor(obtenerCodigosMiembros(grupo.getMiembros()));
-			} else if (prop.getNombre().equals(MENSAJES)) {
-				prop.setValor(obtenerCodigosMensajes(grupo.getMensajesEnviados()));
+			} else {
+				continue;
 			}
 
 			servPersistencia.modificarPropiedad(prop);
+			escritas++;
 		}
+		EstadisticasEscritura.INSTANCE.registrar(escritas, CAMPOS_MODIFICABLES - escritas);
+	}
 
+	/**
+	 * Añade un mensaje ya registrado al historial persistido del grupo. Solo se escribe
+	 * el último bloque de la lista de mensajes, sea cual sea la longitud de la conversación.
+	 * @param grupo El grupo al que se ha añadido el mensaje.
+	 * @param mensaje El mensaje, ya registrado.
+	 */
+	@Override
+	public void addMensaje(Grupo grupo, Mensaje mensaje) {
+		bloquesMensajes.anadir(grupo.getId(), mensaje.getId());
 	}
 
 	/**
@@ -130,22 +181,34 @@ public class TDSGrupoDAO implements GrupoDAO {
 	 */
 	@Override
 	public Grupo getGrupo(int id) {
-		if(PoolDAO.INSTANCE.contains(id)) return (Grupo) PoolDAO.INSTANCE.getObject(id);
+		return PoolDAO.INSTANCE.getGrupos().obtener(id, this::cargarGrupo);
+	}
 
+	/**
+	 * Construye un grupo a partir de su entidad en la capa de persistencia.
+	 * @param id El identificador único del grupo.
+	 * @return El objeto Grupo recuperado.
+	 */
+	private Grupo cargarGrupo(int id) {
 		Entidad eGrupo = servPersistencia.recuperarEntidad(id);
 
 		String nombre = servPersistencia.recuperarPropiedadEntidad(eGrupo, NOMBRE);
 		//según lo tenemos realmente un mensaje no contiene usuario ni contactos
-		List<Mensaje> mensajes =obtenerMensajesDeCodigos(servPersistencia.recuperarPropiedadEntidad(eGrupo, MENSAJES));
 		List<Contacto> miembros = null;
 
-		Grupo grupo = new Grupo(nombre, mensajes);
+		Grupo grupo = new Grupo(nombre);
 		grupo.setId(id);
+		//los mensajes se cargan bajo demanda a partir de sus ids
+		grupo.setMensajesPersistidos(
+				bloquesMensajes.leerIds(eGrupo),
+				cargadorMensajes);
 
-		PoolDAO.INSTANCE.addObject(id, grupo);
+		Grupo publicado = PoolDAO.INSTANCE.getGrupos().putIfAbsent(id, grupo);
+		if (publicado != grupo) return publicado;
 
 		miembros = obtenerMiembrosDeCodigos(servPersistencia.recuperarPropiedadEntidad(eGrupo, MIEMBROS));
 		miembros.stream().forEach(m -> grupo.addMiembro((ContactoIndividual)m));
+		grupo.getCambios().limpiar();
 
 
 		return grupo;
@@ -167,25 +230,17 @@ public class TDSGrupoDAO implements GrupoDAO {
 
 	//duplicamos código para no exponer este tipo de funciones que pueden revelar información sensible de la BDD
 	/**
-	 * Convierte una lista de mensajes a una cadena de texto con sus códigos separados por espacios.
-	 * @param mensajes La lista de mensajes.
+	 * Convierte una lista de identificadores de mensajes a una cadena de texto con los códigos separados por espacios.
+	 * @param ids Los identificadores de los mensajes.
 	 * @return Una cadena de texto con los códigos de los mensajes.
 	 */
-	private String obtenerCodigosMensajes(List<Mensaje> mensajes) {
-
-			return mensajes.stream().map(m -> String.valueOf(m.getId())).reduce("", (i, m) -> i + m + " ").trim();
+	private String obtenerCodigosMensajes(int[] ids) {
+		StringBuilder codigos = new StringBuilder(ids.length * 8);
+		for (int id : ids) {
+			if (codigos.length() > 0) codigos.append(' ');
+			codigos.append(id);
 		}
-
-	/**
-	 * Convierte una cadena de texto con códigos de mensajes separados por espacios a una lista de mensajes.
-	 * @param codigos La cadena de texto con los códigos.
-	 * @return Una lista de objetos Mensaje.
-	 */
-	private List<Mensaje> obtenerMensajesDeCodigos(String codigos) {
-	    return Arrays.stream(codigos.split(" "))
-	                 .filter(c -> !c.isEmpty())
-	                 .map(c -> TDSMensajeDAO.getInstance().getMensaje(Integer.parseInt(c)))
-	                 .collect(Collectors.toList());
+		return codigos.toString();
 	}
 
 	/**
@@ -4,12 +4,13 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import beans.Entidad;
 import beans.Propiedad;
 import dominio.Mensaje;
-import tds.driver.FactoriaServicioPersistencia;
 import tds.driver.ServicioPersistencia;
 import utils.Utils;
 
@@ -31,7 +32,7 @@ public class TDSMensajeDAO implements MensajeDAO {
 	 * Constructor privado para asegurar una única instancia (Singleton).
 	 */
 	private TDSMensajeDAO() {
-		servPersistencia = FactoriaServicioPersistencia.getInstance().getServicioPersistencia();
+		servPersistencia = TDSFactoriaDAO.getServicioPersistencia();
 	}
 
 	/**
@@ -68,8 +69,8 @@ public class TDSMensajeDAO implements MensajeDAO {
 						)));
 
 		eNuevoMensaje = servPersistencia.registrarEntidad(eNuevoMensaje);
+		// no se guarda en el pool: el historial ya tiene sus datos y solo lo conserva hasta este id
 		msj.setId(eNuevoMensaje.getId());
-		PoolDAO.INSTANCE.addObject(eNuevoMensaje.getId(), msj);
 	}
 
 //comprobar si salta error al intentar eliminar un mensaje que no existe en la base de datos
@@ -86,7 +87,7 @@ public class TDSMensajeDAO implements MensajeDAO {
 		};
 		servPersistencia.borrarEntidad(eMensaje.get());
 
-		if(PoolDAO.INSTANCE.contains(msj.getId())) PoolDAO.INSTANCE.removeObjet(msj.getId());
+		PoolDAO.INSTANCE.getMensajes().remove(msj.getId());
 	}
 /*
 	@Override
@@ -117,35 +118,97 @@ public class TDSMensajeDAO implements MensajeDAO {
 	 */
 	@Override
 	public Mensaje getMensaje(int id) {
-		if (PoolDAO.INSTANCE.contains(id)) return (Mensaje) PoolDAO.INSTANCE.getObject(id);
+		return PoolDAO.INSTANCE.getMensajes().obtener(id, this::cargarMensaje);
+	}
+
+	/**
+	 * Construye un mensaje a partir de su entidad en la capa de persistencia.
+	 * @param id El identificador único del mensaje.
+	 * @return El objeto Mensaje recuperado.
+	 */
+	private Mensaje cargarMensaje(int id) {
+		return decodificarMensaje(servPersistencia.recuperarEntidad(id));
+	}
+
+	/**
+	 * Recupera en bloque los mensajes con los identificadores dados.
+	 * Los que no están en el pool se recuperan con una llamada al servidor por mensaje (el
+	 * servicio no permite pedir varias entidades por id a la vez; el historial los pide por
+	 * páginas, así que son pocos), y se construyen leyendo las propiedades de cada entidad en
+	 * una sola pasada. Estos no se guardan en el pool: el historial copia sus datos a una
+	 * página por columnas y los descarta, y conservarlos duplicaría los mensajes en memoria.
+	 * @param ids Los identificadores de los mensajes.
+	 * @return Una lista con los mensajes, en el mismo orden que {@code ids}. Los identificadores
+	 * que no corresponden a ningún mensaje se omiten.
+	 */
+	@Override
+	public List<Mensaje> getMensajes(int[] ids) {
+		CacheEntidades<Mensaje> cache = PoolDAO.INSTANCE.getMensajes();
+		Mensaje[] mensajes = new Mensaje[ids.length];
+		int pendientes = 0;
+		for (int i = 0; i < ids.length; i++) {
+			mensajes[i] = cache.get(ids[i]);
+			if (mensajes[i] == null) pendientes++;
+		}
+		if (pendientes == 0) return new ArrayList<>(Arrays.asList(mensajes));
+
+		for (int i = 0; i < ids.length; i++) {
+			if (mensajes[i] != null) continue;
+			Entidad eMensaje = servPersistencia.recuperarEntidad(ids[i]);
+			if (eMensaje != null) mensajes[i] = decodificarMensaje(eMensaje);
+		}
+		return Arrays.stream(mensajes).filter(Objects::nonNull).collect(Collectors.toList());
+	}
 
-		Entidad eMensaje = servPersistencia.recuperarEntidad(id);
-		//recuperamos propiedades
-		String texto = servPersistencia.recuperarPropiedadEntidad(eMensaje, TEXTO);
-		int emoticono = Integer.parseInt(servPersistencia.recuperarPropiedadEntidad(eMensaje, EMOTICONO));
-		String fecha = servPersistencia.recuperarPropiedadEntidad(eMensaje, FECHA);
-		LocalDateTime fechaMsj = LocalDateTime.parse(fecha, Utils.formatoFechaHora);
-		int tipo = Integer.parseInt(servPersistencia.recuperarPropiedadEntidad(eMensaje, TIPO));
+	/**
+	 * Construye un mensaje a partir de su entidad, recorriendo sus propiedades una sola vez
+	 * en lugar de pedir cada una al servidor.
+	 * @param eMensaje La entidad del mensaje.
+	 * @return El objeto Mensaje correspondiente.
+	 */
+	private Mensaje decodificarMensaje(Entidad eMensaje) {
+		String texto = "";
+		int emoticono = Mensaje.SIN_EMOTICONO;
+		LocalDateTime fechaMsj = null;
+		int tipo = 0;
+		for (Propiedad prop : eMensaje.getPropiedades()) {
+			switch (prop.getNombre()) {
+				case TEXTO -> texto = prop.getValor();
+				case EMOTICONO -> emoticono = Integer.parseInt(prop.getValor());
+				case FECHA -> fechaMsj = LocalDateTime.parse(prop.getValor(), Utils.formatoFechaHora);
+				case TIPO -> tipo = Integer.parseInt(prop.getValor());
+				default -> { }
+			}
+		}
 
 		Mensaje mensaje = new Mensaje(texto, emoticono, fechaMsj, tipo);
-		mensaje.setId(id);
-		PoolDAO.INSTANCE.addObject(id, mensaje);
+		mensaje.setId(eMensaje.getId());
 
 		return mensaje;
 	}
 
+	/**
+	 * Convierte una cadena de texto con códigos separados por espacios a un array de identificadores.
+	 * @param codigos La cadena de texto con los códigos.
+	 * @return Los identificadores, en el mismo orden que en la cadena.
+	 */
+	static int[] obtenerIdsDeCodigos(String codigos) {
+		if (codigos == null || codigos.isBlank()) return new int[0];
+		return Arrays.stream(codigos.trim().split(" +")).mapToInt(Integer::parseInt).toArray();
+	}
+
 	/**
 	 * Recupera todos los mensajes existentes en la capa de persistencia.
 	 * @return Una lista de todos los objetos Mensaje.
 	 */
 	@Override
 	public List<Mensaje> getAll() {
-		List<Mensaje> mensajes = new ArrayList<>();
+		CacheEntidades<Mensaje> cache = PoolDAO.INSTANCE.getMensajes();
 		List<Entidad> eMensajes = servPersistencia.recuperarEntidades(MENSAJE);
 
-		eMensajes.stream().forEach(e -> mensajes.add(getMensaje(e.getId())));
-
-		return mensajes;
+		return eMensajes.stream()
+				.map(e -> cache.obtener(e.getId(), id -> decodificarMensaje(e)))
+				.collect(Collectors.toList());
 	}
 
 }
\ No newline at end of file
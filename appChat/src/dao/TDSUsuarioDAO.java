@@ -3,17 +3,20 @@ package dao;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import dominio.Contacto;
 import dominio.ContactoIndividual;
+import dominio.EstadisticasMensajes;
 import dominio.Grupo;
 //import tds.driver.ServicioPersistencia;
 import dominio.Usuario;
-import tds.driver.FactoriaServicioPersistencia;
 import tds.driver.ServicioPersistencia;
 import utils.Utils;
 import beans.Entidad;
@@ -39,6 +42,7 @@ public final class TDSUsuarioDAO implements UsuarioDAO {
 	private static final String CONTACTOS = "contactosIndiv";
 	private static final String GRUPOS = "grupos";
 	private static final String FECHA_REGISTRO = "fechaRegistro";
+	private static final String ESTADISTICAS = "estadisticas";
 
 	private ServicioPersistencia servPersistencia;
 	private static TDSUsuarioDAO unicaInstancia = null;
@@ -47,7 +51,7 @@ public final class TDSUsuarioDAO implements UsuarioDAO {
 	 * Constructor privado para asegurar una única instancia (Singleton).
 	 */
 	private TDSUsuarioDAO() {
-		servPersistencia = FactoriaServicioPersistencia.getInstance().getServicioPersistencia();
+		servPersistencia = TDSFactoriaDAO.getServicioPersistencia();
 	}
 
 	/**
@@ -102,12 +106,14 @@ public final class TDSUsuarioDAO implements UsuarioDAO {
 						new Propiedad(PREMIUM, String.valueOf(user.isPremium())),
 						new Propiedad(FECHA_REGISTRO, Utils.formatoFecha.format(user.getFechaRegistro())),
 						new Propiedad(CONTACTOS,  obtenerCodigosContactos(contactosInd)),
-						new Propiedad(GRUPOS,  obtenerCodigosContactos(grupos))
+						new Propiedad(GRUPOS,  obtenerCodigosContactos(grupos)),
+						new Propiedad(ESTADISTICAS, user.getEstadisticas().codificar())
 		)));
 
 		eNuevoUsuario = servPersistencia.registrarEntidad(eNuevoUsuario);
 		user.setId(eNuevoUsuario.getId());
-		PoolDAO.INSTANCE.addObject(user.getId(), user);
+		user.getCambios().limpiar();
+		PoolDAO.INSTANCE.getUsuarios().put(user.getId(), user);
 	}
 
 	/**
@@ -134,7 +140,7 @@ public final class TDSUsuarioDAO implements UsuarioDAO {
 					.forEach(c -> TDSContactoIndividualDAO.getInstance().eliminarContactoIndividual((ContactoIndividual) c));
 
 		servPersistencia.borrarEntidad(eUsuario.get());
-		if(PoolDAO.INSTANCE.contains(user.getId())) PoolDAO.INSTANCE.removeObjet(user.getId());
+		PoolDAO.INSTANCE.getUsuarios().remove(user.getId());
 	}
 
 	/**
@@ -147,44 +153,72 @@ public final class TDSUsuarioDAO implements UsuarioDAO {
 	 */
 	@Override
 	public void updateUsuario(Usuario user) {
-		Entidad eUsuario = servPersistencia.recuperarEntidad(user.getId());
-
-		//como tenemos esta parte repetida en varias funciones, creamos funciones a parte para no repetir código?
-		List<Contacto> grupos = user.getContactos().stream()
-					.filter(c -> c instanceof Grupo)
-					.collect(Collectors.toList());
+		// solo se escriben las propiedades de los campos modificados desde la última escritura
+		Set<Usuario.Campo> modificados = user.getCambios().consumir();
+		if (modificados.isEmpty()) {
+			EstadisticasEscritura.INSTANCE.registrar(0, Usuario.Campo.values().length);
+			return;
+		}
+		try {
+			escribirCampos(user, modificados);
+		} catch (RuntimeException e) {
+			// lo no escrito sigue pendiente: se escribirá en la siguiente actualización
+			user.getCambios().restaurar(modificados);
+			throw e;
+		}
+	}
 
-		List<Contacto> contactosInd = user.getContactos().stream()
-			 						 .filter(c -> c instanceof ContactoIndividual)
-			 						 .collect(Collectors.toList());
+	/**
+	 * Escribe las propiedades de los campos modificados.
+	 */
+	private void escribirCampos(Usuario user, Set<Usuario.Campo> modificados) {
+		Entidad eUsuario = servPersistencia.recuperarEntidad(user.getId());
 
+		int escritas = 0;
+		boolean conEstadisticas = false;
 		for (Propiedad prop : eUsuario.getPropiedades()) {
-			if (prop.getNombre().equals(PASSWORD)) {
+			if (prop.getNombre().equals(PASSWORD) && modificados.contains(Usuario.Campo.PASSWORD)) {
 				prop.setValor(user.getPassword());
-			} else if (prop.getNombre().equals(EMAIL)) {
+			} else if (prop.getNombre().equals(EMAIL) && modificados.contains(Usuario.Campo.EMAIL)) {
 				prop.setValor(user.getEmail());
-			} else if (prop.getNombre().equals(NOMBRE)) {
+			} else if (prop.getNombre().equals(NOMBRE) && modificados.contains(Usuario.Campo.NOMBRE)) {
 				prop.setValor(user.getNombre());
-			} else if (prop.getNombre().equals(APELLIDOS)) {
+			} else if (prop.getNombre().equals(APELLIDOS) && modificados.contains(Usuario.Campo.APELLIDOS)) {
 				prop.setValor(user.getApellidos());
-			} else if (prop.getNombre().equals(MOVIL)) {
+			} else if (prop.getNombre().equals(MOVIL) && modificados.contains(Usuario.Campo.MOVIL)) {
 				prop.setValor(user.getMovil());
-			} else if (prop.getNombre().equals(FECHA_NACIMIENTO)) {
+			} else if (prop.getNombre().equals(FECHA_NACIMIENTO) && modificados.contains(Usuario.Campo.FECHA_NACIMIENTO)) {
 				prop.setValor(Utils.formatoFecha.format(user.getFechaNacimiento()));
-			} else if (prop.getNombre().equals(SALUDO)) {
+			} else if (prop.getNombre().equals(SALUDO) && modificados.contains(Usuario.Campo.SALUDO)) {
 				prop.setValor(user.getSaludo());
-			} else if (prop.getNombre().equals(IMAGEN)) {
+			} else if (prop.getNombre().equals(IMAGEN) && modificados.contains(Usuario.Campo.IMAGEN)) {
 				prop.setValor(user.getURLImagen());
-			} else if (prop.getNombre().equals(PREMIUM)) {
+			} else if (prop.getNombre().equals(PREMIUM) && modificados.contains(Usuario.Campo.PREMIUM)) {
 				prop.setValor(String.valueOf(user.isPremium()));
-			} else if (prop.getNombre().equals(CONTACTOS)) {
-				prop.setValor(obtenerCodigosContactos(contactosInd));
-			} else if (prop.getNombre().equals(GRUPOS)) {
-				prop.setValor(obtenerCodigosContactos(grupos));
+			} else if (prop.getNombre().equals(CONTACTOS) && modificados.contains(Usuario.Campo.CONTACTOS)) {
+				prop.setValor(obtenerCodigosContactos(user.getContactos().stream()
+						.filter(c -> c instanceof ContactoIndividual)
+						.collect(Collectors.toList())));
+			} else if (prop.getNombre().equals(GRUPOS) && modificados.contains(Usuario.Campo.GRUPOS)) {
+				prop.setValor(obtenerCodigosContactos(user.getContactos().stream()
+						.filter(c -> c instanceof Grupo)
+						.collect(Collectors.toList())));
+			} else if (prop.getNombre().equals(ESTADISTICAS) && modificados.contains(Usuario.Campo.ESTADISTICAS)) {
+				prop.setValor(user.getEstadisticas().codificar());
+				conEstadisticas = true;
+			} else {
+				continue;
 			}
 
 			servPersistencia.modificarPropiedad(prop);
+			escritas++;
+		}
+		// los usuarios guardados antes de existir las estadísticas no tienen la propiedad
+		if (modificados.contains(Usuario.Campo.ESTADISTICAS) && !conEstadisticas) {
+			servPersistencia.anadirPropiedadEntidad(eUsuario, ESTADISTICAS, user.getEstadisticas().codificar());
+			escritas++;
 		}
+		EstadisticasEscritura.INSTANCE.registrar(escritas, Usuario.Campo.values().length - escritas);
 	}
 
 	/**
@@ -194,7 +228,17 @@ public final class TDSUsuarioDAO implements UsuarioDAO {
 	 */
 	@Override
 	public Usuario getUsuario(int id) {
-		if(PoolDAO.INSTANCE.contains(id)) return (Usuario) PoolDAO.INSTANCE.getObject(id);
+		return PoolDAO.INSTANCE.getUsuarios().obtener(id, this::cargarUsuario);
+	}
+
+	/**
+	 * Construye un usuario a partir de su entidad en la capa de persistencia.
+	 * El usuario se publica en el pool antes de recuperar sus contactos para romper los ciclos
+	 * entre usuarios y contactos. Si otro hilo lo ha publicado antes, se devuelve esa instancia.
+	 * @param id El identificador único del usuario.
+	 * @return El objeto Usuario recuperado.
+	 */
+	private Usuario cargarUsuario(int id) {
 		Entidad eUsuario = servPersistencia.recuperarEntidad(id);
 
 		String nombre = servPersistencia.recuperarPropiedadEntidad(eUsuario, NOMBRE);
@@ -226,7 +270,9 @@ public final class TDSUsuarioDAO implements UsuarioDAO {
 		Usuario user = builderUser.build();
 
 		user.setId(id);
-		PoolDAO.INSTANCE.addObject(id, user);
+		// si otro hilo ya ha publicado este usuario, se usa su instancia
+		Usuario publicado = PoolDAO.INSTANCE.getUsuarios().putIfAbsent(id, user);
+		if (publicado != user) return publicado;
 
 		List<Contacto> contactosInd = obtenerContactosIndDeCodigos(
 				servPersistencia.recuperarPropiedadEntidad(eUsuario, CONTACTOS));
@@ -236,6 +282,15 @@ public final class TDSUsuarioDAO implements UsuarioDAO {
 
 		contactosInd.stream().forEach(user::addContacto);
 		grupos.stream().forEach(user::addContacto);
+		// sin estadísticas guardadas (o ilegibles), el usuario las calculará la primera vez que se consulten
+		String estadisticas = servPersistencia.recuperarPropiedadEntidad(eUsuario, ESTADISTICAS);
+		try {
+			user.setEstadisticas((estadisticas != null) ? EstadisticasMensajes.decodificar(estadisticas) : null);
+		} catch (IllegalArgumentException e) {
+			System.err.println("Estadísticas del usuario " + user.getId() + " descartadas: " + e.getMessage());
+			user.setEstadisticas(null);
+		}
+		user.getCambios().limpiar();
 
 		return user;
 	}
@@ -256,12 +311,27 @@ public final class TDSUsuarioDAO implements UsuarioDAO {
 		return usuarios;
 	}
 
+	/**
+	 * Recupera el móvil y el identificador de todos los usuarios con una única consulta,
+	 * sin construir los usuarios ni recuperar sus contactos.
+	 * @return Un mapa del número de móvil de cada usuario a su identificador.
+	 */
+	@Override
+	public Map<String, Integer> getIdsPorMovil() {
+		List<Entidad> entidades = servPersistencia.recuperarEntidades(USUARIO);
+		Map<String, Integer> ids = new HashMap<>(entidades.size() * 2);
+		for (Entidad e : entidades) {
+			ids.put(servPersistencia.recuperarPropiedadEntidad(e, MOVIL), e.getId());
+		}
+		return ids;
+	}
+
 	/**
 	 * Convierte una lista de contactos a una cadena de texto con sus códigos separados por espacios.
 	 * @param cont La lista de contactos.
 	 * @return Una cadena de texto con los códigos de los contactos.
 	 */
-	private String obtenerCodigosContactos(List<Contacto> cont) {
+	static String obtenerCodigosContactos(List<Contacto> cont) {
 
 			return cont.stream().map(c -> String.valueOf(c.getId())).reduce("", (i, c) -> i + c + " ").trim();
 	}
@@ -1,6 +1,7 @@
 package dao;
 
 import java.util.List;
+import java.util.Map;
 import dominio.Usuario;
 
 /**
@@ -40,4 +41,11 @@ public interface UsuarioDAO {
 	 */
 	List<Usuario> getAll();
 
+	/**
+	 * Recupera el índice de usuarios existentes sin construir los objetos Usuario
+	 * ni cargar sus contactos o mensajes.
+	 * @return Un mapa del número de móvil de cada usuario a su identificador.
+	 */
+	Map<String, Integer> getIdsPorMovil();
+
 }
\ No newline at end of file
@@ -0,0 +1,129 @@
+package dominio;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import dto.MensajeContextualizado;
+import tds.BubbleText;
+
+/**
+ * Resultado de una búsqueda de mensajes que se recorre por páginas, en orden de fecha.
+ * <p>
+ * Parte de los mensajes encontrados en cada contacto, que ya están en el orden de su
+ * historial (y por tanto de fecha), y los mezcla con una cola de prioridad que contiene el
+ * siguiente mensaje de cada contacto. Así cada página solo carga y ordena los mensajes que
+ * muestra, sin construir ni ordenar el resultado completo.
+ * </p>
+ * <p>
+ * La búsqueda puede cancelarse desde cualquier hilo con {@link #cancelar()}: a partir de
+ * entonces no devuelve más mensajes. Por lo demás, debe recorrerla un único hilo.
+ * </p>
+ */
+public class BusquedaMensajes {
+
+	/**
+	 * Número de mensajes por página recomendado para mostrar los resultados.
+	 */
+	public static final int TAMANO_PAGINA = 50;
+
+	private final String nombreUsuario;
+	private final PriorityQueue<Cursor> cola;
+	private volatile boolean cancelada;
+
+	/**
+	 * Posición de la mezcla en los mensajes encontrados de un contacto.
+	 */
+	private static final class Cursor {
+		final Contacto contacto;
+		final List<Mensaje> mensajes;
+		int siguiente;
+		Mensaje actual;
+
+		Cursor(Contacto contacto, List<Mensaje> mensajes) {
+			this.contacto = contacto;
+			this.mensajes = mensajes;
+			this.actual = mensajes.get(0);
+		}
+
+		boolean avanzar() {
+			if (++siguiente >= mensajes.size()) return false;
+			actual = mensajes.get(siguiente);
+			return true;
+		}
+	}
+
+	/**
+	 * Crea la búsqueda a partir de los mensajes encontrados en cada contacto.
+	 * @param nombreUsuario Nombre del usuario que busca, para los resultados.
+	 * @param encontrados Mensajes encontrados de cada contacto, ordenados por fecha.
+	 */
+	BusquedaMensajes(String nombreUsuario, Map<Contacto, List<Mensaje>> encontrados) {
+		this.nombreUsuario = nombreUsuario;
+		this.cola = new PriorityQueue<>(Math.max(1, encontrados.size()),
+				Comparator.comparing((Cursor c) -> c.actual.getFecha()));
+		encontrados.forEach((contacto, mensajes) -> {
+			if (!mensajes.isEmpty()) cola.add(new Cursor(contacto, mensajes));
+		});
+	}
+
+	/**
+	 * Crea una búsqueda sin resultados.
+	 * @param nombreUsuario Nombre del usuario que busca.
+	 * @return La búsqueda vacía.
+	 */
+	public static BusquedaMensajes vacia(String nombreUsuario) {
+		return new BusquedaMensajes(nombreUsuario, Map.of());
+	}
+
+	/**
+	 * @return true si quedan mensajes por devolver y la búsqueda no se ha cancelado.
+	 */
+	public boolean hayMas() {
+		return !cancelada && !cola.isEmpty();
+	}
+
+	/**
+	 * Devuelve los siguientes mensajes encontrados, en orden de fecha.
+	 * @param tamano Número máximo de mensajes a devolver.
+	 * @return Los mensajes; menos de {@code tamano} (o ninguno) si no quedan más o se ha cancelado.
+	 */
+	public List<MensajeContextualizado> siguientePagina(int tamano) {
+		List<MensajeContextualizado> pagina = new ArrayList<>(Math.min(tamano, TAMANO_PAGINA));
+		while (pagina.size() < tamano && hayMas()) {
+			Cursor cursor = cola.poll();
+			pagina.add(contextualizar(cursor.contacto, cursor.actual));
+			if (cursor.avanzar()) cola.add(cursor);
+		}
+		return pagina;
+	}
+
+	/**
+	 * Devuelve todos los mensajes que quedan por devolver, en orden de fecha.
+	 * @return Los mensajes restantes.
+	 */
+	public List<MensajeContextualizado> restantes() {
+		return siguientePagina(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Cancela la búsqueda: no se devolverán más mensajes.
+	 */
+	public void cancelar() {
+		cancelada = true;
+	}
+
+	/**
+	 * @return true si la búsqueda se ha cancelado.
+	 */
+	public boolean isCancelada() {
+		return cancelada;
+	}
+
+	private MensajeContextualizado contextualizar(Contacto contacto, Mensaje mensaje) {
+		String nombreInterlocutor = (mensaje.getTipo() == BubbleText.SENT) ? nombreUsuario : contacto.getNombre();
+		return new MensajeContextualizado(mensaje, nombreInterlocutor, nombreUsuario);
+	}
+}
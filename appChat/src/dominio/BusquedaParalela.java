@@ -0,0 +1,102 @@
+package dominio;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * Reparte entre los hilos de un {@link ForkJoinPool} un trabajo que se hace contacto a contacto,
+ * como recorrer sus historiales en una búsqueda.
+ * <p>
+ * La lista de contactos se divide en dos partes con tantos mensajes una como otra mientras
+ * superen el umbral {@code appchat.busqueda.umbralParalelo} (20000 mensajes por defecto); por
+ * debajo, no compensa repartir y los contactos se procesan uno tras otro. Las tareas comprueban antes de
+ * cada contacto si la búsqueda se ha cancelado, y en ese caso abandonan el trabajo.
+ * </p>
+ */
+final class BusquedaParalela {
+
+	static final int UMBRAL = Integer.getInteger("appchat.busqueda.umbralParalelo", 20_000);
+
+	private BusquedaParalela() {
+	}
+
+	/**
+	 * Aplica una función a cada contacto, en paralelo si los contactos suman suficientes mensajes.
+	 * @param <R> El tipo del resultado de cada contacto.
+	 * @param contactos Los contactos.
+	 * @param funcion La función; se llama desde varios hilos a la vez, con contactos distintos.
+	 * @param cancelada Indica si se ha cancelado el trabajo.
+	 * @return El resultado de cada contacto (los resultados nulos no se incluyen).
+	 * @throws CancellationException Si el trabajo se cancela antes de terminar.
+	 */
+	static <R> Map<Contacto, R> porContacto(Collection<Contacto> contactos, Function<Contacto, R> funcion,
+			BooleanSupplier cancelada) {
+		Contacto[] array = contactos.toArray(new Contacto[0]);
+		int[] mensajes = new int[array.length + 1]; // suma acumulada de mensajes
+		for (int i = 0; i < array.length; i++) {
+			mensajes[i + 1] = mensajes[i] + array[i].getNumeroMensajes();
+		}
+		Object[] resultados = new Object[array.length];
+		Tarea<R> tarea = new Tarea<>(array, mensajes, resultados, funcion, cancelada, 0, array.length);
+		if (mensajes[array.length] <= UMBRAL) {
+			tarea.compute();
+		} else {
+			ForkJoinPool.commonPool().invoke(tarea);
+		}
+		if (cancelada.getAsBoolean()) throw new CancellationException("Búsqueda cancelada");
+
+		Map<Contacto, R> porContacto = new IdentityHashMap<>();
+		for (int i = 0; i < array.length; i++) {
+			@SuppressWarnings("unchecked")
+			R resultado = (R) resultados[i];
+			if (resultado != null) porContacto.put(array[i], resultado);
+		}
+		return porContacto;
+	}
+
+	private static final class Tarea<R> extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Contacto[] contactos;
+		private final int[] mensajes;
+		private final Object[] resultados;
+		private final Function<Contacto, R> funcion;
+		private final BooleanSupplier cancelada;
+		private final int desde, hasta;
+
+		Tarea(Contacto[] contactos, int[] mensajes, Object[] resultados, Function<Contacto, R> funcion,
+				BooleanSupplier cancelada, int desde, int hasta) {
+			this.contactos = contactos;
+			this.mensajes = mensajes;
+			this.resultados = resultados;
+			this.funcion = funcion;
+			this.cancelada = cancelada;
+			this.desde = desde;
+			this.hasta = hasta;
+		}
+
+		@Override
+		protected void compute() {
+			if (hasta - desde > 1 && mensajes[hasta] - mensajes[desde] > UMBRAL) {
+				// se parte por la mitad de los mensajes, no de los contactos
+				int medio = (mensajes[desde] + mensajes[hasta]) >>> 1;
+				int mitad = Arrays.binarySearch(mensajes, desde, hasta, medio);
+				if (mitad < 0) mitad = -mitad - 1;
+				mitad = Math.max(desde + 1, Math.min(hasta - 1, mitad));
+				invokeAll(new Tarea<>(contactos, mensajes, resultados, funcion, cancelada, desde, mitad),
+						new Tarea<>(contactos, mensajes, resultados, funcion, cancelada, mitad, hasta));
+				return;
+			}
+			for (int i = desde; i < hasta && !cancelada.getAsBoolean(); i++) {
+				resultados[i] = funcion.apply(contactos[i]);
+			}
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package dominio;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Registro de los campos de un objeto del dominio modificados desde la última vez que se
+ * guardó en la persistencia.
+ * <p>
+ * Los objetos del dominio marcan aquí cada campo que cambian, y la capa de persistencia
+ * consulta y vacía el registro al actualizarlos para escribir solo lo que ha cambiado.
+ * Es seguro para hilos.
+ * </p>
+ *
+ * @param <C> El enumerado con los campos persistentes del objeto.
+ */
+public final class CambiosPendientes<C extends Enum<C>> {
+
+	private final EnumSet<C> campos;
+
+	/**
+	 * Crea un registro sin cambios.
+	 * @param tipo La clase del enumerado de campos.
+	 */
+	public CambiosPendientes(Class<C> tipo) {
+		campos = EnumSet.noneOf(tipo);
+	}
+
+	/**
+	 * Marca un campo como modificado.
+	 * @param campo El campo modificado.
+	 */
+	public synchronized void marcar(C campo) {
+		campos.add(campo);
+	}
+
+	/**
+	 * @return true si hay algún campo modificado pendiente de guardar.
+	 */
+	public synchronized boolean hayCambios() {
+		return !campos.isEmpty();
+	}
+
+	/**
+	 * Obtiene los campos modificados y vacía el registro.
+	 * @return Los campos modificados desde la última llamada.
+	 */
+	public synchronized Set<C> consumir() {
+		EnumSet<C> modificados = EnumSet.copyOf(campos);
+		campos.clear();
+		return modificados;
+	}
+
+	/**
+	 * Vuelve a marcar como modificados campos obtenidos con {@link #consumir()} que no se han
+	 * llegado a guardar, por ejemplo porque la escritura ha fallado.
+	 * @param noGuardados Los campos a marcar de nuevo.
+	 */
+	public synchronized void restaurar(Set<C> noGuardados) {
+		campos.addAll(noGuardados);
+	}
+
+	/**
+	 * Vacía el registro, por ejemplo tras guardar el objeto completo.
+	 */
+	public synchronized void limpiar() {
+		campos.clear();
+	}
+}
@@ -0,0 +1,23 @@
+package dominio;
+
+import java.util.List;
+
+/**
+ * Estrategia con la que un {@link HistorialMensajes} recupera bajo demanda los mensajes
+ * de los que solo conoce el identificador.
+ * <p>
+ * Permite que el dominio cargue el historial de forma perezosa sin depender de la capa
+ * de persistencia: normalmente se implementa con {@code MensajeDAO::getMensajes}.
+ * </p>
+ */
+@FunctionalInterface
+public interface CargadorMensajes {
+
+	/**
+	 * Recupera los mensajes con los identificadores dados.
+	 * @param ids Los identificadores de los mensajes.
+	 * @return Los mensajes, en el mismo orden que {@code ids}. Los identificadores que no
+	 * corresponden a ningún mensaje pueden omitirse.
+	 */
+	List<Mensaje> cargar(int[] ids);
+}
@@ -0,0 +1,198 @@
+package dominio;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+import tds.BubbleText;
+
+/**
+ * Almacén compacto de mensajes por columnas, usado por {@link HistorialMensajes} para guardar
+ * cada página del historial.
+ * <p>
+ * En lugar de un objeto {@link Mensaje} (con su {@code String} y su {@code LocalDateTime}) por
+ * mensaje, se guardan arrays paralelos con el identificador, el emoticono, el tipo y el
+ * instante (nanosegundos desde la época, en UTC) de cada fila, y los textos codificados en
+ * UTF-8, uno tras otro, en un único buffer de bytes. Cada fila ocupa así unos 24 bytes más
+ * su texto, frente a los más de 150 de un mensaje completo. Los mensajes se leen mediante
+ * vistas ligeras creadas con {@link #vista(int)}.
+ * </p>
+ * <p>
+ * Una fila puede ser un hueco: la posición de un mensaje que no se pudo recuperar de la
+ * persistencia. Su vista se lee como un mensaje recibido con el texto {@link #TEXTO_HUECO} y la
+ * fecha de la fila más cercana que no sea un hueco, para que quien recorre el historial no
+ * tenga que tratarlo aparte; {@link Mensaje#isDisponible()} permite distinguirlo.
+ * </p>
+ * <p>
+ * Es seguro para hilos.
+ * </p>
+ */
+final class ColumnasMensajes {
+
+	private static final long NANOS_POR_SEGUNDO = 1_000_000_000L;
+	private static final long HUECO = Long.MIN_VALUE;
+
+	/**
+	 * Texto de las vistas de los huecos.
+	 */
+	static final String TEXTO_HUECO = "Mensaje no disponible";
+
+	private int[] ids;
+	private int[] emoticonos;
+	private int[] tipos;
+	private long[] instantes;
+	private int[] finTextos; // el texto de la fila i ocupa [finTextos[i - 1], finTextos[i])
+	private byte[] textos;
+	private int filas;
+
+	/**
+	 * Crea un almacén vacío.
+	 * @param capacidad Número de filas previsto; el almacén crece si se supera.
+	 */
+	ColumnasMensajes(int capacidad) {
+		ids = new int[capacidad];
+		emoticonos = new int[capacidad];
+		tipos = new int[capacidad];
+		instantes = new long[capacidad];
+		finTextos = new int[capacidad];
+		textos = new byte[capacidad * 16];
+	}
+
+	/**
+	 * Añade una fila con los datos de un mensaje.
+	 * @return La posición de la fila.
+	 */
+	synchronized int anadir(int id, String texto, int emoticono, LocalDateTime fecha, int tipo) {
+		byte[] codificado = texto.getBytes(StandardCharsets.UTF_8);
+		int fila = nuevaFila(codificado.length);
+		ids[fila] = id;
+		emoticonos[fila] = emoticono;
+		tipos[fila] = tipo;
+		// fuera de los años 1677-2262 no cabe en nanosegundos: mejor fallar que guardar otra fecha
+		instantes[fila] = Math.addExact(Math.multiplyExact(fecha.toEpochSecond(ZoneOffset.UTC), NANOS_POR_SEGUNDO),
+				fecha.getNano());
+		int inicio = (fila == 0) ? 0 : finTextos[fila - 1];
+		System.arraycopy(codificado, 0, textos, inicio, codificado.length);
+		finTextos[fila] = inicio + codificado.length;
+		return fila;
+	}
+
+	/**
+	 * Añade una fila con los datos de un mensaje existente, incluido su identificador.
+	 * @return La posición de la fila.
+	 */
+	int anadir(Mensaje mensaje) {
+		return anadir(mensaje.getId(), mensaje.getTexto(), mensaje.getEmoticono(), mensaje.getFecha(), mensaje.getTipo());
+	}
+
+	/**
+	 * Añade un hueco: una fila sin mensaje.
+	 * @param id El identificador del mensaje que falta.
+	 * @return La posición de la fila.
+	 */
+	synchronized int anadirHueco(int id) {
+		int fila = nuevaFila(0);
+		ids[fila] = id;
+		emoticonos[fila] = Mensaje.SIN_EMOTICONO;
+		tipos[fila] = BubbleText.RECEIVED;
+		instantes[fila] = HUECO;
+		finTextos[fila] = (fila == 0) ? 0 : finTextos[fila - 1];
+		return fila;
+	}
+
+	private int nuevaFila(int bytesTexto) {
+		if (filas == ids.length) {
+			int capacidad = Math.max(4, filas + (filas >> 1));
+			ids = Arrays.copyOf(ids, capacidad);
+			emoticonos = Arrays.copyOf(emoticonos, capacidad);
+			tipos = Arrays.copyOf(tipos, capacidad);
+			instantes = Arrays.copyOf(instantes, capacidad);
+			finTextos = Arrays.copyOf(finTextos, capacidad);
+		}
+		int ocupados = (filas == 0) ? 0 : finTextos[filas - 1];
+		if (ocupados + bytesTexto > textos.length) {
+			textos = Arrays.copyOf(textos, Math.max(ocupados + bytesTexto, textos.length + (textos.length >> 1)));
+		}
+		return filas++;
+	}
+
+	/**
+	 * @return El número de filas.
+	 */
+	synchronized int size() {
+		return filas;
+	}
+
+	/**
+	 * Devuelve una vista de una fila, que lee sus datos de este almacén.
+	 * @param fila La posición de la fila.
+	 * @return La vista; nunca es null, ni siquiera para un hueco.
+	 */
+	Mensaje vista(int fila) {
+		return new Mensaje(this, fila);
+	}
+
+	synchronized boolean isHueco(int fila) {
+		return instantes[fila] == HUECO;
+	}
+
+	/**
+	 * @return true si alguna fila (que no sea un hueco) aún no tiene identificador.
+	 */
+	synchronized boolean hayFilasSinId() {
+		for (int i = 0; i < filas; i++) {
+			if (ids[i] == 0 && instantes[i] != HUECO) return true;
+		}
+		return false;
+	}
+
+	synchronized int getId(int fila) {
+		return ids[fila];
+	}
+
+	synchronized void setId(int fila, int id) {
+		ids[fila] = id;
+	}
+
+	synchronized String getTexto(int fila) {
+		if (instantes[fila] == HUECO) return TEXTO_HUECO;
+		int inicio = (fila == 0) ? 0 : finTextos[fila - 1];
+		return new String(textos, inicio, finTextos[fila] - inicio, StandardCharsets.UTF_8);
+	}
+
+	synchronized int getEmoticono(int fila) {
+		return emoticonos[fila];
+	}
+
+	synchronized int getTipo(int fila) {
+		return tipos[fila];
+	}
+
+	synchronized LocalDateTime getFecha(int fila) {
+		long instante = instanteVisible(fila);
+		return LocalDateTime.ofEpochSecond(Math.floorDiv(instante, NANOS_POR_SEGUNDO),
+				(int) Math.floorMod(instante, NANOS_POR_SEGUNDO), ZoneOffset.UTC);
+	}
+
+	/**
+	 * El instante de una fila o, si es un hueco, el de la anterior que no lo sea (o la siguiente,
+	 * si no hay ninguna anterior); la época si todas son huecos.
+	 */
+	private long instanteVisible(int fila) {
+		for (int i = fila; i >= 0; i--) {
+			if (instantes[i] != HUECO) return instantes[i];
+		}
+		for (int i = fila + 1; i < filas; i++) {
+			if (instantes[i] != HUECO) return instantes[i];
+		}
+		return 0;
+	}
+
+	/**
+	 * @return Los segundos desde la época (UTC) de la fecha de una fila, sin crear la fecha.
+	 */
+	synchronized long getSegundos(int fila) {
+		return Math.floorDiv(instantes[fila], NANOS_POR_SEGUNDO);
+	}
+}
@@ -1,5 +1,6 @@
 package dominio;
 
+import java.time.LocalDateTime;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
@@ -12,15 +13,27 @@ import tds.BubbleText;
 /**
  * Clase abstracta que representa un contacto en la agenda del usuario.
  * Un contacto puede ser un {@link ContactoIndividual} o un {@link Grupo}.
- * Mantiene un historial de mensajes intercambiados.
+ * Mantiene un historial de mensajes intercambiados, que se carga bajo demanda
+ * (ver {@link HistorialMensajes}).
  */
 public abstract class Contacto {
 
+	/**
+	 * Campos persistentes de un contacto que pueden modificarse tras su registro.
+	 * {@link #USUARIO} solo se aplica a los contactos individuales y {@link #MIEMBROS} a los grupos.
+	 */
+	public enum Campo {
+		NOMBRE, USUARIO, MIEMBROS
+	}
+
 	private static String DEFAULT_TEXTO = "Haz click para enviar un mensaje";
 	
 	private int id;
 	private String nombre;
-	private List<Mensaje> mensajes;
+	private final HistorialMensajes mensajes;
+	private final CambiosPendientes<Campo> cambios = new CambiosPendientes<>(Campo.class);
+	private volatile IndiceMensajes indice; // índice de búsqueda que contiene sus mensajes, si lo hay
+	private volatile Usuario propietario; // usuario que tiene este contacto, que lo indexa por id y nombre
 	
 	
 	/**
@@ -30,7 +43,8 @@ public abstract class Contacto {
      */
 	public Contacto(String nombre) {
 		this.nombre = Objects.requireNonNull(nombre, "El nombre del contacto no puede ser nulo");
-		this.mensajes = new LinkedList<Mensaje>();
+		this.mensajes = new HistorialMensajes();
+		this.mensajes.setAlAnadir(this::avisarIndice);
 	}
 
 	/**
@@ -42,7 +56,8 @@ public abstract class Contacto {
      */
 	protected Contacto(String nombre, List<Mensaje> mensajes) {
 		this.nombre = nombre;
-		 this.mensajes = (mensajes != null) ? new LinkedList<>(mensajes) : new LinkedList<>();
+		 this.mensajes = (mensajes != null) ? new HistorialMensajes(mensajes) : new HistorialMensajes();
+		this.mensajes.setAlAnadir(this::avisarIndice);
 	}
 	
 	/**
@@ -59,7 +74,7 @@ public abstract class Contacto {
      * @param id El nuevo id del contacto.
      */
 	public void setId(int id) {
-		this.id = id;
+		modificarClave(() -> this.id = id);
 	}
 	
 	/**
@@ -75,9 +90,20 @@ public abstract class Contacto {
      * @param nombre El nuevo nombre del contacto. No debe ser nulo.
      */
 	public void setNombre(String nombre) {
-		this.nombre = Objects.requireNonNull(nombre, "El nombre de un contacto no puede ser nulo");
+		Objects.requireNonNull(nombre, "El nombre de un contacto no puede ser nulo");
+		if (!Objects.equals(this.nombre, nombre)) cambios.marcar(Campo.NOMBRE);
+		modificarClave(() -> this.nombre = nombre);
 	}
 	
+	/**
+     * Devuelve el registro de los campos modificados desde la última vez que se guardó
+     * el contacto, que la capa de persistencia usa para escribir solo lo que ha cambiado.
+     * @return El registro de cambios pendientes del contacto.
+     */
+	public CambiosPendientes<Campo> getCambios() {
+		return cambios;
+	}
+
 	/**
      * Devuelve una vista inmutable del historial de mensajes intercambiados con este contacto.
      * La lista contiene tanto mensajes enviados por el usuario actual como recibidos de este contacto.
@@ -87,6 +113,46 @@ public abstract class Contacto {
 	public List<Mensaje> getMensajesEnviados() {
 		return Collections.unmodifiableList(mensajes);
 	}
+
+	/**
+     * Devuelve una vista inmutable de los mensajes más recientes de este contacto.
+     * Solo se cargan de la persistencia las páginas del historial que contienen dichos mensajes.
+     *
+     * @param numero El número máximo de mensajes a devolver.
+     * @return Una lista inmutable con los últimos {@code numero} mensajes, del más antiguo al más reciente.
+     */
+	public List<Mensaje> getUltimosMensajes(int numero) {
+		int total = mensajes.size();
+		return Collections.unmodifiableList(mensajes.subList(Math.max(0, total - numero), total));
+	}
+
+	/**
+     * Obtiene el número total de mensajes del historial sin cargarlos.
+     * @return El número de mensajes intercambiados con este contacto.
+     */
+	public int getNumeroMensajes() {
+		return mensajes.size();
+	}
+
+	/**
+     * Obtiene los identificadores de los mensajes del historial sin cargarlos.
+     * Usado principalmente por la capa de persistencia.
+     * @return Los identificadores, del mensaje más antiguo al más reciente.
+     */
+	public int[] getIdsMensajes() {
+		return mensajes.getIds();
+	}
+
+	/**
+     * Establece el historial a partir de los identificadores de mensajes persistidos,
+     * que se cargarán bajo demanda. Usado principalmente por la capa de persistencia.
+     *
+     * @param ids      Los identificadores de los mensajes, del más antiguo al más reciente.
+     * @param cargador La estrategia con la que recuperar los mensajes cuando se acceda a ellos.
+     */
+	public void setMensajesPersistidos(int[] ids, CargadorMensajes cargador) {
+		mensajes.setPersistidos(ids, cargador);
+	}
 	
 	/**
      * Añade un mensaje al historial de este contacto.
@@ -94,15 +160,15 @@ public abstract class Contacto {
      * @param mensaje El {@link Mensaje} a añadir. No debe ser nulo.
      */
 	public Mensaje addMensaje(Object mensaje, int tipo) {
+		// se crea directamente en el almacén por columnas del historial
 		Mensaje mensajeret = null;
 		if (mensaje instanceof String) {
-			mensajeret = new Mensaje((String) mensaje, tipo);
+			mensajeret = this.mensajes.anadir((String) mensaje, Mensaje.SIN_EMOTICONO, LocalDateTime.now(), tipo);
 		} else if (mensaje instanceof Integer) {
-			mensajeret = new Mensaje((Integer) mensaje, tipo);
+			mensajeret = this.mensajes.anadir("", (Integer) mensaje, LocalDateTime.now(), tipo);
 		} else {
 			throw new IllegalArgumentException("El mensaje debe ser un String o un Integer");
 		}
-		this.mensajes.add(mensajeret);
 		return mensajeret;
 	}
 	
@@ -110,6 +176,78 @@ public abstract class Contacto {
 		Objects.requireNonNull(mensaje, "El mensaje no puede ser nulo");
 		this.mensajes.add(mensaje);
 	}
+
+	/**
+     * Cuenta los mensajes de la conversación con fecha en el intervalo {@code [desde, hasta)}.
+     * Usa el índice temporal del historial (ver {@link HistorialMensajes}).
+     * @param desde Inicio del intervalo, incluido.
+     * @param hasta Fin del intervalo, excluido.
+     * @return El número de mensajes.
+     */
+	public int contarMensajesEntre(LocalDateTime desde, LocalDateTime hasta) {
+		return mensajes.contarEntre(desde, hasta);
+	}
+
+	/**
+     * Cuenta los mensajes enviados por el usuario actual (tipo {@code BubbleText.SENT})
+     * con fecha en el intervalo {@code [desde, hasta)}.
+     * @param desde Inicio del intervalo, incluido.
+     * @param hasta Fin del intervalo, excluido.
+     * @return El número de mensajes enviados.
+     */
+	public int contarMensajesEnviadosEntre(LocalDateTime desde, LocalDateTime hasta) {
+		return mensajes.contarEnviadosEntre(desde, hasta);
+	}
+
+	/**
+     * Devuelve los mensajes de la conversación con fecha en el intervalo {@code [desde, hasta)},
+     * del más antiguo al más reciente. Los mensajes se cargan al recorrer la lista.
+     * @param desde Inicio del intervalo, incluido.
+     * @param hasta Fin del intervalo, excluido.
+     * @return Una lista inmutable de {@link Mensaje}.
+     */
+	public List<Mensaje> getMensajesEntre(LocalDateTime desde, LocalDateTime hasta) {
+		return mensajes.getEntre(desde, hasta);
+	}
+
+	/**
+     * Asocia el contacto al índice de búsqueda de su usuario, al que pasará cada mensaje nuevo.
+     * @param indice El índice que contiene los mensajes de este contacto, o null si deja de estar en él.
+     */
+	void setIndice(IndiceMensajes indice) {
+		this.indice = indice;
+	}
+
+	private void avisarIndice(int posicion, Mensaje mensaje) {
+		IndiceMensajes i = this.indice;
+		if (i != null) i.anadido(this, posicion, mensaje);
+	}
+
+	/**
+     * Asocia el contacto al usuario que lo tiene, que lo indexa para buscarlo por id, móvil o nombre.
+     * @param propietario El usuario, o null si el contacto deja de pertenecerle.
+     */
+	void setPropietario(Usuario propietario) {
+		this.propietario = propietario;
+	}
+
+	Usuario getPropietario() {
+		return propietario;
+	}
+
+	/**
+     * Aplica un cambio a un dato por el que el propietario indexa el contacto (id, nombre o
+     * usuario asociado), de modo que el propietario actualice sus índices.
+     * @param cambio El cambio.
+     */
+	void modificarClave(Runnable cambio) {
+		Usuario p = this.propietario;
+		if (p != null) {
+			p.reindexarContacto(this, cambio);
+		} else {
+			cambio.run();
+		}
+	}
 	
 	
 	/**
@@ -129,6 +267,20 @@ public abstract class Contacto {
      * o un {@link Integer} (código de emoticono).
      */
 	public  List<Object> getTextoMensajesEnviados(){
+		return getTextoMensajes(mensajes);
+	}
+
+	/**
+     * Obtiene el contenido principal (texto o código de emoticono) de los últimos mensajes.
+     *
+     * @param numero El número máximo de mensajes.
+     * @return Una lista con el contenido de los últimos {@code numero} mensajes.
+     */
+	public List<Object> getTextoMensajesEnviados(int numero) {
+		return getTextoMensajes(getUltimosMensajes(numero));
+	}
+
+	private static List<Object> getTextoMensajes(List<Mensaje> mensajes) {
 		return mensajes.stream()
 			    .map(m -> m.getTexto().isEmpty() ? m.getEmoticono() : m.getTexto())
 			    .collect(Collectors.toList());
@@ -141,6 +293,20 @@ public abstract class Contacto {
      * @return Una lista de Strings con la información formateada de los mensajes.
      */
 	public List<String> getInfoMensajesEnviados() {
+		return getInfoMensajes(mensajes);
+	}
+
+	/**
+     * Obtiene la información formateada (hora y tipo) de los últimos mensajes.
+     *
+     * @param numero El número máximo de mensajes.
+     * @return Una lista con la información de los últimos {@code numero} mensajes.
+     */
+	public List<String> getInfoMensajesEnviados(int numero) {
+		return getInfoMensajes(getUltimosMensajes(numero));
+	}
+
+	private static List<String> getInfoMensajes(List<Mensaje> mensajes) {
 		return mensajes.stream()
 				.map(m -> m.getInfoFormateada())
 				.collect(Collectors.toList());
@@ -148,14 +314,16 @@ public abstract class Contacto {
 	
 	/**
      * Obtiene el texto del último mensaje intercambiado o un mensaje predeterminado si no hay mensajes.
+     * Solo carga la última página del historial.
      *
      * @return El texto del último mensaje, o "Haz click para enviar un mensaje" si no hay mensajes.
      */
 	public String getUltimoMensaje() {
-		if (this.mensajes.isEmpty()) {
+		Mensaje ultimo = this.mensajes.getUltimo();
+		if (ultimo == null) {
 			return DEFAULT_TEXTO;
 		}
-		return this.mensajes.get(this.mensajes.size()-1).getTexto();	
+		return ultimo.getTexto();
 	}
 	
 	/**
@@ -189,10 +357,12 @@ public abstract class Contacto {
 	    String textoLower = textoBusqueda.toLowerCase().trim();
 	    if (textoLower.isEmpty()) { // Si después de trim queda vacío, solo buscar mensajes vacíos
 	        return this.getMensajesEnviados().stream() // getMensajesEnviados() ya devuelve una lista
+	            .filter(mensaje -> mensaje.isDisponible())
 	            .filter(mensaje -> mensaje.getTexto() == null || mensaje.getTexto().trim().isEmpty())
 	            .collect(Collectors.toList());
 	    }
 	    return this.getMensajesEnviados().stream() // getMensajesEnviados() ya devuelve una lista
+	            .filter(mensaje -> mensaje.isDisponible())
 	            .filter(mensaje -> mensaje.getTexto() != null && 
 	                               mensaje.getTexto().toLowerCase().contains(textoLower))
 	            .collect(Collectors.toList());
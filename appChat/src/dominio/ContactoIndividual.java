@@ -50,7 +50,8 @@ public class ContactoIndividual extends Contacto implements AgregableGrupos {
      * @param usuario El {@link Usuario} a asociar. Si es nulo, la {@code URLImagen} se borrará.
      */
 	public void setUsuario(Usuario usuario) {
-		this.usuario = usuario;
+		if (this.usuario != usuario) getCambios().marcar(Campo.USUARIO);
+		modificarClave(() -> this.usuario = usuario); // cambia el móvil del contacto
 		this.URLImagen = usuario.getURLImagen();
 	}
 	
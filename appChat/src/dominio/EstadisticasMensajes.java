@@ -0,0 +1,172 @@
+package dominio;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import tds.BubbleText;
+
+/**
+ * Contadores de los mensajes enviados por un usuario, por día, por mes y por contacto.
+ * <p>
+ * Se actualizan al enviar cada mensaje, de modo que consultas como los mensajes enviados
+ * el último mes (que decide el descuento por mensajes) no recorren los historiales. Los
+ * contadores por día se conservan {@value #DIAS_CONSERVADOS} días; los demás, siempre.
+ * Se guardan con el usuario en forma de texto (ver {@link #codificar()}).
+ * </p>
+ * <p>
+ * Es seguro para hilos.
+ * </p>
+ */
+public final class EstadisticasMensajes {
+
+	/**
+	 * Días durante los que se conservan los contadores diarios.
+	 */
+	public static final int DIAS_CONSERVADOS = 400;
+
+	private final TreeMap<LocalDate, Integer> porDia = new TreeMap<>();
+	private final TreeMap<YearMonth, Integer> porMes = new TreeMap<>();
+	private final Map<Integer, Integer> porContacto = new HashMap<>();
+	private int total;
+
+	/**
+	 * Crea unas estadísticas sin mensajes.
+	 */
+	public EstadisticasMensajes() {
+	}
+
+	/**
+	 * Calcula las estadísticas recorriendo los mensajes enviados de los contactos dados.
+	 * Se usa una sola vez para los usuarios guardados antes de existir las estadísticas.
+	 * @param contactos Los contactos del usuario.
+	 * @return Las estadísticas calculadas.
+	 */
+	public static EstadisticasMensajes calcular(Collection<Contacto> contactos) {
+		EstadisticasMensajes estadisticas = new EstadisticasMensajes();
+		for (Contacto contacto : contactos) {
+			for (Mensaje mensaje : contacto.getMensajesEnviados()) {
+				if (mensaje.getTipo() == BubbleText.SENT) {
+					estadisticas.registrarEnviado(contacto.getId(), mensaje.getFecha());
+				}
+			}
+		}
+		return estadisticas;
+	}
+
+	/**
+	 * Cuenta un mensaje enviado.
+	 * @param idContacto El identificador del contacto o grupo al que se envía.
+	 * @param fecha La fecha del mensaje.
+	 */
+	public synchronized void registrarEnviado(int idContacto, LocalDateTime fecha) {
+		LocalDate dia = fecha.toLocalDate();
+		porDia.merge(dia, 1, Integer::sum);
+		porMes.merge(YearMonth.from(dia), 1, Integer::sum);
+		porContacto.merge(idContacto, 1, Integer::sum);
+		total++;
+		porDia.headMap(porDia.lastKey().minusDays(DIAS_CONSERVADOS)).clear();
+	}
+
+	/**
+	 * Mensajes enviados desde un día (incluido) hasta hoy. Recorre como mucho un contador por día.
+	 * @param desde El primer día contado; no anterior a {@value #DIAS_CONSERVADOS} días atrás.
+	 * @return El número de mensajes enviados.
+	 */
+	public synchronized int getEnviadosDesde(LocalDate desde) {
+		int enviados = 0;
+		for (int n : porDia.tailMap(desde, true).values()) enviados += n;
+		return enviados;
+	}
+
+	/**
+	 * @param mes El mes.
+	 * @return El número de mensajes enviados en ese mes.
+	 */
+	public synchronized int getEnviadosEnMes(YearMonth mes) {
+		return porMes.getOrDefault(mes, 0);
+	}
+
+	/**
+	 * @param idContacto El identificador del contacto o grupo.
+	 * @return El número de mensajes enviados a ese contacto.
+	 */
+	public synchronized int getEnviadosA(int idContacto) {
+		return porContacto.getOrDefault(idContacto, 0);
+	}
+
+	/**
+	 * @return El número total de mensajes enviados.
+	 */
+	public synchronized int getTotalEnviados() {
+		return total;
+	}
+
+	/**
+	 * Codifica las estadísticas como texto para guardarlas, con el formato
+	 * {@code total|dia=n,...|mes=n,...|idContacto=n,...}.
+	 * @return El texto.
+	 */
+	public synchronized String codificar() {
+		StringBuilder sb = new StringBuilder().append(total);
+		sb.append('|');
+		porDia.forEach((dia, n) -> sb.append(dia).append('=').append(n).append(','));
+		sb.append('|');
+		porMes.forEach((mes, n) -> sb.append(mes).append('=').append(n).append(','));
+		sb.append('|');
+		porContacto.forEach((id, n) -> sb.append(id).append('=').append(n).append(','));
+		return sb.toString();
+	}
+
+	/**
+	 * Reconstruye las estadísticas guardadas con {@link #codificar()}.
+	 * @param codificadas El texto guardado.
+	 * @return Las estadísticas.
+	 * @throws IllegalArgumentException Si el texto no tiene el formato esperado.
+	 */
+	public static EstadisticasMensajes decodificar(String codificadas) {
+		String[] partes = codificadas.split("\\|", -1);
+		if (partes.length != 4) {
+			throw new IllegalArgumentException("Estadísticas de mensajes mal formadas: " + codificadas);
+		}
+		EstadisticasMensajes estadisticas = new EstadisticasMensajes();
+		estadisticas.total = Integer.parseInt(partes[0]);
+		try {
+			for (String[] entrada : entradas(partes[1])) {
+				estadisticas.porDia.put(LocalDate.parse(entrada[0]), Integer.parseInt(entrada[1]));
+			}
+			for (String[] entrada : entradas(partes[2])) {
+				estadisticas.porMes.put(YearMonth.parse(entrada[0]), Integer.parseInt(entrada[1]));
+			}
+		} catch (DateTimeParseException e) {
+			throw new IllegalArgumentException("Fecha mal formada en las estadísticas: " + e.getParsedString(), e);
+		}
+		for (String[] entrada : entradas(partes[3])) {
+			estadisticas.porContacto.put(Integer.parseInt(entrada[0]), Integer.parseInt(entrada[1]));
+		}
+		return estadisticas;
+	}
+
+	private static String[][] entradas(String parte) {
+		if (parte.isEmpty()) return new String[0][];
+		String[] pares = parte.split(",");
+		String[][] entradas = new String[pares.length][];
+		for (int i = 0; i < pares.length; i++) {
+			entradas[i] = pares[i].split("=", 2);
+			if (entradas[i].length != 2) {
+				throw new IllegalArgumentException("Entrada mal formada en las estadísticas: " + pares[i]);
+			}
+		}
+		return entradas;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "EstadisticasMensajes{total=" + total + ", meses=" + porMes + '}';
+	}
+}
@@ -2,7 +2,6 @@ package dominio;
 
 import java.util.Arrays;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
@@ -19,6 +18,8 @@ public class Grupo extends Contacto {
 
     // Se usa Set para asegurar que no haya miembros duplicados.
     private final Set<Contacto> miembros;
+    // Vista inmutable de los miembros; se rehace al consultarla tras un cambio.
+    private List<Contacto> vistaMiembros;
     private String URLImagen;
 
     /**
@@ -63,20 +64,26 @@ public class Grupo extends Contacto {
      * @throws NullPointerException si {@code miembro} es nulo.
      * @throws IllegalArgumentException si el miembro no es una instancia de {@link Contacto}. (Aunque AgregableGrupos lo es via ContactoIndividual)
      */
-    public boolean addMiembro(AgregableGrupos miembro) {
+    public synchronized boolean addMiembro(AgregableGrupos miembro) {
         Objects.requireNonNull(miembro, "El miembro a añadir no puede ser nulo.");
-        return this.miembros.add((Contacto) miembro);
+        boolean anadido = this.miembros.add((Contacto) miembro);
+        if (anadido) {
+            getCambios().marcar(Campo.MIEMBROS);
+            vistaMiembros = null;
+        }
+        return anadido;
     }
 
     /**
-     * Obtiene una nueva lista de los miembros de este grupo.
+     * Obtiene los miembros de este grupo.
      *
-     * @return Una nueva lista ({@link LinkedList}) conteniendo los miembros del grupo.
+     * @return Una lista inmutable con los miembros del grupo, que no refleja los cambios
+     * posteriores. Se reutiliza mientras los miembros no cambien, en lugar de copiarse en cada llamada.
      * Devuelve una lista vacía si el grupo no tiene miembros.
      */
-    public List<Contacto> getMiembros() {
-        // Devolver una copia para proteger la encapsulación del Set interno.
-        return new LinkedList<>(this.miembros);
+    public synchronized List<Contacto> getMiembros() {
+        if (vistaMiembros == null) vistaMiembros = List.copyOf(this.miembros);
+        return vistaMiembros;
     }
 
     /**
@@ -89,13 +96,18 @@ public class Grupo extends Contacto {
      * el último miembro, la operación fallará (devolverá {@code false}).
      * Considerar lanzar {@link IllegalStateException} si la regla es que un grupo no puede estar vacío.
      */
-    public boolean removeMiembro(Contacto miembro) {
+    public synchronized boolean removeMiembro(Contacto miembro) {
         Objects.requireNonNull(miembro, "El miembro a eliminar no puede ser nulo.");
 
         if (this.miembros.contains(miembro) && this.miembros.size() == 1) {
             return false;
         }
-        return this.miembros.remove(miembro);
+        boolean eliminado = this.miembros.remove(miembro);
+        if (eliminado) {
+            getCambios().marcar(Campo.MIEMBROS);
+            vistaMiembros = null;
+        }
+        return eliminado;
     }
 
     /**
@@ -135,9 +147,11 @@ public class Grupo extends Contacto {
         return (this.URLImagen != null) ? this.URLImagen : "";
     }
 
-	public void setMiembros(LinkedList<ContactoIndividual> nuevosMiembros) {
+	public synchronized void setMiembros(List<ContactoIndividual> nuevosMiembros) {
 		this.miembros.clear();
 		this.miembros.addAll(nuevosMiembros);
+		getCambios().marcar(Campo.MIEMBROS);
+		vistaMiembros = null;
 	}
 
 	@Override
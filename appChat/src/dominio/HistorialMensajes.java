@@ -0,0 +1,553 @@
+package dominio;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.function.Supplier;
+
+import tds.BubbleText;
+
+/**
+ * Historial de mensajes de un {@link Contacto}, cargado de forma perezosa y por páginas.
+ * <p>
+ * Cuando el historial procede de la persistencia, inicialmente solo se conocen los
+ * identificadores de los mensajes. Los objetos {@link Mensaje} se recuperan mediante un
+ * {@link CargadorMensajes} al acceder a ellos, en páginas de {@value #TAMANO_PAGINA}
+ * mensajes, y como mucho se mantienen {@value #MAX_PAGINAS_RESIDENTES} páginas en memoria:
+ * al cargar una nueva se descarta la usada hace más tiempo. Así, consultar el último mensaje
+ * o mostrar los más recientes solo carga la última página, y la memoria usada no crece con
+ * la longitud total de la conversación.
+ * </p>
+ * <p>
+ * Cada página residente se guarda por columnas en un {@link ColumnasMensajes}, y
+ * {@link #get(int)} devuelve vistas ligeras sobre sus filas en lugar de mantener un objeto
+ * {@link Mensaje} por mensaje. Los mensajes creados con {@link #anadir} se guardan
+ * directamente así; los añadidos ya creados con {@link #add(Mensaje)} se copian al almacén, y
+ * el historial solo conserva el objeto original hasta que la persistencia le asigna un
+ * identificador. Las páginas con mensajes aún sin identificador no se descartan.
+ * Los mensajes que el cargador no devuelve (por ejemplo, porque se han borrado) ocupan su
+ * posición como mensajes no disponibles (véase {@link Mensaje#isDisponible()}): {@link #get(int)}
+ * nunca devuelve null.
+ * </p>
+ * <p>
+ * Para las consultas por fecha, el historial mantiene además un índice temporal: la fecha
+ * de cada mensaje (en segundos) en orden, y cuántos de los anteriores son enviados. Así,
+ * contar o recorrer los mensajes de un intervalo es una búsqueda binaria. El índice se
+ * construye en la primera consulta, cargando una vez todo el historial, y después solo se
+ * le añaden los mensajes nuevos.
+ * </p>
+ * <p>
+ * La lista es de solo lectura salvo por {@link #add(Mensaje)}, y es segura para hilos. El
+ * cargador se llama sin mantener el cerrojo del historial: puede esperar a la persistencia
+ * mientras otro hilo, que ya la tiene, recorre el historial.
+ * </p>
+ */
+public class HistorialMensajes extends AbstractList<Mensaje> implements RandomAccess {
+
+	/**
+	 * Número de mensajes que se cargan de una vez.
+	 */
+	public static final int TAMANO_PAGINA = 64;
+
+	/**
+	 * Número máximo de páginas cargadas que se mantienen en memoria.
+	 */
+	public static final int MAX_PAGINAS_RESIDENTES = 8;
+
+	private static final int CAPACIDAD_INICIAL = 16;
+
+	private int[] ids; // de las páginas residentes, el identificador vigente es el de su almacén
+	private ColumnasMensajes[] paginas; // null si la página no está en memoria
+	private int tamano;
+	// mensajes añadidos sin identificador, por posición, hasta que la persistencia se lo asigne
+	private final Map<Integer, Mensaje> pendientes = new HashMap<>();
+	private CargadorMensajes cargador;
+	private volatile AlAnadir alAnadir;
+	private int generacion; // cambia con setPersistidos: invalida las cargas en curso
+	// páginas cargadas, de la más reciente (posición 0) a la usada hace más tiempo
+	private final int[] paginasResidentes = new int[MAX_PAGINAS_RESIDENTES];
+	private int numPaginasResidentes;
+
+	// índice temporal de los primeros 'indexados' mensajes
+	private long[] segundos = new long[0];
+	private int[] enviadosAnteriores = new int[1]; // enviados en las posiciones [0, i)
+	private int indexados;
+	private boolean enOrden = true; // fechas no decrecientes: se puede buscar por bisección
+
+	/**
+	 * Recibe cada mensaje añadido al historial.
+	 */
+	interface AlAnadir {
+		/**
+		 * Se llama tras añadir un mensaje, sin el cerrojo del historial.
+		 * @param posicion La posición del mensaje en el historial.
+		 * @param mensaje El mensaje.
+		 */
+		void anadido(int posicion, Mensaje mensaje);
+	}
+
+	/**
+	 * Crea un historial vacío.
+	 */
+	public HistorialMensajes() {
+		ids = new int[CAPACIDAD_INICIAL];
+		paginas = new ColumnasMensajes[numeroPaginas(CAPACIDAD_INICIAL)];
+	}
+
+	/**
+	 * Crea un historial con los mensajes dados, todos ellos en memoria.
+	 * @param iniciales Los mensajes iniciales, del más antiguo al más reciente.
+	 */
+	public HistorialMensajes(List<Mensaje> iniciales) {
+		this();
+		iniciales.forEach(this::add);
+	}
+
+	/**
+	 * Sustituye el contenido del historial por los mensajes persistidos con los identificadores
+	 * dados, que se cargarán bajo demanda con {@code cargador}.
+	 * @param idsMensajes Los identificadores de los mensajes, del más antiguo al más reciente.
+	 * @param cargador La estrategia para recuperar los mensajes. No debe ser nula.
+	 */
+	public synchronized void setPersistidos(int[] idsMensajes, CargadorMensajes cargador) {
+		this.cargador = Objects.requireNonNull(cargador, "El cargador de mensajes no puede ser nulo");
+		int capacidad = Math.max(CAPACIDAD_INICIAL, idsMensajes.length);
+		ids = Arrays.copyOf(idsMensajes, capacidad);
+		paginas = new ColumnasMensajes[numeroPaginas(capacidad)];
+		tamano = idsMensajes.length;
+		pendientes.clear();
+		numPaginasResidentes = 0;
+		indexados = 0;
+		enOrden = true;
+		generacion++;
+		modCount++;
+	}
+
+	@Override
+	public Mensaje get(int indice) {
+		return conPaginasResidentes(() -> getResidente(indice));
+	}
+
+	private Mensaje getResidente(int indice) {
+		Objects.checkIndex(indice, tamano);
+		ColumnasMensajes pagina = pagina(indice);
+		if (!pendientes.isEmpty()) {
+			Mensaje original = pendientes.get(indice);
+			if (original != null) {
+				if (original.getId() == 0) return original;
+				sincronizarPendientes();
+			}
+		}
+		return pagina.vista(indice % TAMANO_PAGINA);
+	}
+
+	@Override
+	public synchronized int size() {
+		return tamano;
+	}
+
+	/**
+	 * Añade un mensaje al final del historial copiando sus datos al almacén por columnas.
+	 * Si aún no tiene identificador, el historial devuelve el propio objeto hasta que se le asigne.
+	 * @param mensaje El mensaje a añadir. No debe ser nulo.
+	 * @return Siempre {@code true}.
+	 */
+	@Override
+	public boolean add(Mensaje mensaje) {
+		Objects.requireNonNull(mensaje, "El mensaje no puede ser nulo");
+		int posicion = conPaginasResidentes(() -> addResidente(mensaje));
+		avisar(posicion, mensaje);
+		return true;
+	}
+
+	private int addResidente(Mensaje mensaje) {
+		paginaFinal().anadir(mensaje);
+		if (mensaje.getId() == 0) pendientes.put(tamano, mensaje);
+		ids[tamano++] = mensaje.getId();
+		modCount++;
+		return tamano - 1;
+	}
+
+	/**
+	 * Crea un mensaje nuevo, sin identificador, directamente en el almacén por columnas y lo
+	 * añade al final del historial.
+	 * @param texto El texto del mensaje. No debe ser nulo.
+	 * @param emoticono El emoticono, o {@link Mensaje#SIN_EMOTICONO}.
+	 * @param fecha La fecha del mensaje. No debe ser nula.
+	 * @param tipo El tipo de mensaje.
+	 * @return La vista del mensaje; la persistencia le asigna el identificador con {@link Mensaje#setId(int)}.
+	 */
+	public Mensaje anadir(String texto, int emoticono, LocalDateTime fecha, int tipo) {
+		Objects.requireNonNull(texto, "El texto del mensaje no puede ser nulo.");
+		Objects.requireNonNull(fecha, "La fecha del mensaje no puede ser nula.");
+		int[] posicion = new int[1];
+		Mensaje vista = conPaginasResidentes(() -> {
+			ColumnasMensajes pagina = paginaFinal();
+			int fila = pagina.anadir(0, texto, emoticono, fecha, tipo);
+			posicion[0] = tamano;
+			ids[tamano++] = 0;
+			modCount++;
+			return pagina.vista(fila);
+		});
+		avisar(posicion[0], vista);
+		return vista;
+	}
+
+	/**
+	 * Indica a quien recibe los mensajes añadidos al historial (ver {@link AlAnadir}) dónde
+	 * avisar de cada uno.
+	 * @param alAnadir El receptor, o null para no avisar a nadie.
+	 */
+	void setAlAnadir(AlAnadir alAnadir) {
+		this.alAnadir = alAnadir;
+	}
+
+	private void avisar(int posicion, Mensaje mensaje) {
+		AlAnadir receptor = alAnadir;
+		if (receptor != null) receptor.anadido(posicion, mensaje);
+	}
+
+	/**
+	 * Prepara la página en la que se añadirá el siguiente mensaje: amplía la capacidad si hace
+	 * falta y, si está a medias y no está en memoria, pide cargarla con {@link PaginaNoResidente}.
+	 */
+	private ColumnasMensajes paginaFinal() {
+		if (tamano == ids.length) {
+			int capacidad = ids.length + (ids.length >> 1);
+			ids = Arrays.copyOf(ids, capacidad);
+			paginas = Arrays.copyOf(paginas, numeroPaginas(capacidad));
+		}
+		int pagina = tamano / TAMANO_PAGINA;
+		if (paginas[pagina] == null) {
+			if (tamano % TAMANO_PAGINA != 0) {
+				throw new PaginaNoResidente(pagina);
+			} else {
+				paginas[pagina] = new ColumnasMensajes(TAMANO_PAGINA);
+				usarPagina(pagina);
+			}
+		} else {
+			usarPagina(pagina);
+		}
+		return paginas[pagina];
+	}
+
+	/**
+	 * Obtiene el último mensaje del historial, cargando como mucho una página.
+	 * @return El mensaje más reciente, o null si el historial está vacío.
+	 */
+	public Mensaje getUltimo() {
+		return conPaginasResidentes(() -> tamano == 0 ? null : getResidente(tamano - 1));
+	}
+
+	/**
+	 * Obtiene los identificadores de todos los mensajes sin cargarlos.
+	 * Los mensajes aún no persistidos tienen identificador 0.
+	 * @return Un nuevo array con los identificadores, del más antiguo al más reciente.
+	 */
+	public synchronized int[] getIds() {
+		sincronizarPendientes();
+		int[] copia = Arrays.copyOf(ids, tamano);
+		for (int pagina = 0; pagina < paginas.length; pagina++) {
+			ColumnasMensajes columnas = paginas[pagina];
+			if (columnas == null) continue;
+			for (int fila = 0, i = pagina * TAMANO_PAGINA; fila < columnas.size(); fila++, i++) {
+				copia[i] = columnas.getId(fila);
+			}
+		}
+		return copia;
+	}
+
+	/**
+	 * Cuenta los mensajes con fecha en el intervalo {@code [desde, hasta)}, con precisión de segundos.
+	 * @param desde Inicio del intervalo, incluido.
+	 * @param hasta Fin del intervalo, excluido.
+	 * @return El número de mensajes.
+	 */
+	public int contarEntre(LocalDateTime desde, LocalDateTime hasta) {
+		return conPaginasResidentes(() -> {
+			actualizarIndiceTemporal();
+			if (!enOrden) {
+				int contados = 0;
+				for (int i = 0; i < indexados; i++) {
+					if (enIntervalo(i, desde, hasta)) contados++;
+				}
+				return contados;
+			}
+			return Math.max(0, primeraPosicion(hasta) - primeraPosicion(desde));
+		});
+	}
+
+	/**
+	 * Cuenta los mensajes enviados ({@code BubbleText.SENT}) con fecha en el intervalo {@code [desde, hasta)}.
+	 * @param desde Inicio del intervalo, incluido.
+	 * @param hasta Fin del intervalo, excluido.
+	 * @return El número de mensajes enviados.
+	 */
+	public int contarEnviadosEntre(LocalDateTime desde, LocalDateTime hasta) {
+		return conPaginasResidentes(() -> {
+			actualizarIndiceTemporal();
+			if (!enOrden) {
+				int enviados = 0;
+				for (int i = 0; i < indexados; i++) {
+					if (enIntervalo(i, desde, hasta) && esEnviado(i)) enviados++;
+				}
+				return enviados;
+			}
+			int inicio = primeraPosicion(desde), fin = primeraPosicion(hasta);
+			return (fin <= inicio) ? 0 : enviadosAnteriores[fin] - enviadosAnteriores[inicio];
+		});
+	}
+
+	/**
+	 * Devuelve los mensajes con fecha en el intervalo {@code [desde, hasta)}, en el orden del historial.
+	 * Los mensajes se cargan al acceder a ellos.
+	 * @param desde Inicio del intervalo, incluido.
+	 * @param hasta Fin del intervalo, excluido.
+	 * @return Una vista inmutable de los mensajes del intervalo.
+	 */
+	public List<Mensaje> getEntre(LocalDateTime desde, LocalDateTime hasta) {
+		int[] posiciones = conPaginasResidentes(() -> {
+			actualizarIndiceTemporal();
+			if (enOrden) {
+				int inicio = primeraPosicion(desde);
+				return new int[] { inicio, Math.max(inicio, primeraPosicion(hasta)) };
+			}
+			return null;
+		});
+		if (posiciones != null) return new Rango(this, posiciones[0], posiciones[1]);
+		// fuera del cerrojo: cargar las páginas de los mensajes puede llamar al cargador
+		List<Integer> entre = new ArrayList<>();
+		synchronized (this) {
+			for (int i = 0; i < indexados; i++) {
+				if (enIntervalo(i, desde, hasta)) entre.add(i);
+			}
+		}
+		List<Mensaje> mensajes = new ArrayList<>(entre.size());
+		for (int posicion : entre) mensajes.add(get(posicion));
+		return Collections.unmodifiableList(mensajes);
+	}
+
+	/**
+	 * Vista de las posiciones {@code [inicio, fin)} del historial; no se ve afectada por los
+	 * mensajes que se añadan después.
+	 */
+	private static final class Rango extends AbstractList<Mensaje> implements RandomAccess {
+		private final HistorialMensajes historial;
+		private final int inicio, fin;
+
+		Rango(HistorialMensajes historial, int inicio, int fin) {
+			this.historial = historial;
+			this.inicio = inicio;
+			this.fin = fin;
+		}
+
+		@Override
+		public Mensaje get(int indice) {
+			Objects.checkIndex(indice, fin - inicio);
+			return historial.get(inicio + indice);
+		}
+
+		@Override
+		public int size() {
+			return fin - inicio;
+		}
+	}
+
+	/**
+	 * Añade al índice temporal los mensajes que aún no estén en él.
+	 */
+	private void actualizarIndiceTemporal() {
+		if (indexados == tamano) return;
+		if (segundos.length < tamano) {
+			segundos = Arrays.copyOf(segundos, tamano);
+			enviadosAnteriores = Arrays.copyOf(enviadosAnteriores, tamano + 1);
+		}
+		for (int i = indexados; i < tamano; i++) {
+			// se leen las columnas directamente, sin crear los mensajes
+			ColumnasMensajes pagina = pagina(i);
+			int fila = i % TAMANO_PAGINA;
+			boolean hueco = pagina.isHueco(fila);
+			if (hueco) {
+				segundos[i] = (i > 0) ? segundos[i - 1] : Long.MIN_VALUE;
+			} else {
+				segundos[i] = pagina.getSegundos(fila);
+			}
+			if (i > 0 && segundos[i] < segundos[i - 1]) enOrden = false;
+			boolean enviado = !hueco && pagina.getTipo(fila) == BubbleText.SENT;
+			enviadosAnteriores[i + 1] = enviadosAnteriores[i] + (enviado ? 1 : 0);
+			indexados = i + 1; // si falta la página siguiente, se continúa desde aquí tras cargarla
+		}
+	}
+
+	/**
+	 * Primera posición indexada con fecha igual o posterior a la dada (o el número de
+	 * indexados si no hay ninguna); requiere el índice en orden.
+	 */
+	private int primeraPosicion(LocalDateTime fecha) {
+		long buscado = fecha.toEpochSecond(ZoneOffset.UTC);
+		int bajo = 0, alto = indexados;
+		while (bajo < alto) {
+			int medio = (bajo + alto) >>> 1;
+			if (segundos[medio] < buscado) bajo = medio + 1;
+			else alto = medio;
+		}
+		return bajo;
+	}
+
+	private boolean enIntervalo(int posicion, LocalDateTime desde, LocalDateTime hasta) {
+		return segundos[posicion] >= desde.toEpochSecond(ZoneOffset.UTC)
+				&& segundos[posicion] < hasta.toEpochSecond(ZoneOffset.UTC);
+	}
+
+	private boolean esEnviado(int posicion) {
+		return enviadosAnteriores[posicion + 1] > enviadosAnteriores[posicion];
+	}
+
+	/**
+	 * Devuelve la página que contiene una posición y la marca como usada; si no está en
+	 * memoria, pide cargarla con {@link PaginaNoResidente}.
+	 */
+	private ColumnasMensajes pagina(int indice) {
+		int pagina = indice / TAMANO_PAGINA;
+		if (paginas[pagina] == null) throw new PaginaNoResidente(pagina);
+		usarPagina(pagina);
+		return paginas[pagina];
+	}
+
+	/**
+	 * Indica, dentro del cerrojo, que una operación necesita una página que no está en memoria.
+	 * Se lanza antes de modificar el historial, o tras dejarlo en un estado desde el que la
+	 * operación puede repetirse.
+	 */
+	private static final class PaginaNoResidente extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		final int pagina;
+
+		PaginaNoResidente(int pagina) {
+			super(null, null, false, false);
+			this.pagina = pagina;
+		}
+	}
+
+	/**
+	 * Ejecuta una operación con el cerrojo del historial. Si necesita una página que no está
+	 * en memoria, la carga sin el cerrojo y repite la operación.
+	 */
+	private <T> T conPaginasResidentes(Supplier<T> operacion) {
+		while (true) {
+			int pagina;
+			synchronized (this) {
+				try {
+					return operacion.get();
+				} catch (PaginaNoResidente e) {
+					pagina = e.pagina;
+				}
+			}
+			cargarPagina(pagina);
+		}
+	}
+
+	private static int numeroPaginas(int capacidad) {
+		return (capacidad + TAMANO_PAGINA - 1) / TAMANO_PAGINA;
+	}
+
+	/**
+	 * Carga una página que no está en memoria en un nuevo almacén por columnas y descarta,
+	 * si es necesario, la página usada hace más tiempo. Los mensajes cargados no se conservan:
+	 * solo sus datos.
+	 * <p>
+	 * Se llama sin el cerrojo, que solo se toma para leer los identificadores y para instalar
+	 * la página. Mientras la página no está en memoria no se le añaden mensajes, así que sus
+	 * identificadores siguen siendo los leídos, salvo que {@link #setPersistidos} los sustituya.
+	 * </p>
+	 */
+	private void cargarPagina(int pagina) {
+		int[] idsPagina;
+		CargadorMensajes cargadorPagina;
+		int generacionPagina;
+		synchronized (this) {
+			if (pagina >= paginas.length || paginas[pagina] != null) return;
+			int inicio = pagina * TAMANO_PAGINA;
+			idsPagina = Arrays.copyOfRange(ids, inicio, Math.min(inicio + TAMANO_PAGINA, tamano));
+			cargadorPagina = cargador;
+			generacionPagina = generacion;
+		}
+		List<Mensaje> cargados = (cargadorPagina != null)
+				? cargadorPagina.cargar(idsPagina)
+				: Collections.emptyList();
+		ColumnasMensajes columnas = new ColumnasMensajes(TAMANO_PAGINA);
+		// el cargador puede omitir los ids inexistentes: se emparejan por identificador
+		int k = 0;
+		for (int id : idsPagina) {
+			if (k < cargados.size() && id == cargados.get(k).getId()) {
+				columnas.anadir(cargados.get(k++));
+			} else {
+				columnas.anadirHueco(id);
+			}
+		}
+		synchronized (this) {
+			// otro hilo ya la ha cargado, o el historial se ha sustituido entretanto
+			if (generacion != generacionPagina || paginas[pagina] != null) return;
+			paginas[pagina] = columnas;
+			usarPagina(pagina);
+		}
+	}
+
+	/**
+	 * Pasa al almacén los identificadores que la persistencia ha asignado a los mensajes
+	 * pendientes, y deja de conservar estos.
+	 */
+	private void sincronizarPendientes() {
+		for (Iterator<Map.Entry<Integer, Mensaje>> it = pendientes.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<Integer, Mensaje> pendiente = it.next();
+			int id = pendiente.getValue().getId();
+			if (id == 0) continue;
+			int indice = pendiente.getKey();
+			// la página de un mensaje sin identificador nunca se descarta
+			paginas[indice / TAMANO_PAGINA].setId(indice % TAMANO_PAGINA, id);
+			ids[indice] = id;
+			it.remove();
+		}
+	}
+
+	/**
+	 * Marca una página como la usada más recientemente, si está entre las residentes o si
+	 * acaba de cargarse.
+	 */
+	private void usarPagina(int pagina) {
+		if (cargador == null) return;
+		int pos = 0;
+		while (pos < numPaginasResidentes && paginasResidentes[pos] != pagina) pos++;
+		if (pos == numPaginasResidentes) {
+			if (numPaginasResidentes == MAX_PAGINAS_RESIDENTES) {
+				descargarPagina(paginasResidentes[--numPaginasResidentes]);
+			}
+			pos = numPaginasResidentes++;
+		}
+		System.arraycopy(paginasResidentes, 0, paginasResidentes, 1, pos);
+		paginasResidentes[0] = pagina;
+	}
+
+	/**
+	 * Libera una página cuyos mensajes estén todos persistidos; se recargará si vuelve a usarse.
+	 * Las páginas con mensajes sin identificador se mantienen en memoria.
+	 */
+	private void descargarPagina(int pagina) {
+		sincronizarPendientes();
+		ColumnasMensajes columnas = paginas[pagina];
+		if (columnas == null || columnas.hayFilasSinId()) return;
+		for (int fila = 0, i = pagina * TAMANO_PAGINA; fila < columnas.size(); fila++, i++) {
+			ids[i] = columnas.getId(fila);
+		}
+		paginas[pagina] = null;
+	}
+}
@@ -0,0 +1,397 @@
+package dominio;
+
+import java.text.Normalizer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Queue;
+import java.util.RandomAccess;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Índice invertido del texto de los mensajes de los contactos de un usuario.
+ * <p>
+ * Asocia cada palabra, normalizada sin mayúsculas ni tildes, a la lista ordenada de sus
+ * apariciones: el mensaje y la posición de la palabra en él. Cada mensaje se identifica por su
+ * contacto y su posición en el historial, que no cambia porque los historiales solo crecen.
+ * El índice recuerda cuántos mensajes de cada contacto ha indexado.
+ * </p>
+ * <p>
+ * El índice se rellena en la primera búsqueda que incluye a un contacto, leyendo todo su
+ * historial: con los historiales perezosos, esa búsqueda carga cada página de cada
+ * conversación una vez, un coste de E/S proporcional al total de mensajes. Después, cada
+ * mensaje que se añade a un contacto ya indexado se divide en palabras al añadirlo y se deja
+ * en una cola sin bloqueo, y la siguiente búsqueda lo pasa al índice sin leer el historial.
+ * </p>
+ * <p>
+ * Una búsqueda de varias palabras encuentra los mensajes que las contienen seguidas (frase);
+ * la última palabra de la búsqueda puede estar incompleta (prefijo), como al escribirla en el
+ * buscador. Es seguro para hilos: los mensajes se leen y se dividen en palabras sin el
+ * cerrojo del índice, que solo se mantiene para consultarlo y para añadirle lo leído. Añadir un
+ * mensaje a un contacto no toma el cerrojo del índice, así que nunca espera a una búsqueda.
+ * </p>
+ */
+final class IndiceMensajes {
+
+	/**
+	 * Palabra → apariciones. Ordenado para resolver los prefijos como un rango.
+	 */
+	private final NavigableMap<String, Apariciones> palabras = new TreeMap<>();
+	private final Map<Contacto, Integer> numerosContacto = new IdentityHashMap<>();
+	private final List<Contacto> contactos = new ArrayList<>();
+	// mensajes indexados de cada contacto, por número de contacto
+	private int[] indexados = new int[16];
+
+	// contacto y posición en su historial de cada mensaje indexado
+	private int[] contactoMensaje = new int[1024];
+	private int[] posicionMensaje = new int[1024];
+	private int numeroMensajes;
+
+	// mensajes añadidos a los contactos indexados que aún no han pasado al índice
+	private final Queue<Anadido> anadidos = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Un mensaje añadido a un contacto indexado, ya dividido en palabras.
+	 */
+	private static final class Anadido {
+		final Contacto contacto;
+		final int posicion;
+		final String[] palabras;
+
+		Anadido(Contacto contacto, int posicion, String[] palabras) {
+			this.contacto = contacto;
+			this.posicion = posicion;
+			this.palabras = palabras;
+		}
+	}
+
+	/**
+	 * Apariciones de una palabra, en orden creciente: cada una codifica el número del mensaje
+	 * en el índice (32 bits altos) y la posición de la palabra en el mensaje (32 bits bajos).
+	 */
+	private static final class Apariciones {
+		long[] valores = new long[4];
+		int tamano;
+
+		void anadir(int mensaje, int posicion) {
+			if (tamano == valores.length) valores = Arrays.copyOf(valores, tamano * 2);
+			valores[tamano++] = ((long) mensaje << 32) | posicion;
+		}
+	}
+
+	/**
+	 * Recibe un mensaje añadido a un contacto indexado. No toma el cerrojo del índice: el
+	 * mensaje se indexa en la siguiente búsqueda.
+	 * @param contacto El contacto.
+	 * @param posicion La posición del mensaje en el historial del contacto.
+	 * @param mensaje El mensaje.
+	 */
+	void anadido(Contacto contacto, int posicion, Mensaje mensaje) {
+		anadidos.add(new Anadido(contacto, posicion, palabras(mensaje.getTexto())));
+	}
+
+	/**
+	 * Indexa los mensajes de los contactos que aún no estén indexados.
+	 * @param contactos Los contactos cuyos mensajes se buscarán.
+	 */
+	void actualizar(Collection<Contacto> contactos) {
+		actualizar(contactos, () -> false);
+	}
+
+	/**
+	 * Indexa los mensajes de los contactos que aún no estén indexados. Los mensajes se leen y
+	 * se dividen en palabras en paralelo (ver {@link BusquedaParalela}) sin el cerrojo del
+	 * índice; después se añaden al índice con él.
+	 * @param contactos Los contactos cuyos mensajes se buscarán.
+	 * @param cancelada Indica si se ha cancelado la búsqueda que necesita el índice.
+	 * @throws java.util.concurrent.CancellationException Si se cancela; lo ya indexado se conserva.
+	 */
+	void actualizar(Collection<Contacto> contactos, BooleanSupplier cancelada) {
+		// número de contacto y primera posición sin indexar de los que hay que leer
+		Map<Contacto, int[]> desde = new IdentityHashMap<>();
+		synchronized (this) {
+			indexarAnadidos();
+			for (Contacto contacto : contactos) {
+				int numero = numeroContacto(contacto);
+				if (indexados[numero] < contacto.getNumeroMensajes()) {
+					desde.put(contacto, new int[] { numero, indexados[numero] });
+				}
+			}
+		}
+		if (desde.isEmpty()) return;
+
+		Map<Contacto, String[][]> leidos = BusquedaParalela.porContacto(desde.keySet(), contacto -> {
+			List<Mensaje> historial = contacto.getMensajesEnviados();
+			int inicio = desde.get(contacto)[1];
+			String[][] palabrasMensajes = new String[contacto.getNumeroMensajes() - inicio][];
+			for (int i = 0; i < palabrasMensajes.length; i++) {
+				Mensaje mensaje = historial.get(inicio + i);
+				// el aviso de un mensaje no disponible no es texto de la conversación
+				palabrasMensajes[i] = mensaje.isDisponible() ? palabras(mensaje.getTexto()) : new String[0];
+			}
+			return palabrasMensajes;
+		}, cancelada);
+		anadirLeidos(desde, leidos);
+	}
+
+	/**
+	 * Añade al índice los mensajes leídos fuera del cerrojo, salvo los que otra búsqueda haya
+	 * añadido entretanto. Los añadidos a los historiales mientras tanto se indexarán en la
+	 * siguiente búsqueda.
+	 * @param desde Número de contacto y primera posición leída de cada contacto.
+	 * @param leidos Las palabras de los mensajes leídos de cada contacto.
+	 */
+	private synchronized void anadirLeidos(Map<Contacto, int[]> desde, Map<Contacto, String[][]> leidos) {
+		leidos.forEach((contacto, palabrasMensajes) -> {
+			int numero = desde.get(contacto)[0], inicio = desde.get(contacto)[1];
+			Integer actual = numerosContacto.get(contacto);
+			if (actual == null || actual != numero) return; // se ha quitado del índice
+			int fin = inicio + palabrasMensajes.length;
+			for (int posicion = indexados[numero]; posicion < fin; posicion++) {
+				indexar(numero, posicion, palabrasMensajes[posicion - inicio]);
+			}
+			indexados[numero] = Math.max(indexados[numero], fin);
+		});
+	}
+
+	/**
+	 * Pasa al índice los mensajes añadidos que siguen a los ya indexados de su contacto. Los
+	 * demás ya están en el índice o se leerán del historial.
+	 */
+	private void indexarAnadidos() {
+		for (Anadido anadido; (anadido = anadidos.poll()) != null;) {
+			Integer numero = numerosContacto.get(anadido.contacto);
+			if (numero != null && anadido.posicion == indexados[numero]) {
+				indexar(numero, anadido.posicion, anadido.palabras);
+				indexados[numero]++;
+			}
+		}
+	}
+
+	/**
+	 * Quita del índice un contacto y las apariciones de sus mensajes, por ejemplo al eliminarlo
+	 * de los contactos del usuario. Recorre todo el índice.
+	 * @param contacto El contacto; si no está indexado, no se hace nada.
+	 */
+	synchronized void quitar(Contacto contacto) {
+		Integer numero = numerosContacto.remove(contacto);
+		if (numero == null) return;
+		contactos.set(numero, null); // los números no se reutilizan
+		contacto.setIndice(null);
+		indexados[numero] = 0;
+		for (Iterator<Apariciones> it = palabras.values().iterator(); it.hasNext();) {
+			Apariciones apariciones = it.next();
+			int n = 0;
+			for (int i = 0; i < apariciones.tamano; i++) {
+				long valor = apariciones.valores[i];
+				if (contactoMensaje[(int) (valor >>> 32)] != numero) apariciones.valores[n++] = valor;
+			}
+			apariciones.tamano = n;
+			if (n == 0) it.remove();
+		}
+	}
+
+	/**
+	 * Busca los mensajes cuyo texto contiene la frase buscada.
+	 * @param texto El texto buscado; su última palabra puede ser un prefijo.
+	 * @param contactos Los contactos en los que buscar.
+	 * @param cancelada Indica si se ha cancelado la búsqueda.
+	 * @return Los mensajes encontrados de cada contacto con alguno, en el orden de su historial,
+	 *         o null si el texto no contiene ninguna palabra que buscar. Los mensajes se obtienen
+	 *         del historial al acceder a ellos.
+	 */
+	Map<Contacto, List<Mensaje>> buscar(String texto, Collection<Contacto> contactos,
+			BooleanSupplier cancelada) {
+		String[] buscadas = palabras(texto);
+		if (buscadas.length == 0) return null;
+		actualizar(contactos, cancelada);
+		synchronized (this) {
+			return buscar(buscadas, contactos);
+		}
+	}
+
+	private Map<Contacto, List<Mensaje>> buscar(String[] buscadas, Collection<Contacto> contactos) {
+		Map<Contacto, List<Mensaje>> resultado = new IdentityHashMap<>();
+
+		boolean[] incluidos = new boolean[this.contactos.size()];
+		for (Contacto contacto : contactos) {
+			Integer numero = numerosContacto.get(contacto);
+			if (numero != null) incluidos[numero] = true;
+		}
+
+		// apariciones de la primera palabra seguidas del resto de palabras completas
+		int ultima = buscadas.length - 1;
+		long[] inicios = null;
+		for (int i = 0; i < ultima; i++) {
+			Apariciones apariciones = palabras.get(buscadas[i]);
+			if (apariciones == null) return resultado;
+			inicios = (i == 0) ? Arrays.copyOf(apariciones.valores, apariciones.tamano)
+					: seguidasDe(inicios, apariciones, i);
+			if (inicios.length == 0) return resultado;
+		}
+
+		// la última palabra puede ser cualquiera que empiece por lo buscado
+		Collection<Apariciones> conPrefijo = palabras.subMap(buscadas[ultima], true,
+				buscadas[ultima] + Character.MAX_VALUE, false).values();
+		int[] encontrados = new int[16];
+		int total = 0;
+		for (Apariciones apariciones : conPrefijo) {
+			long[] coincidencias = (inicios == null) ? apariciones.valores : seguidasDe(inicios, apariciones, ultima);
+			int n = (inicios == null) ? apariciones.tamano : coincidencias.length;
+			for (int i = 0; i < n; i++) {
+				int mensaje = (int) (coincidencias[i] >>> 32);
+				if (total > 0 && encontrados[total - 1] == mensaje) continue;
+				if (total == encontrados.length) encontrados = Arrays.copyOf(encontrados, total * 2);
+				encontrados[total++] = mensaje;
+			}
+		}
+		if (conPrefijo.size() > 1) {
+			Arrays.sort(encontrados, 0, total);
+		}
+
+		// se reparten por contacto; al recorrerlos en orden, las posiciones quedan en orden
+		int[] porContacto = new int[this.contactos.size()];
+		for (int i = 0; i < total; i++) {
+			if (i > 0 && encontrados[i - 1] == encontrados[i]) continue;
+			porContacto[contactoMensaje[encontrados[i]]]++;
+		}
+		int[][] posiciones = new int[porContacto.length][];
+		int[] llenas = new int[porContacto.length];
+		for (int i = 0; i < total; i++) {
+			int mensaje = encontrados[i];
+			if (i > 0 && encontrados[i - 1] == mensaje) continue;
+			int contacto = contactoMensaje[mensaje];
+			if (!incluidos[contacto]) continue;
+			if (posiciones[contacto] == null) posiciones[contacto] = new int[porContacto[contacto]];
+			posiciones[contacto][llenas[contacto]++] = posicionMensaje[mensaje];
+		}
+		for (int contacto = 0; contacto < posiciones.length; contacto++) {
+			if (posiciones[contacto] == null) continue;
+			Contacto c = this.contactos.get(contacto);
+			resultado.put(c, new Coincidencias(c.getMensajesEnviados(), posiciones[contacto]));
+		}
+		return resultado;
+	}
+
+	/**
+	 * Vista de los mensajes de un historial que están en las posiciones dadas.
+	 */
+	private static final class Coincidencias extends AbstractList<Mensaje> implements RandomAccess {
+		private final List<Mensaje> historial;
+		private final int[] posiciones;
+
+		Coincidencias(List<Mensaje> historial, int[] posiciones) {
+			this.historial = historial;
+			this.posiciones = posiciones;
+		}
+
+		@Override
+		public Mensaje get(int indice) {
+			return historial.get(posiciones[indice]);
+		}
+
+		@Override
+		public int size() {
+			return posiciones.length;
+		}
+	}
+
+	/**
+	 * Normaliza un texto para el índice: minúsculas y sin tildes ni otros diacríticos.
+	 * @param texto El texto.
+	 * @return El texto normalizado.
+	 */
+	static String normalizar(String texto) {
+		boolean ascii = true;
+		for (int i = 0; i < texto.length() && ascii; i++) {
+			ascii = texto.charAt(i) < 128;
+		}
+		String descompuesto = ascii ? texto : Normalizer.normalize(texto, Normalizer.Form.NFD);
+		StringBuilder sb = new StringBuilder(descompuesto.length());
+		for (int i = 0; i < descompuesto.length(); i++) {
+			char c = descompuesto.charAt(i);
+			if (ascii || Character.getType(c) != Character.NON_SPACING_MARK) {
+				sb.append(Character.toLowerCase(c));
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Divide un texto en sus palabras normalizadas: secuencias de letras y dígitos.
+	 * @param texto El texto; puede ser nulo.
+	 * @return Las palabras, en orden.
+	 */
+	static String[] palabras(String texto) {
+		if (texto == null || texto.isEmpty()) return new String[0];
+		String normalizado = normalizar(texto);
+		List<String> palabras = new ArrayList<>();
+		int inicio = -1;
+		for (int i = 0; i <= normalizado.length(); i++) {
+			boolean letra = i < normalizado.length() && Character.isLetterOrDigit(normalizado.charAt(i));
+			if (letra && inicio < 0) {
+				inicio = i;
+			} else if (!letra && inicio >= 0) {
+				palabras.add(normalizado.substring(inicio, i));
+				inicio = -1;
+			}
+		}
+		return palabras.toArray(new String[0]);
+	}
+
+	private int numeroContacto(Contacto contacto) {
+		Integer numero = numerosContacto.get(contacto);
+		if (numero != null) return numero;
+		numero = contactos.size();
+		contactos.add(contacto);
+		numerosContacto.put(contacto, numero);
+		contacto.setIndice(this);
+		if (numero == indexados.length) indexados = Arrays.copyOf(indexados, numero * 2);
+		return numero;
+	}
+
+	private void indexar(int contacto, int posicion, String[] palabrasMensaje) {
+		if (palabrasMensaje.length == 0) return; // emoticonos
+		if (numeroMensajes == contactoMensaje.length) {
+			contactoMensaje = Arrays.copyOf(contactoMensaje, numeroMensajes * 2);
+			posicionMensaje = Arrays.copyOf(posicionMensaje, numeroMensajes * 2);
+		}
+		int id = numeroMensajes++;
+		contactoMensaje[id] = contacto;
+		posicionMensaje[id] = posicion;
+		for (int i = 0; i < palabrasMensaje.length; i++) {
+			palabras.computeIfAbsent(palabrasMensaje[i], p -> new Apariciones()).anadir(id, i);
+		}
+	}
+
+	/**
+	 * Filtra las apariciones de inicio de frase que van seguidas, {@code distancia} palabras
+	 * después y en el mismo mensaje, de una aparición de la lista dada.
+	 */
+	private static long[] seguidasDe(long[] inicios, Apariciones apariciones, int distancia) {
+		long[] resultado = new long[Math.min(inicios.length, apariciones.tamano)];
+		long[] valores = apariciones.valores;
+		int n = 0;
+		for (int i = 0, j = 0; i < inicios.length && j < apariciones.tamano;) {
+			long buscado = inicios[i] + distancia;
+			if (buscado < valores[j]) {
+				i++;
+			} else if (buscado > valores[j]) {
+				j++;
+			} else {
+				resultado[n++] = inicios[i];
+				i++;
+				j++;
+			}
+		}
+		return Arrays.copyOf(resultado, n);
+	}
+}
@@ -13,10 +13,18 @@ import utils.Utils;
  * actuales facilitan texto o emoticono por separado).
  * Es inmutable respecto a su contenido (texto, emoticono, fecha, tipo) una vez creado;
  * solo el {@code id} (para persistencia) es mutable.
+ * <p>
+ * Los mensajes de un {@link HistorialMensajes} se guardan por columnas en un
+ * {@link ColumnasMensajes}, y los que devuelve el historial son vistas ligeras sobre una de
+ * sus filas: no copian los datos, sino que los leen del almacén al consultarlos (y
+ * {@link #setId(int)} escribe en él). Dos vistas de la misma fila son iguales mientras su
+ * página siga en memoria (véase {@link #equals(Object)}).
+ * </p>
  */
 public class Mensaje {
 
     private static final DateTimeFormatter HORA_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");
+    private static final DateTimeFormatter FECHA_HORA_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
     /**
      * Valor utilizado en el campo {@code emoticono} para indicar la ausencia de un emoticono.
      */
@@ -27,6 +35,9 @@ public class Mensaje {
     private final int emoticono; // Código del emoticono, o SIN_EMOTICONO si no hay.
     private final LocalDateTime fecha;
     private final int tipo; // Tipo de mensaje (ej. enviado, recibido).
+    // Almacén y fila de los que lee sus datos una vista; null si el mensaje los guarda él mismo.
+    private final ColumnasMensajes columnas;
+    private final int fila;
 
     /**
      * Constructor principal para crear un mensaje con todos sus atributos especificados.
@@ -43,6 +54,23 @@ public class Mensaje {
         this.emoticono = emoticono;
         this.fecha = Objects.requireNonNull(fecha, "La fecha del mensaje no puede ser nula.");
         this.tipo = tipo;
+        this.columnas = null;
+        this.fila = -1;
+    }
+
+    /**
+     * Crea una vista sobre una fila de un almacén de mensajes por columnas.
+     *
+     * @param columnas El almacén.
+     * @param fila     La fila del mensaje en el almacén.
+     */
+    Mensaje(ColumnasMensajes columnas, int fila) {
+        this.texto = null;
+        this.emoticono = SIN_EMOTICONO;
+        this.fecha = null;
+        this.tipo = 0;
+        this.columnas = columnas;
+        this.fila = fila;
     }
 
     /**
@@ -75,7 +103,11 @@ public class Mensaje {
      * @param id El nuevo id del mensaje.
      */
     public void setId(int id) {
-        this.id = id;
+        if (columnas != null) {
+            columnas.setId(fila, id);
+        } else {
+            this.id = id;
+        }
     }
 
     /**
@@ -83,7 +115,17 @@ public class Mensaje {
      * @return El id del mensaje (puede ser 0 si no ha sido persistido).
      */
     public int getId() {
-        return id;
+        return (columnas != null) ? columnas.getId(fila) : id;
+    }
+
+    /**
+     * Indica si el mensaje se pudo recuperar de la persistencia. Un historial devuelve, en la
+     * posición de un mensaje que ya no existe, un mensaje recibido no disponible con un texto
+     * de aviso, en lugar de null.
+     * @return false si es el hueco de un mensaje que no se pudo recuperar.
+     */
+    public boolean isDisponible() {
+        return columnas == null || !columnas.isHueco(fila);
     }
 
     /**
@@ -91,7 +133,7 @@ public class Mensaje {
      * @return El texto del mensaje (puede ser una cadena vacía).
      */
     public String getTexto() {
-        return texto;
+        return (columnas != null) ? columnas.getTexto(fila) : texto;
     }
 
     /**
@@ -99,7 +141,7 @@ public class Mensaje {
      * @return El código del emoticono, o {@link #SIN_EMOTICONO} si el mensaje no tiene emoticono.
      */
     public int getEmoticono() {
-        return emoticono;
+        return (columnas != null) ? columnas.getEmoticono(fila) : emoticono;
     }
 
     /**
@@ -107,7 +149,7 @@ public class Mensaje {
      * @return La {@link LocalDateTime} del mensaje.
      */
     public LocalDateTime getFecha() {
-        return fecha;
+        return (columnas != null) ? columnas.getFecha(fila) : fecha;
     }
 
     /**
@@ -116,7 +158,7 @@ public class Mensaje {
      * @return El tipo de mensaje.
      */
     public int getTipo() {
-        return tipo;
+        return (columnas != null) ? columnas.getTipo(fila) : tipo;
     }
 
     /**
@@ -124,7 +166,7 @@ public class Mensaje {
      * @return La hora del mensaje como un String (ej. "14:35").
      */
     public String getHora() {
-        return this.fecha.format(HORA_FORMATTER);
+        return getFecha().format(HORA_FORMATTER);
     }
 
     /**
@@ -135,11 +177,32 @@ public class Mensaje {
      * @return Una cadena con la hora y el tipo del mensaje formateados.
      */
     public String getInfoFormateada() {
-        return this.getFechaHora() + Utils.SEPARATOR + this.tipo;
+        return this.getFechaHora() + Utils.SEPARATOR + getTipo();
     }
 
     public String getFechaHora() {
-		return this.fecha.format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm"));
+		return getFecha().format(FECHA_HORA_FORMATTER);
 	}
- 
+
+    /**
+     * Dos vistas son iguales si leen la misma fila del mismo almacén; los demás mensajes
+     * solo son iguales a sí mismos.
+     * <p>
+     * Al descartar una página del historial y volver a cargarla se crea un almacén nuevo, así
+     * que las vistas obtenidas antes y después no son iguales aunque sean el mismo mensaje.
+     * Los mensajes persistidos deben compararse por {@link #getId()}.
+     * </p>
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (columnas == null || !(obj instanceof Mensaje)) return false;
+        Mensaje otro = (Mensaje) obj;
+        return columnas == otro.columnas && fila == otro.fila;
+    }
+
+    @Override
+    public int hashCode() {
+        return (columnas != null) ? System.identityHashCode(columnas) * 31 + fila : System.identityHashCode(this);
+    }
 }
\ No newline at end of file
@@ -1,16 +1,25 @@
 package dominio;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import dao.DAOException;
 import dao.FactoriaDAO;
+import utils.IntObjectMap;
 
 /**
  * Repositorio Singleton que gestiona la colección de objetos {@link Usuario} en memoria.
- * Carga todos los usuarios desde la capa de persistencia al iniciarse y proporciona
- * métodos para acceder a ellos.
+ * <p>
+ * Al iniciarse solo carga el índice de usuarios (identificador y móvil), de modo que
+ * {@link #findUsuario(String)} puede usarse de inmediato sin esperar a que se recuperen
+ * todos los usuarios con sus contactos, grupos y mensajes. Cada usuario se construye
+ * la primera vez que se pide. El modo de carga se elige con la propiedad del sistema
+ * {@value #PROPIEDAD_MODO_CARGA} (ver {@link ModoCarga}).
+ * </p>
  * <p>
  * Las operaciones de añadir o eliminar usuarios actualmente solo afectan
  * a la caché en memoria y no se propagan a la capa de persistencia a través
@@ -23,36 +32,152 @@ public enum RepositorioUsuarios {
      * Única instancia del repositorio.
      */
 	INSTANCE;
-	
+
+	/**
+	 * Propiedad del sistema con la que se elige el {@link ModoCarga} del repositorio.
+	 */
+	public static final String PROPIEDAD_MODO_CARGA = "appchat.usuarios.carga";
+
+	/**
+	 * Forma en la que el repositorio recupera los usuarios al iniciarse.
+	 */
+	public enum ModoCarga {
+		/**
+		 * Carga todos los usuarios, con sus contactos y mensajes, antes de terminar de iniciarse.
+		 */
+		COMPLETA,
+		/**
+		 * Carga solo el índice de usuarios; cada usuario se construye al pedirlo.
+		 */
+		INDICE,
+		/**
+		 * Carga el índice y construye todos los usuarios en segundo plano. Los grafos de
+		 * usuarios se construyen de uno en uno (ver {@code dao.ConstruccionEntidades}), y un
+		 * usuario pedido mientras tanto espera a que termine el que se está construyendo.
+		 */
+		PARALELA
+	}
+
 	private FactoriaDAO factoria;
-	
-	private HashMap<Integer, Usuario> usuariosPorID;
-	private HashMap<String, Usuario> usuariosPorMovil;
+
+	// usuarios ya construidos
+	private IntObjectMap<Usuario> usuariosPorID;
+	// índice de todos los usuarios existentes, construidos o no
+	private HashMap<String, Integer> idsPorMovil;
+	private IntObjectMap<String> movilesPorID;
 
 	/**
      * Constructor privado para el Singleton.
-     * Inicializa las cachés de usuarios y carga todos los usuarios desde la
-     * capa de persistencia.
+     * Carga el índice de usuarios desde la capa de persistencia y, según el modo de carga,
+     * construye los usuarios o lanza su precarga en segundo plano.
      */
 	private RepositorioUsuarios (){
-		usuariosPorID = new HashMap<Integer, Usuario>();
-		usuariosPorMovil = new HashMap<String, Usuario>();
-		//facil de aplicar aquí streams
+		long inicio = System.nanoTime();
+		usuariosPorID = new IntObjectMap<Usuario>();
+		idsPorMovil = new HashMap<String, Integer>();
+		movilesPorID = new IntObjectMap<String>();
+		ModoCarga modo = leerModoCarga();
 		try {
 			factoria = FactoriaDAO.getInstancia();
-			
-			List<Usuario> listausuarios = factoria.getUsuarioDAO().getAll();
-			for (Usuario usuario : listausuarios) {
-				usuariosPorID.put(usuario.getId(), usuario);
-				usuariosPorMovil.put(usuario.getMovil(), usuario);
+
+			if (modo == ModoCarga.COMPLETA) {
+				for (Usuario usuario : factoria.getUsuarioDAO().getAll()) {
+					addUsuario(usuario);
+				}
+			} else {
+				factoria.getUsuarioDAO().getIdsPorMovil().forEach((movil, id) -> {
+					idsPorMovil.put(movil, id);
+					movilesPorID.put(id, movil);
+				});
 			}
 		} catch (DAOException eDAO) {
 			   eDAO.printStackTrace();
 		}
+		if (mostrarTiempos()) {
+			System.out.println("Repositorio de usuarios iniciado en " + milisDesde(inicio) + " ms: "
+					+ idsPorMovil.size() + " usuarios (carga " + modo + ")");
+		}
+
+		if (modo == ModoCarga.PARALELA && factoria != null) {
+			precargar();
+		}
+	}
+
+	private static ModoCarga leerModoCarga() {
+		String valor = System.getProperty(PROPIEDAD_MODO_CARGA, ModoCarga.INDICE.name());
+		try {
+			return ModoCarga.valueOf(valor.trim().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			System.err.println("Modo de carga de usuarios desconocido: " + valor + ". Se usa " + ModoCarga.INDICE);
+			return ModoCarga.INDICE;
+		}
+	}
+
+	// con -Dappchat.tiempos=true se muestra cuánto tardan la carga y la precarga
+	private static boolean mostrarTiempos() {
+		return Boolean.getBoolean("appchat.tiempos");
+	}
+
+	private static long milisDesde(long inicioNanos) {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicioNanos);
+	}
+
+	/**
+	 * Construye en segundo plano, en el pool fork-join común, todos los usuarios del índice
+	 * que aún no se han pedido. Se construyen uno tras otro: repartirlos entre varios hilos no
+	 * acelera nada, porque la construcción de entidades del pool es de una en una.
+	 */
+	private void precargar() {
+		// los DAO son singletons perezosos sin sincronizar: se crean aquí antes de usarlos desde varios hilos
+		factoria.getUsuarioDAO();
+		factoria.getContactoIndividualDAO();
+		factoria.getGrupoDAO();
+		factoria.getMensajeDAO();
+
+		int[] ids = getIdsIndice();
+		long inicio = System.nanoTime();
+		CompletableFuture.runAsync(() -> Arrays.stream(ids).forEach(this::hidratar))
+				.whenComplete((r, ex) -> {
+					if (ex != null) {
+						System.err.println("Error en la precarga de usuarios: " + ex);
+					} else if (mostrarTiempos()) {
+						System.out.println("Precarga de " + ids.length + " usuarios completada en " + milisDesde(inicio) + " ms");
+					}
+				});
+	}
+
+	private synchronized int[] getIdsIndice() {
+		int[] ids = new int[idsPorMovil.size()];
+		int i = 0;
+		for (Integer id : idsPorMovil.values()) {
+			ids[i++] = id;
+		}
+		return ids;
+	}
+
+	/**
+	 * Devuelve el usuario con el id dado, construyéndolo desde la persistencia si aún no lo estaba.
+	 * La construcción se hace sin mantener el cerrojo del repositorio.
+	 */
+	private Usuario hidratar(int id) {
+		synchronized (this) {
+			Usuario usuario = usuariosPorID.get(id);
+			if (usuario != null || !movilesPorID.containsKey(id)) return usuario;
+		}
+		Usuario usuario = factoria.getUsuarioDAO().getUsuario(id);
+		if (usuario == null) return null;
+		synchronized (this) {
+			Usuario existente = usuariosPorID.get(id);
+			if (existente != null) return existente;
+			if (!movilesPorID.containsKey(id)) return null; // eliminado mientras se construía
+			usuariosPorID.put(id, usuario);
+			return usuario;
+		}
 	}
 	
 	/**
-     * Devuelve una lista de todos los usuarios actualmente en el repositorio.
+     * Devuelve una lista de todos los usuarios actualmente en el repositorio,
+     * construyendo los que aún no se habían pedido.
      * La lista devuelta es una copia, por lo que las modificaciones a esta lista
      * no afectan la caché interna del repositorio.
      *
@@ -60,28 +185,49 @@ public enum RepositorioUsuarios {
      * o si la carga inicial falló.
      */
 	public List<Usuario> findUsuarios() throws DAOException {
-		return new LinkedList<Usuario>(usuariosPorMovil.values());
+		int[] ids = getIdsIndice();
+		List<Usuario> usuarios = new ArrayList<Usuario>(ids.length);
+		for (int id : ids) {
+			Usuario usuario = hidratar(id);
+			if (usuario != null) usuarios.add(usuario);
+		}
+		return usuarios;
+	}
+
+	/**
+     * Comprueba si existe un usuario con el móvil dado consultando solo el índice,
+     * sin construir el usuario.
+     *
+     * @param movil El número de móvil a comprobar.
+     * @return {@code true} si hay un usuario registrado con ese móvil.
+     */
+	public synchronized boolean existeUsuario(String movil) {
+		return idsPorMovil.containsKey(movil);
 	}
 	
 	/**
-     * Busca un usuario en la caché por su número de móvil.
+     * Busca un usuario por su número de móvil, construyéndolo si aún no se había pedido.
      *
      * @param movil El número de móvil del usuario a buscar. No debe ser nulo.
      * @return El {@link Usuario} si se encuentra, o {@code null} si no existe.
      * @throws NullPointerException si {@code movil} es nulo.
      */
 	public Usuario findUsuario(String movil) {
-		return usuariosPorMovil.get(movil);
+		Integer id;
+		synchronized (this) {
+			id = idsPorMovil.get(movil);
+		}
+		return (id != null) ? hidratar(id) : null;
 	}
 
 	/**
-     * Busca un usuario en la caché por su ID.
+     * Busca un usuario por su ID, construyéndolo si aún no se había pedido.
      *
      * @param id El ID del usuario a buscar.
      * @return El {@link Usuario} si se encuentra, o {@code null} si no existe.
      */
 	public Usuario findUsuario(int id) {
-		return usuariosPorID.get(id);
+		return hidratar(id);
 	}
 	
 	/**
@@ -91,9 +237,10 @@ public enum RepositorioUsuarios {
      * @param usuario El {@link Usuario} a añadir. No debe ser nulo.
      * @throws NullPointerException si {@code usuario} o su móvil son nulos.
      */
-	public void addUsuario(Usuario usuario) {
+	public synchronized void addUsuario(Usuario usuario) {
 		usuariosPorID.put(usuario.getId(), usuario);
-		usuariosPorMovil.put(usuario.getMovil(), usuario);
+		idsPorMovil.put(usuario.getMovil(), usuario.getId());
+		movilesPorID.put(usuario.getId(), usuario.getMovil());
 	}
 	
 	/**
@@ -103,9 +250,10 @@ public enum RepositorioUsuarios {
      * @param usuario El {@link Usuario} a eliminar. No debe ser nulo.
      * @throws NullPointerException si {@code usuario} o su móvil son nulos.
      */
-	public void removeUsuario(Usuario usuario) {
+	public synchronized void removeUsuario(Usuario usuario) {
 		usuariosPorID.remove(usuario.getId());
-		usuariosPorMovil.remove(usuario.getMovil());
+		idsPorMovil.remove(usuario.getMovil());
+		movilesPorID.remove(usuario.getId());
 	}
 
 }
@@ -1,15 +1,19 @@
 package dominio;
 
 import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 
 import dto.MensajeContextualizado;
+import tds.BubbleText;
 import utils.Utils;
 
 
@@ -26,6 +30,14 @@ import utils.Utils;
  * </p>
  */
 public class Usuario {
+
+	/**
+	 * Campos persistentes de un usuario que pueden modificarse tras su registro.
+	 */
+	public enum Campo {
+		NOMBRE, APELLIDOS, EMAIL, MOVIL, PASSWORD, FECHA_NACIMIENTO, IMAGEN, SALUDO, PREMIUM, CONTACTOS, GRUPOS,
+		ESTADISTICAS
+	}
 	
 	private int id;
 	private String nombre;
@@ -39,7 +51,20 @@ public class Usuario {
 	private boolean premium;
 	private final LocalDate fechaRegistro;
 	private final Set<Contacto> contactos = new HashSet<Contacto>(); //necesario definir los .equals y hashCode, pero aseguramos no duplicidad
-	private final List<ContactoIndividual> contactosIndividuales = new LinkedList<ContactoIndividual>();
+	private final List<ContactoIndividual> contactosIndividuales = new ArrayList<ContactoIndividual>();
+	// vistas inmutables de las dos colecciones anteriores; se rehacen al consultarlas tras un cambio
+	private List<Contacto> vistaContactos;
+	private List<ContactoIndividual> vistaContactosIndividuales;
+	// índices de los contactos; los contactos avisan de los cambios en sus claves (ver reindexarContacto)
+	private final Map<Integer, Contacto> contactosPorId = new HashMap<>();
+	private final Map<String, ContactoIndividual> contactosPorMovil = new HashMap<>();
+	private final Map<String, Grupo> gruposPorNombre = new HashMap<>();
+	private int versionMovilesIndexada;
+	// cambia cada vez que un usuario cambia de móvil, lo que invalida los índices por móvil de todos
+	private static final AtomicInteger versionMoviles = new AtomicInteger();
+	private final CambiosPendientes<Campo> cambios = new CambiosPendientes<>(Campo.class);
+	private final IndiceMensajes indiceMensajes = new IndiceMensajes(); // se rellena en la primera búsqueda
+	private EstadisticasMensajes estadisticas = new EstadisticasMensajes();
 	
 	/**
      * Constructor privado. Utilizar {@link Usuario.Builder} para crear instancias.
@@ -90,7 +115,9 @@ public class Usuario {
      * @throws NullPointerException si el nombre es nulo.
      */
     public void setNombre(String nombre) {
-        this.nombre = Objects.requireNonNull(nombre, "El nombre no puede ser nulo.");
+        Objects.requireNonNull(nombre, "El nombre no puede ser nulo.");
+        modificar(Campo.NOMBRE, this.nombre, nombre);
+        this.nombre = nombre;
     }
 
 	/**
@@ -107,7 +134,9 @@ public class Usuario {
      * @throws NullPointerException si los apellidos son nulos.
      */
 	public void setApellidos(String apellidos) {
-		this.apellidos = Objects.requireNonNull(apellidos, "Los apellidos no puede ser nulo.");;
+		Objects.requireNonNull(apellidos, "Los apellidos no puede ser nulo.");
+		modificar(Campo.APELLIDOS, this.apellidos, apellidos);
+		this.apellidos = apellidos;
 	}
 	
 	 /**
@@ -125,7 +154,9 @@ public class Usuario {
      * @throws NullPointerException si el email es nulo.
      */
 	public void setEmail(String email) {
-		this.email = Objects.requireNonNull(email, "El email no puede ser nulo.");;
+		Objects.requireNonNull(email, "El email no puede ser nulo.");
+		modificar(Campo.EMAIL, this.email, email);
+		this.email = email;
 	}
 	
 	/**
@@ -145,7 +176,11 @@ public class Usuario {
      * @throws NullPointerException si el móvil es nulo.
      */
 	public void setMovil(String movil) {
-		this.movil = Objects.requireNonNull(movil, "El movil no puede ser nulo.");;
+		Objects.requireNonNull(movil, "El movil no puede ser nulo.");
+		modificar(Campo.MOVIL, this.movil, movil);
+		boolean cambia = !Objects.equals(this.movil, movil);
+		this.movil = movil;
+		if (cambia) versionMoviles.incrementAndGet();
 	}
 
 
@@ -171,7 +206,9 @@ public class Usuario {
      * @throws NullPointerException si la contraseña es nula.
      */
 	public void setPassword(String password) {
-		this.password =  Objects.requireNonNull(password, "La contraseña no puede ser nula.");;
+		Objects.requireNonNull(password, "La contraseña no puede ser nula.");
+		modificar(Campo.PASSWORD, this.password, password);
+		this.password = password;
 	}
 
 	/**
@@ -187,6 +224,7 @@ public class Usuario {
      * @param fechaNacimiento La nueva fecha de nacimiento (puede ser {@code null}).
      */
 	public void setFechaNacimiento(LocalDate fechaNacimiento) {
+		modificar(Campo.FECHA_NACIMIENTO, this.fechaNacimiento, fechaNacimiento);
 		this.fechaNacimiento = fechaNacimiento;
 	}
 
@@ -204,6 +242,7 @@ public class Usuario {
      * @param URLimagen La nueva URL de la imagen.
      */
 	public void setURLImagen(String URLimagen) {
+        modificar(Campo.IMAGEN, this.URLimagen, (URLimagen != null) ? URLimagen : "");
         this.URLimagen = (URLimagen != null) ? URLimagen : "";
     }
 
@@ -221,6 +260,7 @@ public class Usuario {
      * @param saludo El nuevo mensaje de saludo.
      */
 	public void setSaludo(String saludo) {
+		modificar(Campo.SALUDO, this.saludo, saludo);
 		this.saludo = saludo;
 	}
 
@@ -236,6 +276,7 @@ public class Usuario {
      * Activa el estado Premium del usuario.
      */
 	public void activarPremium() {
+		modificar(Campo.PREMIUM, this.premium, true);
 		this.premium = true;
 	}
 	
@@ -243,6 +284,7 @@ public class Usuario {
      * Desactiva el estado Premium del usuario.
      */
 	public void desactivarPremium() {
+		modificar(Campo.PREMIUM, this.premium, false);
 		this.premium = false;
 	}
 	
@@ -256,22 +298,26 @@ public class Usuario {
 	}
 	
 	/**
-     * Devuelve una nueva lista (copia defensiva) que contiene todos los contactos
-     * (individuales y grupos) de este usuario.
-     * Las modificaciones a la lista devuelta no afectarán a la colección interna de contactos.
-     * @return Una nueva {@link List} (actualmente {@link LinkedList}) de {@link Contacto}.
+     * Devuelve todos los contactos (individuales y grupos) de este usuario.
+     * La lista es inmutable y no refleja los cambios posteriores, por lo que puede recorrerse
+     * desde cualquier hilo. No se copia en cada llamada: se reutiliza mientras los contactos
+     * no cambien.
+     * @return Una {@link List} inmutable de {@link Contacto}.
      */
-	public LinkedList<Contacto> getContactos() {
-		return new LinkedList<>(contactos);
+	public synchronized List<Contacto> getContactos() {
+		if (vistaContactos == null) vistaContactos = List.copyOf(contactos);
+		return vistaContactos;
 	}
 	
 	/**
-     * Devuelve una nueva lista del conjunto de contactos que son individuales (no grupos)
-     * de este usuario.
-     * @return Un {@link List} de {@link ContactoIndividual}.
+     * Devuelve los contactos individuales (no grupos) de este usuario, en el orden en que se
+     * añadieron. Como {@link #getContactos()}, la lista es inmutable y se reutiliza mientras
+     * los contactos no cambien.
+     * @return Un {@link List} inmutable de {@link ContactoIndividual}.
      */
-	public List<ContactoIndividual> getContactosIndividuales() {
-		return new LinkedList<>(contactosIndividuales);
+	public synchronized List<ContactoIndividual> getContactosIndividuales() {
+		if (vistaContactosIndividuales == null) vistaContactosIndividuales = List.copyOf(contactosIndividuales);
+		return vistaContactosIndividuales;
 	}
 
 	/**
@@ -279,11 +325,17 @@ public class Usuario {
      * @param contacto El {@link Contacto} a añadir. No debe ser nulo.
      * @throws NullPointerException si {@code contacto} es nulo.
      */
-	public void addContacto(Contacto contacto) {
+	public synchronized void addContacto(Contacto contacto) {
 		Objects.requireNonNull(contacto, "El contacto a añadir no puede ser nulo.");
-		this.contactos.add(contacto);
-		if (contacto instanceof ContactoIndividual) {
-			this.contactosIndividuales.add((ContactoIndividual) contacto);
+		if (this.contactos.add(contacto)) {
+			cambios.marcar(campoDe(contacto));
+			vistaContactos = null;
+			if (contacto instanceof ContactoIndividual) {
+				this.contactosIndividuales.add((ContactoIndividual) contacto);
+				vistaContactosIndividuales = null;
+			}
+			indexar(contacto);
+			contacto.setPropietario(this);
 		}
 	}
 	
@@ -292,14 +344,127 @@ public class Usuario {
      * @param contacto El {@link Contacto} a eliminar. No debe ser nulo.
      * @throws NullPointerException si {@code contacto} es nulo.
      */
-	public void removeContacto(Contacto contacto) {
-		this.contactos.remove(contacto);
+	public synchronized void removeContacto(Contacto contacto) {
+		if (this.contactos.remove(contacto)) {
+			cambios.marcar(campoDe(contacto));
+			vistaContactos = null;
+			desindexar(contacto);
+			indiceMensajes.quitar(contacto);
+			if (contacto.getPropietario() == this) contacto.setPropietario(null);
+		}
+		if (contacto instanceof ContactoIndividual && this.contactosIndividuales.remove(contacto)) {
+			vistaContactosIndividuales = null;
+		}
+	}
+
+	/**
+     * Aplica un cambio a una de las claves por las que se indexa un contacto de este usuario
+     * (id, nombre o usuario asociado) y actualiza los índices. Lo llama el propio contacto.
+     * @param contacto El contacto.
+     * @param cambio El cambio.
+     */
+	synchronized void reindexarContacto(Contacto contacto, Runnable cambio) {
+		// se comprueba el propietario y no el conjunto: el hash de un grupo cambia con su nombre
+		if (contacto.getPropietario() != this) {
+			cambio.run();
+			return;
+		}
+		desindexar(contacto);
+		cambio.run();
+		indexar(contacto);
+	}
+
+	private void indexar(Contacto contacto) {
+		if (contacto.getId() != 0) contactosPorId.putIfAbsent(contacto.getId(), contacto);
+		if (contacto instanceof ContactoIndividual) {
+			ContactoIndividual individual = (ContactoIndividual) contacto;
+			String movil = movilDe(individual);
+			if (movil != null) contactosPorMovil.putIfAbsent(movil, individual);
+		} else if (contacto instanceof Grupo) {
+			gruposPorNombre.putIfAbsent(contacto.getNombre(), (Grupo) contacto);
+		}
+	}
+
+	/**
+     * Quita un contacto de los índices con sus claves actuales. Si otro contacto comparte alguna
+     * de ellas, pasa a ocupar su entrada; es raro, y para encontrarlo se recorren los contactos.
+     */
+	private void desindexar(Contacto contacto) {
+		boolean estaba = contactosPorId.remove(contacto.getId(), contacto);
 		if (contacto instanceof ContactoIndividual) {
-			this.contactosIndividuales.remove(contacto);
+			String movil = movilDe((ContactoIndividual) contacto);
+			estaba |= movil != null && contactosPorMovil.remove(movil, contacto);
+		} else if (contacto instanceof Grupo) {
+			estaba |= gruposPorNombre.remove(contacto.getNombre(), contacto);
+		}
+		if (estaba) {
+			for (Contacto otro : contactos) {
+				if (otro != contacto) indexar(otro);
+			}
+		}
+	}
+
+	private static String movilDe(ContactoIndividual contacto) {
+		Usuario usuario = contacto.getUsuario();
+		return (usuario != null) ? usuario.getMovil() : null;
+	}
+
+	/**
+     * Rehace el índice por móvil si algún usuario ha cambiado de móvil desde que se construyó.
+     */
+	private void comprobarIndiceMoviles() {
+		int version = versionMoviles.get();
+		if (version == versionMovilesIndexada) return;
+		contactosPorMovil.clear();
+		for (ContactoIndividual contacto : contactosIndividuales) {
+			String movil = movilDe(contacto);
+			if (movil != null) contactosPorMovil.putIfAbsent(movil, contacto);
 		}
+		versionMovilesIndexada = version;
 	}
 	
 
+	/**
+     * Devuelve las estadísticas de los mensajes enviados por el usuario. Si no se conocen
+     * (usuarios guardados antes de existir las estadísticas), se calculan una vez a partir de
+     * los historiales y se marcan para guardarlas.
+     * @return Las estadísticas de mensajes enviados.
+     */
+	public synchronized EstadisticasMensajes getEstadisticas() {
+		if (estadisticas == null) {
+			estadisticas = EstadisticasMensajes.calcular(getContactos());
+			cambios.marcar(Campo.ESTADISTICAS);
+		}
+		return estadisticas;
+	}
+
+	/**
+     * Establece las estadísticas de mensajes enviados. Usado principalmente por la capa de persistencia.
+     * @param estadisticas Las estadísticas guardadas, o null si no se conocen y deben calcularse.
+     */
+	public synchronized void setEstadisticas(EstadisticasMensajes estadisticas) {
+		this.estadisticas = estadisticas;
+	}
+
+	/**
+     * Devuelve el registro de los campos modificados desde la última vez que se guardó
+     * el usuario, que la capa de persistencia usa para escribir solo lo que ha cambiado.
+     * @return El registro de cambios pendientes del usuario.
+     */
+	public CambiosPendientes<Campo> getCambios() {
+		return cambios;
+	}
+
+	private void modificar(Campo campo, Object anterior, Object nuevo) {
+		if (!Objects.equals(anterior, nuevo)) {
+			cambios.marcar(campo);
+		}
+	}
+
+	private static Campo campoDe(Contacto contacto) {
+		return (contacto instanceof Grupo) ? Campo.GRUPOS : Campo.CONTACTOS;
+	}
+
 	// --- Clase Builder Interna Estática ---
     /**
      * Clase Builder para construir instancias de {@link Usuario} de forma fluida y legible.
@@ -405,9 +570,7 @@ public class Usuario {
         if (movilABuscar == null) {
             return false;
         }
-        return contactosIndividuales.stream()
-        			.map(c -> c.getUsuario().getMovil())
-        			.anyMatch(m -> m.equals(movilABuscar));
+        return getContactoConMovil(movilABuscar) != null;
     }
 	
 
@@ -417,11 +580,9 @@ public class Usuario {
      * @param movilABuscar El número de móvil a buscar.
      * @return Un {@link ContactoIndividual} si lo encuentra o {@link <code>null</code>} si no lo encuentra. 
      */
-	public ContactoIndividual getContactoConMovil(String movil2) {
-	    return contactosIndividuales.stream()
-	        .filter(contacto -> contacto.getUsuario().getMovil().equals(movil2))
-	        .findFirst()
-	        .orElse(null);
+	public synchronized ContactoIndividual getContactoConMovil(String movil2) {
+		comprobarIndiceMoviles();
+		return contactosPorMovil.get(movil2);
 	}
 
 	/**
@@ -431,14 +592,16 @@ public class Usuario {
      * @return Un {@link ContactoIndividual} si lo encuentra o {@link <code>null</code>} si no lo encuentra. 
      */
 	public Mensaje enviarMensaje(int idContacto, Object contenido, int sent) {
-		Contacto contacto = this.contactos.stream()
-				.filter(c -> c.getId() == idContacto)
-				.findFirst()
-				.orElse(null);
+		Contacto contacto = getContactoConId(idContacto);
 		if (contacto != null) {
 			//mensaje = new Mensaje(contenido, sent); //AQUÍ O EN CONTACTO????
 			//System.out.println("Enviando mensaje a " + contacto.getNombre() + ": " + mensaje.getTexto());
-			return contacto.addMensaje(contenido, sent);
+			Mensaje mensaje = contacto.addMensaje(contenido, sent);
+			if (sent == BubbleText.SENT) {
+				getEstadisticas().registrarEnviado(idContacto, mensaje.getFecha());
+				cambios.marcar(Campo.ESTADISTICAS);
+			}
+			return mensaje;
 		}
 		return null;
 	}
@@ -464,48 +627,39 @@ public class Usuario {
      * @return Un {@link Optional<Grupo>} que contiene el grupo si se encuentra, o un <code>null</code> 
      * si {@code nombreGrupo} es nulo, vacío o no se encuentra un grupo con ese nombre.
      */
-	public Contacto getGrupoConNombre(String nombre) {
-	    return this.contactos.stream()
-	            .filter(c -> c instanceof Grupo && c.getNombre().equals(nombre))
-	            .findFirst()
-	            .orElse(null);
+	public synchronized Contacto getGrupoConNombre(String nombre) {
+		return gruposPorNombre.get(nombre);
 	}
 
 	/**
      * Calcula el número total de mensajes que este usuario ha enviado (cuyo tipo es {@code BubbleText.SENT})
      * a través de todos sus contactos durante el mes natural anterior al actual.
+     * Se obtiene de los contadores diarios de {@link #getEstadisticas()}, sin recorrer los historiales.
      *
      * @return El recuento de mensajes enviados el mes pasado.
      */
 	public int getNumeroMensajesEnviadosMesPasado() {
-		return (int) contactos.stream()
-				.flatMap(c -> c.getTodosLosMensajesEnviados().stream())
-				.filter(m-> m.getFecha().isAfter(LocalDateTime.now().minusMonths(1)))
-				.count();
+		return getEstadisticas().getEnviadosDesde(LocalDate.now().minusMonths(1));
 	}
 
-	public Contacto getContactoConId(int id2) {
-		return this.contactos.stream()
-				.filter(c -> c.getId() == id2)
-				.findFirst()
-				.orElse(null);
+	public synchronized Contacto getContactoConId(int id2) {
+		return contactosPorId.get(id2);
 	}
 
-	public Contacto addContactoIndividual(Usuario usuario, String movil2) {
+	public synchronized Contacto addContactoIndividual(Usuario usuario, String movil2) {
 		ContactoIndividual contacto = new ContactoIndividual(usuario, movil2);
-		this.contactos.add(contacto);
-		this.contactosIndividuales.add(contacto);
+		addContacto(contacto);
 		return contacto;
 	}
 
-	public Grupo addGrupo(String nombreGrupo, ContactoIndividual[] array) {
+	public synchronized Grupo addGrupo(String nombreGrupo, ContactoIndividual[] array) {
 		Grupo grupo = new Grupo(nombreGrupo, array);
-		this.contactos.add(grupo);
+		addContacto(grupo);
 		return grupo;
 	}
 
 	public List<String> getDatosUsuario() {
-		List<String> datos = new LinkedList<>();
+		List<String> datos = new ArrayList<>();
 		datos.add(this.getNombre());
 		datos.add(this.getApellidos());
 		datos.add(this.getEmail());
@@ -519,6 +673,7 @@ public class Usuario {
 	
 	/**
 	 * Busca mensajes entre los contactos del usuario según los criterios especificados.
+	 * Equivale a recorrer entera la búsqueda de {@link #buscarMensajes(String, String, String)}.
 	 *
 	 * @param textoCrit El texto a buscar en el contenido de los mensajes.
 	 * @param telefonoCrit El número de teléfono del contacto para filtrar.
@@ -527,7 +682,41 @@ public class Usuario {
 	 * ordenados por fecha del mensaje.
 	 */
 	public List<MensajeContextualizado> buscarMisMensajes(String textoCrit, String telefonoCrit, String nombreContactoCrit) {
-	    List<MensajeContextualizado> mensajesEncontrados = new LinkedList<>();
+		return buscarMensajes(textoCrit, telefonoCrit, nombreContactoCrit).restantes();
+	}
+
+	/**
+	 * Busca mensajes entre los contactos del usuario según los criterios especificados, y
+	 * devuelve los resultados para recorrerlos por páginas en orden de fecha.
+	 * <p>
+	 * El texto se busca en un índice de palabras (ver {@link IndiceMensajes}) sin distinguir
+	 * mayúsculas ni tildes: un mensaje coincide si contiene las palabras buscadas seguidas,
+	 * pudiendo estar incompleta la última. La primera búsqueda por texto de cada contacto lee
+	 * todo su historial para indexarlo, cargando todas sus páginas.
+	 * </p>
+	 *
+	 * @param textoCrit El texto a buscar en el contenido de los mensajes.
+	 * @param telefonoCrit El número de teléfono del contacto para filtrar.
+	 * @param nombreContactoCrit El nombre del contacto para filtrar. "Selecciona un contacto" se ignora.
+	 * @return La {@link BusquedaMensajes} con los mensajes que coinciden con los criterios.
+	 */
+	public BusquedaMensajes buscarMensajes(String textoCrit, String telefonoCrit, String nombreContactoCrit) {
+		return buscarMensajes(textoCrit, telefonoCrit, nombreContactoCrit, () -> false);
+	}
+
+	/**
+	 * Como {@link #buscarMensajes(String, String, String)}, pero abandonando la búsqueda en cuanto
+	 * se cancele. Los historiales de los contactos se recorren en paralelo (ver {@link BusquedaParalela}).
+	 *
+	 * @param textoCrit El texto a buscar en el contenido de los mensajes.
+	 * @param telefonoCrit El número de teléfono del contacto para filtrar.
+	 * @param nombreContactoCrit El nombre del contacto para filtrar. "Selecciona un contacto" se ignora.
+	 * @param cancelada Indica si se ha cancelado la búsqueda; se consulta desde varios hilos.
+	 * @return La {@link BusquedaMensajes} con los mensajes que coinciden con los criterios.
+	 * @throws CancellationException Si la búsqueda se cancela antes de terminar.
+	 */
+	public BusquedaMensajes buscarMensajes(String textoCrit, String telefonoCrit, String nombreContactoCrit,
+			BooleanSupplier cancelada) {
 	    boolean buscarPorTexto = (textoCrit != null && !textoCrit.trim().isEmpty());
 	    boolean buscarPorTelefono = (telefonoCrit != null && !telefonoCrit.trim().isEmpty());
 	    boolean buscarPorNombreContacto = (nombreContactoCrit != null && 
@@ -538,13 +727,13 @@ public class Usuario {
 	    // podríamos devolver todos los mensajes o una lista vacía.
 	    // Para ser consistentes con la idea de "búsqueda", devolvemos vacío si no hay criterio.
 	    if (!buscarPorTexto && !buscarPorTelefono && !buscarPorNombreContacto) {
-	        return mensajesEncontrados;
+	        return BusquedaMensajes.vacia(this.getNombre());
 	    }
 
 	    Set<Contacto> contactosAProcesar = new HashSet<>();
 
 	    if (buscarPorNombreContacto) {
-	        this.getContactos().stream() // getContactos() devuelve una LinkedList<Contacto>
+	        this.getContactos().stream()
 	            .filter(c -> c.getNombre().equalsIgnoreCase(nombreContactoCrit))
 	            .forEach(contactosAProcesar::add);
 	    } else if (buscarPorTelefono) { // Usar 'else if' para que el teléfono solo filtre si no se filtró por nombre
@@ -556,33 +745,24 @@ public class Usuario {
 	        // Si no se filtra por nombre ni teléfono, pero sí por texto, se procesan todos los contactos
 	        contactosAProcesar.addAll(this.getContactos());
 	    }
-	    
-	    // Si después de filtrar contactos por nombre/teléfono no queda ninguno, y no se busca por texto en todos, retornar vacío.
-	    if (contactosAProcesar.isEmpty() && (buscarPorNombreContacto || buscarPorTelefono)) {
-	        return mensajesEncontrados;
-	    }
 
-
-	    for (Contacto contacto : contactosAProcesar) {
-	        List<Mensaje> mensajesDelContacto;
-	        if (buscarPorTexto) {
-	            mensajesDelContacto = contacto.buscarMensajesPorTexto(textoCrit);
-	        } else {
-	            // Si el contacto fue seleccionado por nombre/teléfono pero no hay filtro de texto,
-	            // se incluyen todos sus mensajes.
-	            mensajesDelContacto = contacto.getMensajesEnviados(); // Devuelve una lista inmutable
+	    // con texto se usa el índice, salvo que el texto no tenga ninguna palabra (solo signos)
+	    Map<Contacto, List<Mensaje>> encontrados;
+	    if (!buscarPorTexto) {
+	        // Si el contacto fue seleccionado por nombre/teléfono pero no hay filtro de texto,
+	        // se incluyen todos sus mensajes.
+	        encontrados = new HashMap<>();
+	        for (Contacto contacto : contactosAProcesar) {
+	            encontrados.put(contacto, contacto.getMensajesEnviados());
 	        }
-	        
-	        for (Mensaje mensaje : mensajesDelContacto) {
-	            String nombreInterlocutor = (mensaje.getTipo() == tds.BubbleText.SENT) ? this.getNombre() : contacto.getNombre();
-	            mensajesEncontrados.add(new MensajeContextualizado(mensaje, nombreInterlocutor, this.getNombre()));
+	    } else {
+	        encontrados = indiceMensajes.buscar(textoCrit, contactosAProcesar, cancelada);
+	        if (encontrados == null) {
+	            encontrados = BusquedaParalela.porContacto(contactosAProcesar,
+	                    c -> c.buscarMensajesPorTexto(textoCrit), cancelada);
 	        }
 	    }
-	    
-	    // Opcional: Ordenar los mensajes globalmente por fecha
-	    mensajesEncontrados.sort(Comparator.comparing(mc -> mc.getMensaje().getFecha()));
-
-	    return mensajesEncontrados;
+	    return new BusquedaMensajes(this.getNombre(), encontrados);
 	}
 }
 
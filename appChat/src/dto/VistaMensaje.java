@@ -0,0 +1,46 @@
+package dto;
+
+import dominio.Mensaje;
+import tds.BubbleText;
+
+/**
+ * Datos de un mensaje ya preparados para pintarlo en el chat: quién lo envía, cuándo
+ * (formateado) y su contenido, que es un texto o un emoticono.
+ * <p>
+ * Se crea de una vez a partir del {@link Mensaje}, de modo que la interfaz no tiene que
+ * recomponer el mensaje a partir de listas paralelas ni volver a analizar cadenas.
+ * </p>
+ */
+public final class VistaMensaje {
+    private final boolean enviado;
+    private final String texto; // null si el mensaje es un emoticono
+    private final int emoticono;
+    private final String remitente; // "Tú" o el nombre del contacto
+    private final String fechaHora;
+
+    /**
+     * Crea la vista de un mensaje de una conversación.
+     * @param mensaje El mensaje.
+     * @param nombreContacto El nombre del contacto de la conversación, remitente de los mensajes recibidos.
+     */
+    public VistaMensaje(Mensaje mensaje, String nombreContacto) {
+        this.enviado = mensaje.getTipo() == BubbleText.SENT;
+        String textoMensaje = mensaje.getTexto();
+        this.texto = textoMensaje.isEmpty() ? null : textoMensaje;
+        this.emoticono = mensaje.getEmoticono();
+        this.remitente = enviado ? "Tú" : nombreContacto;
+        this.fechaHora = mensaje.getFechaHora();
+    }
+
+    public boolean isEnviado() { return enviado; }
+    public boolean isEmoticono() { return texto == null; }
+    public String getTexto() { return texto; }
+    public int getEmoticono() { return emoticono; }
+    public String getRemitente() { return remitente; }
+    public String getFechaHora() { return fechaHora; }
+
+    /**
+     * @return El rótulo de la burbuja: remitente y fecha, como "Tú - 01/01/2025 10:00".
+     */
+    public String getCabecera() { return remitente + " - " + fechaHora; }
+}
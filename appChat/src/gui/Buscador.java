@@ -1,6 +1,7 @@
 package gui;
 
 import controlador.Controlador;
+import dominio.BusquedaMensajes;
 import dominio.Contacto;
 import dominio.Mensaje;
 import dto.MensajeContextualizado;
@@ -9,8 +10,13 @@ import javax.swing.*;
 import javax.swing.border.TitledBorder;
 import java.awt.*;
 import java.awt.event.ActionEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.time.format.DateTimeFormatter;
-import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Clase que representa una ventana para buscar mensajes según texto, teléfono o contacto.
@@ -41,6 +47,63 @@ public class Buscador {
     /** Componente de lista donde se muestran los mensajes */
     private JList<String> listaMensajes;
 
+    /** Botón para mostrar la siguiente página de resultados */
+    private JButton btnMasResultados;
+
+    /** Búsqueda cuyos resultados se están mostrando */
+    private BusquedaMensajes busquedaActual;
+
+    /** Búsqueda que se está realizando en segundo plano, si la hay */
+    private Preparacion busquedaEnCurso;
+
+    /**
+     * Realiza una búsqueda fuera del hilo de eventos y, al terminar, muestra su primera página.
+     * Puede cancelarse, por ejemplo al iniciar otra búsqueda.
+     */
+    private class Preparacion extends SwingWorker<BusquedaMensajes, Void> {
+        private final String texto, telefono, contacto;
+        private final AtomicBoolean cancelada = new AtomicBoolean();
+        private java.util.List<MensajeContextualizado> primeraPagina;
+
+        Preparacion(String texto, String telefono, String contacto) {
+            this.texto = texto;
+            this.telefono = telefono;
+            this.contacto = contacto;
+        }
+
+        void cancelar() {
+            cancelada.set(true);
+        }
+
+        @Override
+        protected BusquedaMensajes doInBackground() {
+            BusquedaMensajes busqueda = Controlador.INSTANCE.iniciarBusqueda(texto, telefono, contacto, cancelada::get);
+            primeraPagina = busqueda.siguientePagina(BusquedaMensajes.TAMANO_PAGINA);
+            return busqueda;
+        }
+
+        @Override
+        protected void done() {
+            if (busquedaEnCurso != this || cancelada.get()) return;
+            busquedaEnCurso = null;
+            try {
+                busquedaActual = get();
+            } catch (InterruptedException | CancellationException e) {
+                return;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof CancellationException) return;
+                modeloMensajes.clear();
+                modeloMensajes.addElement("Error al buscar mensajes: " + e.getCause().getMessage());
+                return;
+            }
+            modeloMensajes.clear();
+            mostrarPagina(primeraPagina);
+            if (modeloMensajes.isEmpty()) {
+                modeloMensajes.addElement("No se encontraron mensajes con los criterios especificados.");
+            }
+        }
+    }
+
     /**
      * Constructor que inicializa la ventana del buscador.
      */
@@ -163,16 +226,31 @@ public class Buscador {
         scrollPane.setBorder(BorderFactory.createEmptyBorder());
         panelResultados.add(scrollPane, BorderLayout.CENTER);
 
+        btnMasResultados = new JButton("Ver más resultados");
+        btnMasResultados.setFont(new Font("Arial", Font.PLAIN, 14));
+        btnMasResultados.setVisible(false);
+        btnMasResultados.addActionListener(e -> mostrarSiguientePagina());
+        panelResultados.add(btnMasResultados, BorderLayout.SOUTH);
+
         frame.add(panelResultados, BorderLayout.CENTER);
 
         btnBuscar.addActionListener(this::realizarBusqueda);
+        txtTexto.addActionListener(this::realizarBusqueda);
+
+        // al cerrar la ventana se abandona la búsqueda en curso
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                cancelarBusqueda();
+            }
+        });
     }
 
     /**
      * Carga los contactos del usuario actual en el combo desplegable.
      */
     private void cargarContactos() {
-        LinkedList<Contacto> contactos = Controlador.INSTANCE.getContactosUsuario();
+        List<Contacto> contactos = Controlador.INSTANCE.getContactosUsuario();
         cbContacto.addItem("Selecciona un contacto");
         for (Contacto contacto : contactos) {
             cbContacto.addItem(contacto.getNombre());
@@ -205,46 +283,73 @@ public class Buscador {
             return;
         }
 
-        // Llamada al controlador, ahora devuelve List<Usuario.MensajeContextualizado>
-        java.util.List<MensajeContextualizado> resultados = Controlador.INSTANCE.buscarMensajes(
-            texto, telefono, contactoSeleccionadoNombre); //
-
+        // Se abandona la búsqueda anterior y la nueva se realiza en segundo plano
+        cancelarBusqueda();
         modeloMensajes.clear();
+        modeloMensajes.addElement("Buscando...");
+        busquedaEnCurso = new Preparacion(texto, telefono, contactoSeleccionadoNombre);
+        busquedaEnCurso.execute();
+    }
 
-        if (resultados.isEmpty()) {
-            modeloMensajes.addElement("No se encontraron mensajes con los criterios especificados.");
-        } else {
-            DateTimeFormatter formatter = utils.Utils.formatoFechaHora; // Asumiendo que existe en Utils
-                                                                     // o DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
-
-            for (MensajeContextualizado mc : resultados) {
-                Mensaje mensaje = mc.getMensaje();
-                String nombreEmisor;
-
-                // Determinar quién es el emisor para la visualización
-                if (mensaje.getTipo() == tds.BubbleText.SENT) {
-                     // Si el mensaje fue enviado por el usuario actual, el interlocutor es el contacto.
-                     // Pero para la búsqueda, queremos mostrar "Tú" o el nombre del usuario actual.
-                     nombreEmisor = mc.getNombreUsuarioActual(); // O simplemente "Tú"
-                } else {
-                     // Si fue recibido, el interlocutor directo es el nombre del contacto que lo envió.
-                     nombreEmisor = mc.getNombreInterlocutorDirecto();
-                }
-
-                String mensajeDisplay;
-                if (mensaje.getEmoticono() != Mensaje.SIN_EMOTICONO) { //
-                    mensajeDisplay = String.format("%s (%s): [Emoji %d]",
-                        nombreEmisor,
-                        mensaje.getFecha().format(formatter),
-                        mensaje.getEmoticono());
-                } else {
-                    mensajeDisplay = String.format("%s (%s): %s",
-                        nombreEmisor,
-                        mensaje.getFecha().format(formatter),
-                        mensaje.getTexto());
-                }
-                modeloMensajes.addElement(mensajeDisplay);
+    /**
+     * Añade a la lista la siguiente página de resultados de la búsqueda actual.
+     */
+    private void mostrarSiguientePagina() {
+        if (busquedaActual == null) return;
+        mostrarPagina(busquedaActual.siguientePagina(BusquedaMensajes.TAMANO_PAGINA));
+    }
+
+    /**
+     * Añade a la lista una página de resultados de la búsqueda actual.
+     * @param pagina Los mensajes de la página.
+     */
+    private void mostrarPagina(java.util.List<MensajeContextualizado> pagina) {
+        DateTimeFormatter formatter = utils.Utils.formatoFechaHora; // Asumiendo que existe en Utils
+                                                                 // o DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
+
+        for (MensajeContextualizado mc : pagina) {
+            Mensaje mensaje = mc.getMensaje();
+            String nombreEmisor;
+
+            // Determinar quién es el emisor para la visualización
+            if (mensaje.getTipo() == tds.BubbleText.SENT) {
+                 // Si el mensaje fue enviado por el usuario actual, el interlocutor es el contacto.
+                 // Pero para la búsqueda, queremos mostrar "Tú" o el nombre del usuario actual.
+                 nombreEmisor = mc.getNombreUsuarioActual(); // O simplemente "Tú"
+            } else {
+                 // Si fue recibido, el interlocutor directo es el nombre del contacto que lo envió.
+                 nombreEmisor = mc.getNombreInterlocutorDirecto();
             }
+
+            String mensajeDisplay;
+            if (mensaje.getEmoticono() != Mensaje.SIN_EMOTICONO) { //
+                mensajeDisplay = String.format("%s (%s): [Emoji %d]",
+                    nombreEmisor,
+                    mensaje.getFecha().format(formatter),
+                    mensaje.getEmoticono());
+            } else {
+                mensajeDisplay = String.format("%s (%s): %s",
+                    nombreEmisor,
+                    mensaje.getFecha().format(formatter),
+                    mensaje.getTexto());
+            }
+            modeloMensajes.addElement(mensajeDisplay);
+        }
+        btnMasResultados.setVisible(busquedaActual.hayMas());
+    }
+
+    /**
+     * Cancela la búsqueda actual y la que esté en curso, si las hay.
+     */
+    private void cancelarBusqueda() {
+        if (busquedaEnCurso != null) {
+            busquedaEnCurso.cancelar();
+            busquedaEnCurso = null;
+        }
+        if (busquedaActual != null) {
+            busquedaActual.cancelar();
+            busquedaActual = null;
         }
+        if (btnMasResultados != null) btnMasResultados.setVisible(false);
     }
 }
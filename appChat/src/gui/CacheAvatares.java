@@ -0,0 +1,235 @@
+package gui;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+import javax.swing.JLabel;
+import javax.swing.SwingUtilities;
+
+/**
+ * Caché de las imágenes de perfil de usuarios y contactos, ya decodificadas y escaladas.
+ * <p>
+ * Las imágenes se guardan por URL (o ruta local) y tamaño, de modo que pintar de nuevo una
+ * fila de la lista de contactos no vuelve a leer ni a escalar nada. Las que no están en la
+ * caché se cargan en segundo plano: mientras tanto se devuelve la imagen por defecto, y al
+ * terminar se entrega la imagen a quien la pidió, en el hilo de eventos. Varias peticiones
+ * de la misma imagen comparten una sola carga.
+ * </p>
+ * <p>
+ * La memoria está acotada: se conservan como mucho {@code appchat.avatares.maxPixeles}
+ * píxeles (un millón por defecto, unos 4 MB) y al superarlos se descartan las imágenes
+ * usadas hace más tiempo. Las imágenes remotas se guardan además en disco, en el directorio
+ * {@code appchat.avatares.directorio} ({@code ~/.appchat/avatares} por defecto), para no
+ * descargarlas de nuevo en la siguiente sesión.
+ * </p>
+ */
+public enum CacheAvatares {
+	INSTANCE;
+
+	private static final String IMAGEN_POR_DEFECTO = "phphotos/pfp.jpg";
+	private static final int TIEMPO_MAXIMO_DESCARGA_MS = 5000;
+	// propiedad de cliente de las etiquetas con la imagen que se espera mostrar en ellas
+	private static final String PROPIEDAD_CLAVE = "appchat.avatar";
+
+	private final long maxPixeles = Long.getLong("appchat.avatares.maxPixeles", 1_000_000L);
+	private final Path directorio = Paths.get(System.getProperty("appchat.avatares.directorio",
+			System.getProperty("user.home") + File.separator + ".appchat" + File.separator + "avatares"));
+
+	// en orden de uso: la primera es la usada hace más tiempo
+	private final LinkedHashMap<String, ImageIcon> imagenes = new LinkedHashMap<>(64, 0.75f, true);
+	private long pixeles;
+	// cargas en curso y quién espera cada una
+	private final Map<String, List<Consumer<ImageIcon>>> pendientes = new HashMap<>();
+	private final Map<Integer, ImageIcon> porDefecto = new HashMap<>();
+
+	private final ExecutorService cargador = Executors.newFixedThreadPool(2, tarea -> {
+		Thread hilo = new Thread(tarea, "carga-avatares");
+		hilo.setDaemon(true);
+		return hilo;
+	});
+
+	/**
+	 * Obtiene la imagen de perfil de una URL escalada a un tamaño.
+	 * @param url La URL o ruta local de la imagen; si es nula o vacía se usa la imagen por defecto.
+	 * @param tamano El lado, en píxeles, de la imagen escalada.
+	 * @param alCargar Recibe la imagen, en el hilo de eventos, si no estaba en la caché y se
+	 *                 ha tenido que cargar; puede ser nulo.
+	 * @return La imagen si ya estaba en la caché o, si no, la imagen por defecto mientras se carga.
+	 */
+	public ImageIcon getAvatar(String url, int tamano, Consumer<ImageIcon> alCargar) {
+		if (url == null || url.isEmpty()) return getPorDefecto(tamano);
+		String clave = clave(url, tamano);
+		synchronized (this) {
+			ImageIcon imagen = imagenes.get(clave);
+			if (imagen != null) return imagen;
+			List<Consumer<ImageIcon>> esperando = pendientes.get(clave);
+			if (esperando == null) {
+				esperando = new ArrayList<>();
+				pendientes.put(clave, esperando);
+				cargador.execute(() -> cargar(url, tamano, clave));
+			}
+			if (alCargar != null) esperando.add(alCargar);
+		}
+		return getPorDefecto(tamano);
+	}
+
+	/**
+	 * Muestra la imagen de perfil de una URL en una etiqueta: la de la caché, o la imagen por
+	 * defecto hasta que se cargue. Si antes de terminar la carga se pide otra imagen para la
+	 * misma etiqueta, la primera ya no se muestra.
+	 * @param etiqueta La etiqueta.
+	 * @param url La URL o ruta local de la imagen.
+	 * @param tamano El lado, en píxeles, de la imagen.
+	 */
+	public void mostrarEn(JLabel etiqueta, String url, int tamano) {
+		String clave = clave(url, tamano);
+		etiqueta.putClientProperty(PROPIEDAD_CLAVE, clave);
+		etiqueta.setIcon(getAvatar(url, tamano, imagen -> {
+			if (clave.equals(etiqueta.getClientProperty(PROPIEDAD_CLAVE))) etiqueta.setIcon(imagen);
+		}));
+	}
+
+	private void cargar(String url, int tamano, String clave) {
+		ImageIcon imagen;
+		try {
+			BufferedImage original = leer(url);
+			imagen = (original != null) ? new ImageIcon(escalar(original, tamano)) : getPorDefecto(tamano);
+			if (original == null) System.err.println("Formato de imagen no reconocido: " + url);
+		} catch (IOException | RuntimeException e) {
+			System.err.println("Error al cargar la imagen " + url + ": " + e.getMessage());
+			imagen = getPorDefecto(tamano); // no se reintenta en esta sesión
+		}
+		List<Consumer<ImageIcon>> esperando;
+		synchronized (this) {
+			guardar(clave, imagen, tamano);
+			esperando = pendientes.remove(clave);
+		}
+		ImageIcon cargada = imagen;
+		SwingUtilities.invokeLater(() -> esperando.forEach(alCargar -> alCargar.accept(cargada)));
+	}
+
+	private void guardar(String clave, ImageIcon imagen, int tamano) {
+		imagenes.put(clave, imagen);
+		pixeles += (long) tamano * tamano;
+		Iterator<Map.Entry<String, ImageIcon>> it = imagenes.entrySet().iterator();
+		while (pixeles > maxPixeles && imagenes.size() > 1) {
+			Map.Entry<String, ImageIcon> antigua = it.next();
+			pixeles -= (long) antigua.getValue().getIconWidth() * antigua.getValue().getIconHeight();
+			it.remove();
+		}
+	}
+
+	/**
+	 * Lee una imagen de una ruta local, o de una URL pasando por la caché en disco.
+	 * @return La imagen, o null si su formato no se reconoce.
+	 */
+	private BufferedImage leer(String url) throws IOException {
+		URL ubicacion;
+		try {
+			ubicacion = new URL(url);
+		} catch (MalformedURLException e) {
+			return ImageIO.read(new File(url)); // no es una URL: es una ruta local
+		}
+		if ("file".equals(ubicacion.getProtocol())) return ImageIO.read(ubicacion);
+
+		Path enDisco = directorio.resolve(resumen(url));
+		if (!Files.isRegularFile(enDisco)) {
+			Files.createDirectories(directorio);
+			URLConnection conexion = ubicacion.openConnection();
+			conexion.setConnectTimeout(TIEMPO_MAXIMO_DESCARGA_MS);
+			conexion.setReadTimeout(TIEMPO_MAXIMO_DESCARGA_MS);
+			// se descarga a un temporal para no dejar nunca una imagen a medias en la caché
+			Path temporal = Files.createTempFile(directorio, "descarga", ".tmp");
+			try (InputStream entrada = conexion.getInputStream()) {
+				Files.copy(entrada, temporal, StandardCopyOption.REPLACE_EXISTING);
+				Files.move(temporal, enDisco, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temporal);
+			}
+		}
+		return ImageIO.read(enDisco.toFile());
+	}
+
+	/**
+	 * Escala una imagen a un cuadrado del tamaño dado. Las reducciones grandes se hacen a
+	 * mitades sucesivas, que con interpolación bilineal dan el mismo resultado suave que
+	 * {@code Image.SCALE_SMOOTH} sin su coste.
+	 */
+	private static BufferedImage escalar(BufferedImage original, int tamano) {
+		BufferedImage actual = original;
+		int ancho = original.getWidth(), alto = original.getHeight();
+		do {
+			ancho = Math.max(tamano, ancho / 2);
+			alto = Math.max(tamano, alto / 2);
+			BufferedImage reducida = new BufferedImage(ancho, alto, BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g = reducida.createGraphics();
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.drawImage(actual, 0, 0, ancho, alto, null);
+			g.dispose();
+			actual = reducida;
+		} while (ancho > tamano || alto > tamano);
+		return actual;
+	}
+
+	private synchronized ImageIcon getPorDefecto(int tamano) {
+		return porDefecto.computeIfAbsent(tamano, t -> {
+			try {
+				BufferedImage original = ImageIO.read(new File(IMAGEN_POR_DEFECTO));
+				if (original != null) return new ImageIcon(escalar(original, t));
+			} catch (IOException e) {
+				System.err.println("Error al cargar la imagen por defecto: " + e.getMessage());
+			}
+			// sin imagen por defecto, un círculo gris
+			BufferedImage circulo = new BufferedImage(t, t, BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g = circulo.createGraphics();
+			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			g.setColor(Color.LIGHT_GRAY);
+			g.fill(new Ellipse2D.Float(0, 0, t, t));
+			g.dispose();
+			return new ImageIcon(circulo);
+		});
+	}
+
+	private static String clave(String url, int tamano) {
+		return tamano + "@" + url;
+	}
+
+	private static String resumen(String url) {
+		try {
+			StringBuilder sb = new StringBuilder();
+			for (byte b : MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8))) {
+				sb.append(String.format("%02x", b));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 no disponible", e); // todas las JVM lo incluyen
+		}
+	}
+}
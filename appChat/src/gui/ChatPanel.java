@@ -4,35 +4,104 @@ import tds.BubbleText;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Font;
+import java.awt.Point;
 import java.awt.Rectangle;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import javax.swing.Box;
 import javax.swing.BoxLayout;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JViewport;
 import javax.swing.Scrollable;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.event.ChangeListener;
 import controlador.Controlador;
 import dominio.Contacto;
+import dto.VistaMensaje;
 
 /**
  * Panel de chat que muestra los mensajes entre el usuario y un contacto.
  * Admite tanto mensajes de texto como emojis.
+ * <p>
+ * La vista está virtualizada: solo existen burbujas para los mensajes que se ven en el
+ * {@link JViewport} que contiene el panel, más {@value #MENSAJES_FUERA_DE_VISTA} por encima
+ * y por debajo. Del resto solo se guarda la altura (estimada hasta que se crea su burbuja),
+ * para colocar las burbujas y dimensionar la barra de desplazamiento. Al abrir un chat se
+ * consideran los {@value #MENSAJES_POR_PAGINA} mensajes más recientes, y al desplazarse
+ * cerca del principio se añade la página anterior sin mover lo que se está viendo. Así,
+ * abrir un chat cuesta lo mismo sea cual sea la longitud del historial, y solo se cargan de
+ * la persistencia los mensajes que llegan a mostrarse.
+ * </p>
+ * <p>
+ * Los mensajes se obtienen fuera del hilo de eventos, con un {@link SwingWorker} por cada
+ * tramo que se añade al chat, que los entrega en bloques de {@value #MENSAJES_POR_BLOQUE}
+ * empezando por los más recientes; cada bloque se pinta en cuanto llega. Mientras hay cargas
+ * en curso se muestra un aviso, y al cambiar de chat se cancelan las del anterior.
+ * </p>
  */
 public class ChatPanel extends JPanel implements Scrollable {
 
     private static final long serialVersionUID = 1L;
 
-    /** Formateador de fecha y hora para los mensajes */
-    private DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
+    /** Número de mensajes que se consideran al abrir un chat y que se añaden al llegar al principio */
+    private static final int MENSAJES_POR_PAGINA = 100;
+
+    /** Mensajes por encima y por debajo de los visibles para los que también se crean burbujas */
+    private static final int MENSAJES_FUERA_DE_VISTA = 10;
+
+    /** Número de mensajes que entrega de una vez una carga */
+    private static final int MENSAJES_POR_BLOQUE = 20;
+
+    /** Altura que se supone a un mensaje hasta medir su burbuja, si aún no se ha medido ninguna */
+    private static final int ALTURA_ESTIMADA_INICIAL = 60;
+
+    /** Contacto cuyo chat se está mostrando */
+    private Contacto contactoActual;
+
+    /** Posición en el historial del primer mensaje considerado; los anteriores se añaden al desplazarse */
+    private int inicio;
+
+    /** Número de mensajes del historial (el último considerado es el anterior a esta posición) */
+    private int total;
+
+    /** Altura de cada mensaje considerado, desde {@code inicio}; negativa mientras sea una estimación */
+    private int[] alturas = new int[0];
+
+    /** Datos de cada mensaje considerado, desde {@code inicio}; null mientras se cargan */
+    private VistaMensaje[] vistas = new VistaMensaje[0];
+
+    /** Coordenada y de cada mensaje considerado; la última posición es la altura total */
+    private int[] posiciones = new int[1];
+
+    /** Burbujas existentes, por posición del mensaje en el historial */
+    private final Map<Integer, BubbleText> burbujas = new HashMap<>();
+
+    /** Suma y número de las alturas medidas, para estimar las demás */
+    private long sumaAlturasMedidas;
+    private int alturasMedidas;
+
+    /** Ancho con el que se han medido las burbujas; si cambia, hay que volver a medirlas */
+    private int anchoMedido = -1;
+
+    /** Cargas de mensajes en curso del chat actual */
+    private final List<CargaMensajes> cargas = new ArrayList<>();
+    private final JLabel indicadorCarga = new JLabel("Cargando mensajes...");
+
+    private JViewport viewport;
+    private final ChangeListener oyenteViewport = e -> actualizarBurbujas();
+    private boolean actualizando;
 
     /**
      * Crea un nuevo panel de chat con un mensaje inicial.
      */
     public ChatPanel() {
-        setLayout(new BoxLayout(this, BoxLayout.Y_AXIS));
         setBackground(Color.WHITE);
         mostrarMensajeInicial();
     }
@@ -41,7 +110,11 @@ public class ChatPanel extends JPanel implements Scrollable {
      * Muestra un mensaje inicial cuando no se ha seleccionado ningún contacto.
      */
     public void mostrarMensajeInicial() {
+        cancelarCargas();
+        contactoActual = null;
+        burbujas.clear();
         removeAll();
+        setLayout(new BoxLayout(this, BoxLayout.Y_AXIS));
         add(Box.createVerticalGlue());
         JLabel lblInicio = new JLabel("Selecciona un contacto para iniciar el chat");
         lblInicio.setFont(new Font("Arial", Font.PLAIN, 16));
@@ -53,88 +126,360 @@ public class ChatPanel extends JPanel implements Scrollable {
     }
 
     /**
-     * Muestra el historial de mensajes del contacto seleccionado.
+     * Muestra los mensajes más recientes del contacto seleccionado. Los anteriores
+     * se cargan bajo demanda al desplazarse hacia arriba.
      * @param contacto El contacto con el que se desea mostrar la conversación.
      */
     public void mostrarChat(Contacto contacto) {
+        cancelarCargas();
+        contactoActual = contacto;
+        burbujas.clear();
         removeAll();
-        List<BubbleText> mensajes = convertirMensajesABurbujas(contacto);
-        mensajes.forEach(this::add);
-        add(Box.createVerticalGlue());
-        revalidate();
+        setLayout(null);
+        total = Controlador.INSTANCE.getNumeroMensajes(contacto);
+        inicio = Math.max(0, total - MENSAJES_POR_PAGINA);
+        alturas = new int[total - inicio];
+        Arrays.fill(alturas, -alturaEstimada());
+        vistas = new VistaMensaje[total - inicio];
+        recalcularPosiciones();
+        ajustarAltura();
+        cargar(inicio, total);
         repaint();
-        javax.swing.SwingUtilities.invokeLater(this::scrollToBottom);
+        SwingUtilities.invokeLater(this::scrollToBottom);
     }
 
     /**
-     * Envía y muestra un mensaje de texto en el chat.
-     * @param texto Texto del mensaje enviado.
+     * Muestra los mensajes añadidos al chat actual desde que se abrió (por ejemplo, uno
+     * recién enviado) y se desplaza hasta el último.
      */
-    public void enviarMensaje(String texto) {
-        String fecha = LocalDateTime.now().format(formatter);
-        BubbleText burbuja = new BubbleText(this, texto, 
-            new Color(220, 248, 198), // Color para mensajes enviados
-            "Tú - " + fecha, 
-            BubbleText.SENT, 
-            14
-        );
-        add(burbuja);
+    public void mostrarMensajesNuevos() {
+        if (contactoActual == null) return;
+        int nuevoTotal = Controlador.INSTANCE.getNumeroMensajes(contactoActual);
+        if (nuevoTotal <= total) return;
+        int considerados = alturas.length;
+        alturas = Arrays.copyOf(alturas, considerados + nuevoTotal - total);
+        Arrays.fill(alturas, considerados, alturas.length, -alturaEstimada());
+        vistas = Arrays.copyOf(vistas, alturas.length);
+        int anterior = total;
+        total = nuevoTotal;
+        recalcularPosiciones();
+        ajustarAltura();
+        cargar(anterior, nuevoTotal);
         scrollToBottom();
     }
 
     /**
-     * Envía y muestra un emoji en el chat.
-     * @param emojiId Identificador del emoji enviado.
+     * Añade a los mensajes considerados la página anterior a los actuales.
+     * @return La altura (estimada) que se ha añadido por encima.
      */
-    public void enviarEmoji(int emojiId) {
-        String fecha = LocalDateTime.now().format(formatter);
-        BubbleText burbuja = new BubbleText(this, emojiId, 
-            new Color(220, 248, 198), // Color para mensajes enviados
-            "Tú - " + fecha, 
-            BubbleText.SENT, 
-            24
-        );
-        add(burbuja);
-        scrollToBottom();
+    private int anadirPaginaAnterior() {
+        int nuevos = Math.min(MENSAJES_POR_PAGINA, inicio);
+        int alturaAnterior = alturaTotal();
+        int[] ampliadas = new int[alturas.length + nuevos];
+        Arrays.fill(ampliadas, 0, nuevos, -alturaEstimada());
+        System.arraycopy(alturas, 0, ampliadas, nuevos, alturas.length);
+        alturas = ampliadas;
+        VistaMensaje[] ampliadasVistas = new VistaMensaje[vistas.length + nuevos];
+        System.arraycopy(vistas, 0, ampliadasVistas, nuevos, vistas.length);
+        vistas = ampliadasVistas;
+        inicio -= nuevos;
+        recalcularPosiciones();
+        cargar(inicio, inicio + nuevos);
+        return alturaTotal() - alturaAnterior;
     }
 
     /**
-     * Convierte los mensajes de un contacto en burbujas de texto o emoji para el chat.
-     * @param contacto Contacto cuyos mensajes se van a mostrar.
-     * @return Lista de objetos BubbleText representando los mensajes.
+     * Ajusta las burbujas a la parte visible del chat: crea las que entran en ella (más el
+     * margen), elimina las que han salido y, si se está cerca del principio, añade la página
+     * anterior. Al corregir la altura estimada de los mensajes por encima de lo visible, o al
+     * añadir una página, desplaza la vista para que lo que se ve no se mueva.
      */
-    private List<BubbleText> convertirMensajesABurbujas(Contacto contacto) {
-        List<Object> textoMensajes = Controlador.INSTANCE.getContenidoMensajes(contacto);
-        List<String> infoMensajes = Controlador.INSTANCE.getInfoMensajes(contacto);
-        List<BubbleText> burbujas = textoMensajes.stream()
-            .map(texto -> {
-                String[] info = infoMensajes.get(textoMensajes.indexOf(texto)).split(utils.Utils.SEPARATOR);
-                String fechaHora = info[0];
-                Integer tipo = Integer.parseInt(info[1]);
-
-                Color color = tipo.equals(BubbleText.SENT) ? new Color(220, 248, 198) : Color.LIGHT_GRAY;
-                String nombre = tipo.equals(BubbleText.SENT) ? "Tú" : contacto.getNombre();
-                int tipoBurbuja = tipo.equals(BubbleText.SENT) ? BubbleText.SENT : BubbleText.RECEIVED;
-
-                if (texto instanceof Integer) {
-                    return new BubbleText(this, (Integer) texto, color, nombre + " - " + fechaHora, tipoBurbuja, 24);
-                } else {
-                    return new BubbleText(this, (String) texto, color, nombre + " - " + fechaHora, tipoBurbuja, 14);
+    private void actualizarBurbujas() {
+        if (contactoActual == null || viewport == null || actualizando) return;
+        Rectangle vista = viewport.getViewRect();
+        if (vista.height <= 0) return;
+        actualizando = true;
+        try {
+            boolean alFinal = vista.y + vista.height >= alturaTotal();
+            int desplazamiento = 0;
+            if (vista.y < vista.height && inicio > 0) {
+                desplazamiento += anadirPaginaAnterior();
+            }
+            int arriba = vista.y + desplazamiento;
+            int primero = Math.max(0, indiceEn(arriba) - MENSAJES_FUERA_DE_VISTA);
+            int ultimo = Math.min(alturas.length - 1, indiceEn(arriba + vista.height) + MENSAJES_FUERA_DE_VISTA);
+
+            Iterator<Map.Entry<Integer, BubbleText>> it = burbujas.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Integer, BubbleText> entrada = it.next();
+                int i = entrada.getKey() - inicio;
+                if (i < primero || i > ultimo) {
+                    remove(entrada.getValue());
+                    it.remove();
                 }
-            })
-            .collect(Collectors.toList());
+            }
+            // solo se crean las de los mensajes ya cargados; las demás, al llegar su bloque
+            boolean alturasCambiadas = false;
+            for (int desde = primero; desde <= ultimo; desde++) {
+                if (burbujas.containsKey(inicio + desde) || vistas[desde] == null) continue;
+                int hasta = desde + 1;
+                while (hasta <= ultimo && !burbujas.containsKey(inicio + hasta) && vistas[hasta] != null) hasta++;
+                BubbleText[] nuevas = crearBurbujas(desde, hasta);
+                for (int j = 0; j < nuevas.length; j++) {
+                    int i = desde + j;
+                    add(nuevas[j]);
+                    burbujas.put(inicio + i, nuevas[j]);
+                    int medida = Math.max(1, nuevas[j].getPreferredSize().height);
+                    if (alturas[i] < 0) {
+                        sumaAlturasMedidas += medida;
+                        alturasMedidas++;
+                    }
+                    if (Math.abs(alturas[i]) != medida) {
+                        if (posiciones[i] < arriba) desplazamiento += medida - Math.abs(alturas[i]);
+                        alturasCambiadas = true;
+                    }
+                    alturas[i] = medida;
+                }
+                desde = hasta;
+            }
+            if (alturasCambiadas) recalcularPosiciones();
+            ajustarAltura();
+            doLayout();
+            repaint();
+
+            if (alFinal) {
+                desplazarA(alturaTotal() - vista.height);
+            } else if (desplazamiento != 0) {
+                desplazarA(vista.y + desplazamiento);
+            }
+            if (alturasCambiadas || viewport.getViewPosition().y != arriba) {
+                // lo visible ya no es lo calculado: se completan las burbujas que falten
+                SwingUtilities.invokeLater(this::actualizarBurbujas);
+            }
+        } finally {
+            actualizando = false;
+        }
+    }
+
+    /**
+     * Convierte un tramo de mensajes ya cargados del contacto actual en burbujas de texto o emoji.
+     * @param desde Posición (desde {@code inicio}) del primer mensaje (incluida).
+     * @param hasta Posición (desde {@code inicio}) del último mensaje (excluida).
+     * @return Las burbujas, en el orden de los mensajes.
+     */
+    private BubbleText[] crearBurbujas(int desde, int hasta) {
+        BubbleText[] burbujas = new BubbleText[hasta - desde];
+        for (int i = 0; i < burbujas.length; i++) {
+            VistaMensaje mensaje = vistas[desde + i];
+            Color color = mensaje.isEnviado() ? new Color(220, 248, 198) : Color.LIGHT_GRAY;
+            int tipoBurbuja = mensaje.isEnviado() ? BubbleText.SENT : BubbleText.RECEIVED;
+            if (mensaje.isEmoticono()) {
+                burbujas[i] = new BubbleText(this, mensaje.getEmoticono(), color, mensaje.getCabecera(), tipoBurbuja, 24);
+            } else {
+                burbujas[i] = new BubbleText(this, mensaje.getTexto(), color, mensaje.getCabecera(), tipoBurbuja, 14);
+            }
+        }
         return burbujas;
     }
 
+    /**
+     * Empieza a cargar en segundo plano un tramo de mensajes del contacto actual.
+     * @param desde Posición en el historial del primer mensaje (incluida).
+     * @param hasta Posición en el historial del último mensaje (excluida).
+     */
+    private void cargar(int desde, int hasta) {
+        if (desde >= hasta) return;
+        CargaMensajes carga = new CargaMensajes(contactoActual, desde, hasta);
+        cargas.add(carga);
+        actualizarIndicador();
+        carga.execute();
+    }
+
+    /**
+     * Cancela las cargas en curso. No se interrumpen los hilos, para no cortar una llamada a
+     * la persistencia a medias: cada carga se detiene antes de pedir su siguiente bloque, y
+     * lo que entregue después se descarta.
+     */
+    private void cancelarCargas() {
+        List<CargaMensajes> canceladas = new ArrayList<>(cargas);
+        cargas.clear();
+        canceladas.forEach(carga -> carga.cancel(false));
+        actualizarIndicador();
+    }
+
+    /**
+     * Guarda los mensajes de un bloque recién cargado y pinta los que estén a la vista.
+     */
+    private void recibirBloque(Bloque bloque) {
+        for (int j = 0; j < bloque.vistas.size(); j++) {
+            int i = bloque.desde + j - inicio;
+            if (i >= 0 && i < vistas.length) vistas[i] = bloque.vistas.get(j);
+        }
+        actualizarBurbujas();
+    }
+
+    private void actualizarIndicador() {
+        boolean cargando = contactoActual != null && !cargas.isEmpty();
+        if (cargando && indicadorCarga.getParent() != this) {
+            add(indicadorCarga, 0); // el primer componente se pinta encima de las burbujas
+            doLayout();
+        } else if (!cargando && indicadorCarga.getParent() == this) {
+            remove(indicadorCarga);
+        }
+        repaint();
+    }
+
+    /**
+     * Mensajes cargados de un tramo del historial.
+     */
+    private static final class Bloque {
+        final int desde;
+        final List<VistaMensaje> vistas;
+
+        Bloque(int desde, List<VistaMensaje> vistas) {
+            this.desde = desde;
+            this.vistas = vistas;
+        }
+    }
+
+    /**
+     * Carga de un tramo de mensajes fuera del hilo de eventos, por bloques y empezando por los
+     * más recientes. Lo que entrega una carga cancelada, o de un chat que ya no se muestra, se
+     * descarta.
+     */
+    private final class CargaMensajes extends SwingWorker<Void, Bloque> {
+        private final Contacto contacto;
+        private final int desde, hasta;
+
+        CargaMensajes(Contacto contacto, int desde, int hasta) {
+            this.contacto = contacto;
+            this.desde = desde;
+            this.hasta = hasta;
+        }
+
+        @Override
+        protected Void doInBackground() {
+            for (int fin = hasta; fin > desde && !isCancelled(); fin -= MENSAJES_POR_BLOQUE) {
+                int inicioBloque = Math.max(desde, fin - MENSAJES_POR_BLOQUE);
+                publish(new Bloque(inicioBloque, Controlador.INSTANCE.getVistaMensajes(contacto, inicioBloque, fin)));
+            }
+            return null;
+        }
+
+        @Override
+        protected void process(List<Bloque> bloques) {
+            if (isCancelled() || contacto != contactoActual) return;
+            bloques.forEach(ChatPanel.this::recibirBloque);
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled() || !cargas.remove(this)) return;
+            actualizarIndicador();
+            try {
+                get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                System.err.println("Error al cargar los mensajes de " + contacto.getNombre() + ": " + e.getCause());
+            }
+        }
+    }
+
+    private int alturaEstimada() {
+        return alturasMedidas == 0 ? ALTURA_ESTIMADA_INICIAL : (int) (sumaAlturasMedidas / alturasMedidas);
+    }
+
+    private int alturaTotal() {
+        return posiciones[posiciones.length - 1];
+    }
+
+    private void recalcularPosiciones() {
+        posiciones = new int[alturas.length + 1];
+        for (int i = 0; i < alturas.length; i++) {
+            posiciones[i + 1] = posiciones[i] + Math.abs(alturas[i]);
+        }
+    }
+
+    /**
+     * @return La posición (desde {@code inicio}) del mensaje que ocupa la coordenada y dada.
+     */
+    private int indiceEn(int y) {
+        int i = Arrays.binarySearch(posiciones, y);
+        if (i < 0) i = -i - 2;
+        return Math.max(0, Math.min(alturas.length - 1, i));
+    }
+
+    /**
+     * Da al panel su nueva altura de inmediato, para que la vista pueda desplazarse a
+     * cualquier punto de ella sin esperar a que se vuelva a validar.
+     */
+    private void ajustarAltura() {
+        if (getHeight() != alturaTotal()) {
+            setSize(getWidth(), alturaTotal());
+        }
+        revalidate();
+    }
+
+    private void desplazarA(int y) {
+        int maximo = Math.max(0, alturaTotal() - viewport.getExtentSize().height);
+        viewport.setViewPosition(new Point(viewport.getViewPosition().x, Math.max(0, Math.min(y, maximo))));
+    }
+
     /**
      * Desplaza automáticamente el panel hasta el último mensaje.
      */
     private void scrollToBottom() {
-        revalidate();
-        repaint();
-        Rectangle visibleRect = getVisibleRect();
-        visibleRect.y = getHeight() - visibleRect.height;
-        scrollRectToVisible(visibleRect);
+        if (viewport == null) return;
+        desplazarA(alturaTotal());
+        actualizarBurbujas();
+    }
+
+    @Override
+    public void doLayout() {
+        if (contactoActual == null) {
+            super.doLayout();
+            return;
+        }
+        if (getWidth() != anchoMedido) {
+            // el texto de las burbujas se reparte en líneas según el ancho: hay que volver a medirlas
+            anchoMedido = getWidth();
+            burbujas.clear();
+            removeAll();
+            actualizarIndicador();
+            for (int i = 0; i < alturas.length; i++) alturas[i] = -Math.abs(alturas[i]);
+            SwingUtilities.invokeLater(this::actualizarBurbujas);
+            return;
+        }
+        for (Map.Entry<Integer, BubbleText> entrada : burbujas.entrySet()) {
+            int i = entrada.getKey() - inicio;
+            entrada.getValue().setBounds(0, posiciones[i], getWidth(), Math.abs(alturas[i]));
+        }
+        if (indicadorCarga.getParent() == this) {
+            Rectangle vista = getVisibleRect();
+            Dimension tamano = indicadorCarga.getPreferredSize();
+            indicadorCarga.setBounds(vista.x + (vista.width - tamano.width) / 2, vista.y + 4, tamano.width, tamano.height);
+        }
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        if (contactoActual == null) return super.getPreferredSize();
+        return new Dimension(getWidth(), alturaTotal());
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        viewport = (JViewport) SwingUtilities.getAncestorOfClass(JViewport.class, this);
+        if (viewport != null) viewport.addChangeListener(oyenteViewport);
+    }
+
+    @Override
+    public void removeNotify() {
+        if (viewport != null) viewport.removeChangeListener(oyenteViewport);
+        viewport = null;
+        super.removeNotify();
     }
 
     // Métodos del interfaz Scrollable
@@ -4,7 +4,6 @@ import javax.swing.*;
 import controlador.Controlador;
 import dominio.Contacto;
 import java.awt.*;
-import java.net.URL;
 import java.text.SimpleDateFormat;
 
 /**
@@ -74,9 +73,8 @@ public class InfoUsuario {
         String URLimagenContacto = mostrarUsuarioActual
                 ? Controlador.INSTANCE.getURLImagenUsuario()
                 : Controlador.INSTANCE.getURLImagenContacto(contacto);
-        ImageIcon icono = new ImageIcon(URLimagenContacto);
-        Image imgEscalada = getImagenContactoEscalada(URLimagenContacto, icono, 120);
-        JLabel profileImage = new JLabel(new ImageIcon(imgEscalada));
+        JLabel profileImage = new JLabel();
+        CacheAvatares.INSTANCE.mostrarEn(profileImage, URLimagenContacto, 120);
         profileImage.setBorder(BorderFactory.createEmptyBorder(10, 0, 20, 20));
         topPanel.add(profileImage, BorderLayout.WEST);
 
@@ -195,27 +193,4 @@ public class InfoUsuario {
         dialog.setLocationRelativeTo(null);
         dialog.setVisible(true);
     }
-
-    /**
-     * Carga una imagen de perfil escalada a un tamaño específico.
-     * 
-     * @param URLimagenContacto URL de la imagen del contacto.
-     * @param icono Icono base.
-     * @param size Tamaño deseado para la imagen.
-     * @return Imagen escalada.
-     */
-    private Image getImagenContactoEscalada(String URLimagenContacto, ImageIcon icono, int size) {
-        try {
-            if (URLimagenContacto != null && !URLimagenContacto.isEmpty()) {
-                URL url = new URL(URLimagenContacto);
-                icono = new ImageIcon(url);
-            } else {
-                icono = new ImageIcon("phphotos/pfp.jpg");
-            }
-            return icono.getImage().getScaledInstance(size, size, Image.SCALE_SMOOTH);
-        } catch (Exception e) {
-            System.err.println("Error al cargar la imagen del contacto: " + e.getMessage());
-            return null;
-        }
-    }
 }
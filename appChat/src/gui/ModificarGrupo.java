@@ -9,7 +9,10 @@ import javax.swing.*;
 import javax.swing.border.TitledBorder;
 import java.awt.*;
 import java.awt.event.ActionEvent;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Ventana para modificar un grupo existente, permitiendo cambiar su nombre y miembros.
@@ -167,10 +170,10 @@ public class ModificarGrupo {
         nombreGrupoField.setText(grupoOriginal.getNombre());
 
         // Obtener todos los contactos individuales del usuario
-        LinkedList<ContactoIndividual> todosContactos = Controlador.INSTANCE.getContactosIndividualesUsuario();
+        List<ContactoIndividual> todosContactos = Controlador.INSTANCE.getContactosIndividualesUsuario();
         
         // Obtener los miembros actuales del grupo
-        LinkedList<Contacto> miembros = Controlador.INSTANCE.getMiembrosGrupo(grupoOriginal);
+        Set<Contacto> miembros = new HashSet<>(Controlador.INSTANCE.getMiembrosGrupo(grupoOriginal));
 
         // Separar los contactos que están en el grupo de los que no
         for (ContactoIndividual contacto : todosContactos) {
@@ -233,7 +236,7 @@ public class ModificarGrupo {
         }
 
         // Recopilar los nuevos miembros del grupo
-        LinkedList<ContactoIndividual> nuevosMiembros = new LinkedList<>();
+        List<ContactoIndividual> nuevosMiembros = new ArrayList<>();
         for (int i = 0; i < modeloGrupo.size(); i++) {
             nuevosMiembros.add(modeloGrupo.getElementAt(i));
         }
@@ -6,7 +6,8 @@ import javax.swing.*;
 import javax.swing.border.TitledBorder;
 import java.awt.*;
 import java.awt.event.ActionEvent;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Ventana principal para la gestión de contactos individuales y la creación de grupos.
@@ -174,7 +175,7 @@ public class VentanaContactos {
 	 * Carga los contactos individuales desde el controlador y actualiza el modelo de la lista de contactos disponibles.
 	 */
 	private void cargarContactos() {
-		LinkedList<ContactoIndividual> contactos = Controlador.INSTANCE.getContactosIndividualesUsuario();
+		List<ContactoIndividual> contactos = Controlador.INSTANCE.getContactosIndividualesUsuario();
 		modeloContactos.clear(); // Limpiar el modelo actual
 		
 		if (contactos != null && !contactos.isEmpty()) {
@@ -251,7 +252,7 @@ public class VentanaContactos {
 			}
 
 			// Recopilar los miembros del grupo
-			LinkedList<ContactoIndividual> miembros = new LinkedList<>();
+			List<ContactoIndividual> miembros = new ArrayList<>();
 			for (int i = 0; i < modeloGrupo.size(); i++) {
 				miembros.add(modeloGrupo.getElementAt(i));
 			}
@@ -8,7 +8,7 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.io.File;
-import java.util.LinkedList;
+import java.util.List;
 
 /**
  * Ventana que muestra los beneficios de la suscripción Premium,
@@ -153,7 +153,7 @@ public class VentanaPremiumActivo {
 	 * y los añade al ComboBox para su selección.
 	 */
 	private void cargarContactos() {
-		LinkedList<Contacto> contactos = Controlador.INSTANCE.getContactosUsuario(); // Obtener contactos
+		List<Contacto> contactos = Controlador.INSTANCE.getContactosUsuario(); // Obtener contactos
 		DefaultComboBoxModel<String> model = new DefaultComboBoxModel<>(); // Modelo para el ComboBox
 
 		if (contactos != null && !contactos.isEmpty()) {
@@ -3,6 +3,7 @@ package gui;
 import tds.BubbleText;
 import java.awt.BorderLayout;
 import java.awt.Color;
+import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.Font;
@@ -13,8 +14,15 @@ import java.awt.Insets;
 import java.awt.event.ActionEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.net.URL;
-import java.util.LinkedList;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 import javax.swing.BorderFactory;
 import javax.swing.Box;
@@ -29,9 +37,12 @@ import javax.swing.JScrollPane;
 import javax.swing.JSeparator;
 import javax.swing.JTextField;
 import javax.swing.SwingConstants;
-import javax.swing.Timer;
+import javax.swing.SwingUtilities;
+import javax.swing.border.Border;
 
 import controlador.Controlador;
+import controlador.EventoCambio;
+import controlador.OyenteCambios;
 import dominio.Contacto;
 
 /**
@@ -41,10 +52,21 @@ import dominio.Contacto;
  */
 public class VentanaPrincipal {
 
+	/** Lado, en píxeles, de las imágenes de perfil de la ventana. */
+	private static final int TAMANO_AVATAR = 40;
+	/** Aspecto de las filas de la lista de contactos, compartido por todas. */
+	private static final Font FUENTE_NOMBRE = new Font("Arial", Font.PLAIN, 14);
+	private static final Font FUENTE_ULTIMO_MENSAJE = new Font("Arial", Font.PLAIN, 11);
+	private static final Color FONDO_FILA_RESALTADA = new Color(245, 245, 245);
+	private static final Border BORDE_FILA = BorderFactory.createCompoundBorder(
+			BorderFactory.createMatteBorder(0, 0, 1, 0, new Color(240, 240, 240)), // Borde inferior ligero
+			BorderFactory.createEmptyBorder(10, 10, 10, 10)); // Margen interior
+	private static final Border BORDE_BOTON_EDITAR = BorderFactory.createEmptyBorder(5, 10, 5, 10);
+
 	/** El marco principal de la ventana. */
 	private JFrame frame;
 	/** Lista de contactos del usuario actual. */
-	private LinkedList<Contacto> contactos;
+	private List<Contacto> contactos;
 	/** Panel izquierdo que contiene la lista de contactos. */
 	private JPanel leftPanel;
 	/** Panel central que muestra el área de chat. */
@@ -67,18 +89,32 @@ public class VentanaPrincipal {
 	private JButton emojiButton;
 	/** Botón para gestionar la suscripción premium. */
 	private JButton premiumButton;
+	/** Fila de la lista de cada contacto mostrado, para actualizarla cuando cambie. */
+	private final Map<Contacto, FilaContacto> filas = new IdentityHashMap<>();
+	/** Aviso que ocupa la lista cuando no hay contactos. */
+	private final JLabel avisoSinContactos = new JLabel("No tienes contactos");
+	/** Pegamento que empuja las filas hacia arriba; siempre es el último componente de la lista. */
+	private final Component pegamentoContactos = Box.createVerticalGlue();
+	/** Oyente de los cambios que publica el controlador. */
+	private final OyenteCambios oyenteCambios = this::aplicarCambio;
 
 	/**
 	 * Constructor de la clase VentanaPrincipal.
-	 * Inicializa la interfaz gráfica, carga los contactos y inicia el timer de actualización.
+	 * Inicializa la interfaz gráfica, carga los contactos y se registra para recibir los cambios.
 	 */
 	public VentanaPrincipal() {
 		BubbleText.noZoom(); // Desactivar zoom automático para HiDPI
 		initialize();
 		loadContacts(); // Cargar contactos al iniciar
 
-		// Iniciar timer para actualización periódica
-		iniciarTimerActualizacionContactos(2000); // 2000 ms = 2 segundos
+		// La lista se actualiza con los cambios que publica el controlador, sin sondeo periódico
+		Controlador.INSTANCE.addOyenteCambios(oyenteCambios);
+		frame.addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosed(WindowEvent e) {
+				Controlador.INSTANCE.removeOyenteCambios(oyenteCambios);
+			}
+		});
 	}
 
 	/**
@@ -90,69 +126,54 @@ public class VentanaPrincipal {
 	}
 
 	/**
-	 * Inicia un timer que actualiza periódicamente la lista de contactos
-	 * y el estado del botón premium.
-	 * @param delayMillis El retardo en milisegundos entre cada actualización.
+	 * Aplica en la interfaz un cambio publicado por el controlador, actualizando solo lo
+	 * afectado: la fila del contacto, la cabecera del chat si es el seleccionado o el botón premium.
+	 * @param evento El cambio.
 	 */
-	private void iniciarTimerActualizacionContactos(int delayMillis) {
-		Timer timer = new Timer(delayMillis, e -> {
-		    // Esto se ejecutará periódicamente en el EDT (Event Dispatch Thread)
-		    
-		    // 1. Actualizar la lista de contactos en el panel izquierdo (comportamiento existente)
-		    loadContacts(); 
-
-		    // 2. Actualizar el estado del botón premium (comportamiento existente)
-		    if (Controlador.INSTANCE.isUsuarioPremium()) {
-		        premiumButton.setText("Premium Activo");
-		        premiumButton.setForeground(new Color(0, 102, 204)); // Azul
-		    } else {
-		        premiumButton.setText("Activar Premium");
-		        premiumButton.setForeground(Color.RED); // Rojo
-		    }
-
-		    // 3. Nueva lógica: Actualizar la cabecera del chat si el contacto seleccionado ha cambiado
-		    if (this.contactoSeleccionado != null) {
-		        // Obtener la versión más reciente del contacto desde el usuario actual en el controlador
-		        Contacto contactoDesdeControlador = null;
-		        if (Controlador.INSTANCE.getUsuarioActual() != null) { // Asegurarse que el usuario actual no es null
-		             contactoDesdeControlador = Controlador.INSTANCE.getUsuarioActual().getContactoConId(this.contactoSeleccionado.getId()); //
-		        }
-
-		        if (contactoDesdeControlador != null) {
-		            // Comprobar si el nombre ha cambiado para actualizar la etiqueta
-		            if (!this.currentContactLabel.getText().equals(contactoDesdeControlador.getNombre())) {
-		                this.currentContactLabel.setText(contactoDesdeControlador.getNombre());
-		            }
-		            
-		            // Siempre actualizar la imagen por si hubiera cambiado o para asegurar consistencia
-		            // (Incluso si solo el nombre cambia, la referencia al objeto podría, y es bueno refrescar)
-		            ImageIcon icono = null; // getImagenContactoEscalada maneja la imagen por defecto si es necesario
-		            String urlImagen = Controlador.INSTANCE.getURLImagenContacto(contactoDesdeControlador);
-		            Image imgEscalada = getImagenContactoEscalada(urlImagen, icono); //
-		            this.currentContactImage.setIcon(new ImageIcon(imgEscalada));
-		            
-		            // Actualizar la referencia local al objeto Contacto más fresco.
-		            // Esto es vital para que las operaciones subsecuentes (ej. enviar mensaje)
-		            // se hagan sobre el objeto con el estado más actual.
-		            this.contactoSeleccionado = contactoDesdeControlador;
-
-		        } else {
-		            // El contacto seleccionado anteriormente fue eliminado o ya no es accesible
-		            this.contactoSeleccionado = null;
-		            this.currentContactLabel.setText("Selecciona un contacto");
-		            
-		            // Intentar cargar una imagen por defecto o limpiar la actual
-		            Image imgEscaladaDefecto = getImagenContactoEscalada("", null); // Usar URL vacía para obtener la de por defecto
-		            this.currentContactImage.setIcon(new ImageIcon(imgEscaladaDefecto));
-		            
-		            this.chatPanel.mostrarMensajeInicial(); //
-		        }
-		    }
-		    // Los componentes de Swing suelen repintarse solos tras setText/setIcon.
-		    // Si fuera necesario, se podría añadir frame.revalidate(); frame.repaint();
-		});
-		timer.setRepeats(true); // Para que se repita indefinidamente
-		timer.start(); // Iniciar el timer
+	private void aplicarCambio(EventoCambio evento) {
+		if (!SwingUtilities.isEventDispatchThread()) {
+			SwingUtilities.invokeLater(() -> aplicarCambio(evento));
+			return;
+		}
+		Contacto contacto = evento.getContacto();
+		switch (evento.getTipo()) {
+		case CONTACTO_ANADIDO:
+			anadirFila(contacto);
+			break;
+		case CONTACTO_MODIFICADO:
+			FilaContacto fila = filas.get(contacto);
+			if (fila != null) fila.actualizarDatos(contacto);
+			if (contacto == contactoSeleccionado) {
+				currentContactLabel.setText(contacto.getNombre());
+				String urlImagen = Controlador.INSTANCE.getURLImagenContacto(contacto);
+				CacheAvatares.INSTANCE.mostrarEn(currentContactImage, urlImagen, TAMANO_AVATAR);
+			}
+			break;
+		case MENSAJE_ANADIDO:
+			FilaContacto conMensaje = filas.get(contacto);
+			if (conMensaje != null) {
+				conMensaje.actualizarUltimoMensaje(contacto);
+			} else {
+				anadirFila(contacto);
+			}
+			break;
+		case PREMIUM_CAMBIADO:
+			actualizarBotonPremium();
+			break;
+		}
+	}
+
+	/**
+	 * Muestra el estado de la suscripción premium en su botón.
+	 */
+	private void actualizarBotonPremium() {
+		if (Controlador.INSTANCE.isUsuarioPremium()) {
+			premiumButton.setText("Premium Activo");
+			premiumButton.setForeground(new Color(0, 102, 204)); // Azul
+		} else {
+			premiumButton.setText("Activar Premium");
+			premiumButton.setForeground(Color.RED); // Rojo
+		}
 	}
 
 	/**
@@ -258,13 +279,7 @@ public class VentanaPrincipal {
 		// Botón premium
 		premiumButton = new JButton("Premium");
 		// Configurar texto y color inicial según el estado premium
-		if (Controlador.INSTANCE.isUsuarioPremium()) {
-			premiumButton.setText("Premium Activo");
-			premiumButton.setForeground(new Color(0, 102, 204)); // Azul
-		} else {
-			premiumButton.setText("Activar Premium");
-			premiumButton.setForeground(Color.RED); // Rojo
-		}
+		actualizarBotonPremium();
 		premiumButton.addActionListener(e -> {
 			// Acción: abrir ventana premium (activo o para activar)
 			if (Controlador.INSTANCE.isUsuarioPremium()) {
@@ -343,12 +358,11 @@ public class VentanaPrincipal {
 		userNameLabel.setFont(new Font("Arial", Font.BOLD, 12));
 
 		// Cargar imagen de perfil y convertirla en botón
-		ImageIcon icono = null;
 		String URLimagenUsuario = Controlador.INSTANCE.getURLImagenUsuario(); // Obtener URL del controlador
-		Image imgEscalada = getImagenContactoEscalada(URLimagenUsuario, icono); // Escalar imagen
 
-		// Crear botón con la imagen de perfil
-		JButton profileButton = new JButton(new ImageIcon(imgEscalada));
+		// Crear botón con la imagen de perfil (la por defecto hasta que se cargue)
+		JButton profileButton = new JButton();
+		profileButton.setIcon(CacheAvatares.INSTANCE.getAvatar(URLimagenUsuario, TAMANO_AVATAR, profileButton::setIcon));
 		profileButton.setBorder(BorderFactory.createEmptyBorder()); // Sin borde
 		profileButton.setContentAreaFilled(false); // Fondo transparente
 		profileButton.addActionListener(e -> {
@@ -372,7 +386,7 @@ public class VentanaPrincipal {
 		panel.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5)); // Margen interior
 
 		// Añadir un "pegamento" para evitar que los contactos se expandan y se peguen arriba
-		panel.add(Box.createVerticalGlue());
+		panel.add(pegamentoContactos);
 		return panel;
 	}
 
@@ -475,10 +489,8 @@ public class VentanaPrincipal {
 
 		// Actualizar panel de información del contacto
 		currentContactLabel.setText(contacto.getNombre()); // Mostrar nombre
-		ImageIcon icono = null;
 		String URLimagenContacto = Controlador.INSTANCE.getURLImagenContacto(contacto); // Obtener URL de imagen
-		Image imgEscalada = getImagenContactoEscalada(URLimagenContacto, icono); // Escalar imagen
-		currentContactImage.setIcon(new ImageIcon(imgEscalada)); // Mostrar imagen
+		CacheAvatares.INSTANCE.mostrarEn(currentContactImage, URLimagenContacto, TAMANO_AVATAR); // Mostrar imagen
 
 		// Cargar mensajes del chat para el contacto seleccionado
 		cargarMensajes(contacto);
@@ -514,7 +526,7 @@ public class VentanaPrincipal {
 		// Enviar el mensaje a través del controlador
 		Controlador.INSTANCE.enviarMensaje(contactoSeleccionado.getId(), contenido);
 		// Actualizar la interfaz de chat para mostrar el mensaje enviado
-		chatPanel.enviarMensaje(contenido);
+		chatPanel.mostrarMensajesNuevos();
 		messageField.setText(""); // Limpiar el campo de texto
 	}
 
@@ -563,50 +575,127 @@ public class VentanaPrincipal {
 	 * @param emojiId El ID del emoji a enviar.
 	 */
 	private void enviarEmoji(int emojiId) {
-		chatPanel.enviarEmoji(emojiId); // Mostrar el emoji en la interfaz de chat
 		Controlador.INSTANCE.enviarEmoji(contactoSeleccionado.getId(), emojiId); // Enviar a través del controlador
+		chatPanel.mostrarMensajesNuevos(); // Mostrar el emoji en la interfaz de chat
 	}
 
 	/**
-	 * Carga la lista de contactos del usuario actual desde el controlador
-	 * y actualiza el panel izquierdo para mostrarlos.
+	 * Sincroniza la lista de contactos con la del controlador aplicando solo las diferencias:
+	 * quita las filas de los contactos que ya no están, crea las de los nuevos, mueve las que
+	 * han cambiado de posición y actualiza nombre e imagen si han cambiado. Las filas de los
+	 * contactos que siguen se reutilizan, sin volver a crear sus componentes ni a pedir su
+	 * último mensaje (que se mantiene al día con los cambios que publica el controlador).
 	 */
 	private void loadContacts() {
 		contactos = Controlador.INSTANCE.getContactosUsuario(); // Obtener contactos del controlador
-		leftPanel.removeAll(); // Limpiar el panel actual
+		boolean cambiada = false;
+
+		// Quitar las filas de los contactos que ya no están
+		Set<Contacto> actuales = Collections.newSetFromMap(new IdentityHashMap<>());
+		actuales.addAll(contactos);
+		Iterator<Map.Entry<Contacto, FilaContacto>> it = filas.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Contacto, FilaContacto> entrada = it.next();
+			if (!actuales.contains(entrada.getKey())) {
+				leftPanel.remove(entrada.getValue().panel);
+				it.remove();
+				cambiada = true;
+			}
+		}
 
-		if (contactos.isEmpty()) {
-			// Mostrar mensaje si no hay contactos
-			JLabel emptyLabel = new JLabel("No tienes contactos");
-			emptyLabel.setHorizontalAlignment(SwingConstants.CENTER);
-			leftPanel.add(emptyLabel);
-		} else {
-			// Crear y añadir un panel para cada contacto
-			for (Contacto contacto : contactos) {
-				JPanel contactPanel = createContactPanel(contacto);
-				leftPanel.add(contactPanel);
+		// Aviso si no hay contactos
+		if (contactos.isEmpty() != (avisoSinContactos.getParent() == leftPanel)) {
+			if (contactos.isEmpty()) {
+				avisoSinContactos.setHorizontalAlignment(SwingConstants.CENTER);
+				leftPanel.add(avisoSinContactos, 0);
+			} else {
+				leftPanel.remove(avisoSinContactos);
+			}
+			cambiada = true;
+		}
+
+		// Crear las filas nuevas y colocar cada una en la posición de su contacto
+		for (int i = 0; i < contactos.size(); i++) {
+			Contacto contacto = contactos.get(i);
+			FilaContacto fila = filas.get(contacto);
+			if (fila == null) {
+				fila = createContactPanel(contacto);
+				filas.put(contacto, fila);
+				leftPanel.add(fila.panel, i);
+				cambiada = true;
+			} else {
+				fila.actualizarDatos(contacto);
+				if (leftPanel.getComponent(i) != fila.panel) {
+					leftPanel.setComponentZOrder(fila.panel, i); // se mueve sin quitarla de la lista
+					cambiada = true;
+				}
 			}
 		}
 
 		// Añadir pegamento al final para empujar los contactos hacia arriba
-		leftPanel.add(Box.createVerticalGlue());
+		if (pegamentoContactos.getParent() != leftPanel) {
+			leftPanel.add(pegamentoContactos);
+			cambiada = true;
+		}
 
+		if (cambiada) {
+			leftPanel.revalidate(); // Revalidar layout
+			leftPanel.repaint(); // Repintar
+		}
+	}
 
-		leftPanel.revalidate(); // Revalidar layout
-		leftPanel.repaint(); // Repintar
+	/**
+	 * Añade la fila de un contacto nuevo en su posición, sin rehacer las demás.
+	 * @param contacto El contacto.
+	 */
+	private void anadirFila(Contacto contacto) {
+		if (contacto == null || filas.containsKey(contacto)) return;
+		loadContacts();
 	}
 
 	/**
-	 * Crea un JPanel que representa un contacto individual en la lista de contactos.
+	 * Fila de la lista de contactos, con las etiquetas que cambian con el contacto.
+	 */
+	private final class FilaContacto {
+		final JPanel panel;
+		final JLabel imageLabel;
+		final JLabel nameLabel;
+		final JLabel lastMsgLabel;
+		private String urlImagen; // la mostrada en imageLabel
+
+		FilaContacto(JPanel panel, JLabel imageLabel, JLabel nameLabel, JLabel lastMsgLabel, String urlImagen) {
+			this.panel = panel;
+			this.imageLabel = imageLabel;
+			this.nameLabel = nameLabel;
+			this.lastMsgLabel = lastMsgLabel;
+			this.urlImagen = urlImagen;
+		}
+
+		void actualizarDatos(Contacto contacto) {
+			String nombre = contacto.getNombre();
+			if (!nombre.equals(nameLabel.getText())) nameLabel.setText(nombre);
+			String URLimagenContacto = Controlador.INSTANCE.getURLImagenContacto(contacto);
+			if (!Objects.equals(URLimagenContacto, urlImagen)) {
+				urlImagen = URLimagenContacto;
+				CacheAvatares.INSTANCE.mostrarEn(imageLabel, URLimagenContacto, TAMANO_AVATAR);
+			}
+		}
+
+		void actualizarUltimoMensaje(Contacto contacto) {
+			String ultimoMensaje = Controlador.INSTANCE.getUltimoMensaje(contacto);
+			if (!ultimoMensaje.equals(lastMsgLabel.getText())) lastMsgLabel.setText(ultimoMensaje);
+		}
+	}
+
+	/**
+	 * Crea la fila que representa un contacto en la lista de contactos.
 	 * Incluye la imagen, nombre, último mensaje y un botón de edición.
 	 * @param contacto El objeto Contacto a representar.
-	 * @return Un JPanel configurado para mostrar el contacto.
+	 * @return La fila configurada para mostrar el contacto.
 	 */
-	private JPanel createContactPanel(Contacto contacto) {
+	private FilaContacto createContactPanel(Contacto contacto) {
 		JPanel panel = new JPanel(new BorderLayout(10, 0)); // Layout para el panel del contacto
-		panel.setBorder(BorderFactory.createCompoundBorder(
-				BorderFactory.createMatteBorder(0, 0, 1, 0, new Color(240, 240, 240)), // Borde inferior ligero
-				BorderFactory.createEmptyBorder(10, 10, 10, 10))); // Margen interior
+		panel.setBorder(BORDE_FILA); // Borde inferior ligero y margen interior
 		panel.setBackground(Color.WHITE); // Fondo blanco
 
 		// Establecer tamaño fijo
@@ -617,7 +706,7 @@ public class VentanaPrincipal {
 		panel.addMouseListener(new MouseAdapter() {
 			@Override
 			public void mouseEntered(MouseEvent e) {
-				panel.setBackground(new Color(245, 245, 245)); // Cambiar color al pasar el ratón
+				panel.setBackground(FONDO_FILA_RESALTADA); // Cambiar color al pasar el ratón
 			}
 
 			@Override
@@ -633,18 +722,16 @@ public class VentanaPrincipal {
 
 		// Imagen del contacto
 		JLabel imageLabel = new JLabel();
-		ImageIcon icono = null;
 		String URLimagenContacto = Controlador.INSTANCE.getURLImagenContacto(contacto); // Obtener URL de imagen
-		Image imgEscalada = getImagenContactoEscalada(URLimagenContacto, icono); // Escalar imagen
-		imageLabel.setIcon(new ImageIcon(imgEscalada)); // Mostrar imagen
+		CacheAvatares.INSTANCE.mostrarEn(imageLabel, URLimagenContacto, TAMANO_AVATAR); // Imagen en caché, o la por defecto mientras se carga
 
 		// Nombre del contacto
 		JLabel nameLabel = new JLabel(contacto.getNombre());
-		nameLabel.setFont(new Font("Arial", Font.PLAIN, 14));
+		nameLabel.setFont(FUENTE_NOMBRE);
 
 		// Último mensaje (obtenido del controlador)
 		JLabel lastMsgLabel = new JLabel(Controlador.INSTANCE.getUltimoMensaje(contacto));
-		lastMsgLabel.setFont(new Font("Arial", Font.PLAIN, 11));
+		lastMsgLabel.setFont(FUENTE_ULTIMO_MENSAJE);
 		lastMsgLabel.setForeground(Color.GRAY); // Color gris para el último mensaje
 
 		// Panel para el nombre y el último mensaje (layout vertical)
@@ -656,8 +743,8 @@ public class VentanaPrincipal {
 
 		// Botón de edición (texto "Editar" o icono de tres puntos)
 		JButton editButton = new JButton("Editar"); // Texto del botón
-		editButton.setFont(new Font("Arial", Font.PLAIN, 14));
-		editButton.setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
+		editButton.setFont(FUENTE_NOMBRE);
+		editButton.setBorder(BORDE_BOTON_EDITAR);
 		editButton.setContentAreaFilled(false);
 		editButton.setFocusPainted(false);
 		editButton.setOpaque(false);
@@ -681,35 +768,6 @@ public class VentanaPrincipal {
 		panel.add(textPanel, BorderLayout.CENTER); // Texto en el centro
 		panel.add(buttonPanel, BorderLayout.EAST); // Botón de edición a la derecha
 
-		return panel;
-	}
-
-	/**
-	 * Carga una imagen desde una URL o una ruta local, la escala a un tamaño fijo y la devuelve.
-	 * Si la URL es nula o vacía, o si hay un error, carga una imagen de placeholder.
-	 * @param URLimagenContacto La URL o ruta local de la imagen del contacto.
-	 * @param icono Un ImageIcon (puede ser nulo, se usará para crear uno nuevo).
-	 * @return La imagen escalada.
-	 */
-	private Image getImagenContactoEscalada(String URLimagenContacto, ImageIcon icono) {
-		try {
-			if (URLimagenContacto != null && !URLimagenContacto.isEmpty()) {
-				// Intentar cargar desde URL
-				URL url = new URL(URLimagenContacto);
-				icono = new ImageIcon(url);
-			} else {
-				// Cargar imagen por defecto si no hay URL
-				icono = new ImageIcon("phphotos/pfp.jpg"); // Ruta de la imagen por defecto
-			}
-			// Escalar la imagen
-			Image imgEscalada = icono.getImage().getScaledInstance(40, 40, Image.SCALE_SMOOTH);
-
-			return imgEscalada;
-		} catch (Exception e) {
-			System.err.println("Error al cargar la imagen del contacto: " + e.getMessage());
-			// Devolver una imagen de placeholder o null en caso de error
-			// Aquí se podría devolver un ImageIcon con un icono genérico si se prefiere
-			return new ImageIcon("phphotos/pfp.jpg").getImage().getScaledInstance(40, 40, Image.SCALE_SMOOTH); // Fallback a imagen por defecto
-		}
+		return new FilaContacto(panel, imageLabel, nameLabel, lastMsgLabel, URLimagenContacto);
 	}
 }
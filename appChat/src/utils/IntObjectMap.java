@@ -0,0 +1,222 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Mapa de claves {@code int} a objetos con direccionamiento abierto (sondeo lineal).
+ * <p>
+ * A diferencia de {@code HashMap<Integer, V>}, no crea un {@link Integer} por cada acceso
+ * ni un nodo por cada entrada: las claves y los valores se guardan en dos arrays paralelos.
+ * Las eliminaciones desplazan hacia atrás las entradas siguientes del mismo grupo, por lo
+ * que no se dejan marcas de borrado que degraden las búsquedas.
+ * </p>
+ * <p>
+ * No es seguro para hilos. No admite valores nulos.
+ * </p>
+ *
+ * @param <V> El tipo de los valores.
+ */
+public class IntObjectMap<V> {
+
+	private static final int CAPACIDAD_INICIAL = 16;
+	private static final float FACTOR_CARGA = 0.5f;
+
+	// la clave 0 marca las celdas libres; su valor, si existe, se guarda aparte
+	private int[] claves;
+	private Object[] valores;
+	private Object valorCero;
+	private int tamano;
+	private int umbral;
+	private int mascara;
+
+	/**
+	 * Crea un mapa vacío.
+	 */
+	public IntObjectMap() {
+		this(CAPACIDAD_INICIAL);
+	}
+
+	/**
+	 * Crea un mapa vacío dimensionado para {@code esperados} entradas sin redimensionarse.
+	 * @param esperados Número de entradas esperadas.
+	 */
+	public IntObjectMap(int esperados) {
+		int capacidad = CAPACIDAD_INICIAL;
+		while (capacidad * FACTOR_CARGA < esperados) capacidad <<= 1;
+		inicializar(capacidad);
+	}
+
+	/**
+	 * Recupera el valor asociado a una clave.
+	 * @param clave La clave.
+	 * @return El valor asociado, o null si la clave no está en el mapa.
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(int clave) {
+		if (clave == 0) return (V) valorCero;
+		int i = indice(clave);
+		int k;
+		while ((k = claves[i]) != 0) {
+			if (k == clave) return (V) valores[i];
+			i = (i + 1) & mascara;
+		}
+		return null;
+	}
+
+	/**
+	 * Comprueba si el mapa contiene una clave.
+	 * @param clave La clave.
+	 * @return true si la clave está en el mapa.
+	 */
+	public boolean containsKey(int clave) {
+		return get(clave) != null;
+	}
+
+	/**
+	 * Asocia un valor a una clave, reemplazando el anterior si lo hubiera.
+	 * @param clave La clave.
+	 * @param valor El valor. No debe ser nulo.
+	 * @return El valor anterior, o null si la clave no estaba en el mapa.
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(int clave, V valor) {
+		if (valor == null) {
+			throw new NullPointerException("IntObjectMap no admite valores nulos");
+		}
+		if (clave == 0) {
+			V anterior = (V) valorCero;
+			valorCero = valor;
+			if (anterior == null) tamano++;
+			return anterior;
+		}
+		int i = indice(clave);
+		int k;
+		while ((k = claves[i]) != 0) {
+			if (k == clave) {
+				V anterior = (V) valores[i];
+				valores[i] = valor;
+				return anterior;
+			}
+			i = (i + 1) & mascara;
+		}
+		claves[i] = clave;
+		valores[i] = valor;
+		if (++tamano > umbral) redimensionar(claves.length << 1);
+		return null;
+	}
+
+	/**
+	 * Elimina una clave del mapa.
+	 * @param clave La clave.
+	 * @return El valor que tenía asociado, o null si la clave no estaba en el mapa.
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(int clave) {
+		if (clave == 0) {
+			V anterior = (V) valorCero;
+			if (anterior != null) {
+				valorCero = null;
+				tamano--;
+			}
+			return anterior;
+		}
+		int i = indice(clave);
+		int k;
+		while ((k = claves[i]) != 0) {
+			if (k == clave) {
+				V anterior = (V) valores[i];
+				desplazar(i);
+				tamano--;
+				return anterior;
+			}
+			i = (i + 1) & mascara;
+		}
+		return null;
+	}
+
+	/**
+	 * @return El número de entradas del mapa.
+	 */
+	public int size() {
+		return tamano;
+	}
+
+	/**
+	 * @return true si el mapa no tiene entradas.
+	 */
+	public boolean isEmpty() {
+		return tamano == 0;
+	}
+
+	/**
+	 * Elimina todas las entradas del mapa, conservando su capacidad.
+	 */
+	public void clear() {
+		Arrays.fill(claves, 0);
+		Arrays.fill(valores, null);
+		valorCero = null;
+		tamano = 0;
+	}
+
+	/**
+	 * Aplica una acción a cada valor del mapa, sin un orden determinado.
+	 * @param accion La acción a aplicar.
+	 */
+	@SuppressWarnings("unchecked")
+	public void forEachValue(Consumer<? super V> accion) {
+		if (valorCero != null) accion.accept((V) valorCero);
+		for (int i = 0; i < claves.length; i++) {
+			if (claves[i] != 0) accion.accept((V) valores[i]);
+		}
+	}
+
+	private int indice(int clave) {
+		int h = clave * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mascara;
+	}
+
+	/**
+	 * Libera la celda {@code libre} desplazando hacia ella las entradas posteriores del mismo
+	 * grupo que dejarían de ser alcanzables por sondeo lineal.
+	 */
+	private void desplazar(int libre) {
+		int i = libre;
+		while (true) {
+			i = (i + 1) & mascara;
+			int k = claves[i];
+			if (k == 0) break;
+			int ideal = indice(k);
+			// la entrada en i puede ocupar la celda libre si esta queda entre su posición ideal e i
+			if (((i - ideal) & mascara) >= ((i - libre) & mascara)) {
+				claves[libre] = k;
+				valores[libre] = valores[i];
+				libre = i;
+			}
+		}
+		claves[libre] = 0;
+		valores[libre] = null;
+	}
+
+	private void inicializar(int capacidad) {
+		claves = new int[capacidad];
+		valores = new Object[capacidad];
+		mascara = capacidad - 1;
+		umbral = (int) (capacidad * FACTOR_CARGA);
+	}
+
+	private void redimensionar(int capacidad) {
+		int[] clavesAnt = claves;
+		Object[] valoresAnt = valores;
+		inicializar(capacidad);
+		for (int j = 0; j < clavesAnt.length; j++) {
+			int k = clavesAnt[j];
+			if (k != 0) {
+				int i = indice(k);
+				while (claves[i] != 0) i = (i + 1) & mascara;
+				claves[i] = k;
+				valores[i] = valoresAnt[j];
+			}
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import controlador.Controlador;
+import dao.FactoriaDAO;
+import dominio.ContactoIndividual;
+import dto.VistaMensaje;
+import tds.BubbleText;
+
+/**
+ * Coste de preparar los mensajes de un chat para pintarlos, según la longitud del historial.
+ * <p>
+ * {@code vistaMensajes} usa {@link Controlador#getVistaMensajes}, que recorre el historial una
+ * vez; {@code listasParalelas} reproduce el método anterior del chat, que pedía el contenido
+ * y la información de los mensajes en dos listas y buscaba cada mensaje con {@code indexOf}.
+ * Con {@code mensajes} cuatro veces mayor, el primero debe tardar unas cuatro veces más y el
+ * segundo unas dieciséis. Los mensajes se cargan en la preparación, y se usan las DAOs en
+ * memoria para no depender del servidor de persistencia.
+ * Ejecución: {@code java -jar target/benchmarks.jar ChatBenchmark}
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatBenchmark {
+
+	@Param({ "1000", "4000", "16000" })
+	public int mensajes;
+
+	private ContactoIndividual contacto;
+
+	@Setup
+	public void preparar() {
+		System.setProperty(FactoriaDAO.PROPIEDAD_TIPO, FactoriaDAO.DAO_MEMORIA);
+		Random random = new Random(42);
+		contacto = new ContactoIndividual("Contacto");
+		for (int i = 0; i < mensajes; i++) {
+			int tipo = random.nextBoolean() ? BubbleText.SENT : BubbleText.RECEIVED;
+			if (random.nextInt(10) == 0) {
+				contacto.addMensaje(random.nextInt(BubbleText.MAXICONO), tipo);
+			} else {
+				contacto.addMensaje(GeneradorDatos.palabra(random) + " " + i, tipo);
+			}
+		}
+	}
+
+	@Benchmark
+	public List<VistaMensaje> vistaMensajes() {
+		return Controlador.INSTANCE.getVistaMensajes(contacto, 0, mensajes);
+	}
+
+	@Benchmark
+	public List<String> listasParalelas() {
+		List<Object> contenidos = contacto.getTextoMensajesEnviados();
+		List<String> infos = contacto.getInfoMensajesEnviados();
+		List<String> cabeceras = new ArrayList<>(contenidos.size());
+		for (Object contenido : contenidos) {
+			String[] info = infos.get(contenidos.indexOf(contenido)).split(utils.Utils.SEPARATOR);
+			String nombre = Integer.parseInt(info[1]) == BubbleText.SENT ? "Tú" : contacto.getNombre();
+			cabeceras.add(nombre + " - " + info[0]);
+		}
+		return cabeceras;
+	}
+}
@@ -0,0 +1,89 @@
+package benchmark;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import dao.TDSUsuarioDAO;
+import dominio.Contacto;
+import dominio.HistorialMensajes;
+import dominio.Usuario;
+import dto.MensajeContextualizado;
+
+/**
+ * Rutas críticas del dominio sobre un usuario cargado de la persistencia: la búsqueda de
+ * mensajes por texto y el último mensaje de cada contacto, que se calcula al pintar la
+ * lista de contactos.
+ * <p>
+ * Los mensajes se cargan en la preparación, de modo que se mide el recorrido del dominio y
+ * no la persistencia (para esta, ver {@code dao.DAOBenchmark}). Para ello cada historial debe
+ * caber entero en memoria: {@code mensajesPorContacto} no supera las
+ * {@link HistorialMensajes#TAMANO_PAGINA} × {@link HistorialMensajes#MAX_PAGINAS_RESIDENTES}
+ * (512) filas que mantiene cargadas un historial; con más, las páginas descartadas se volverían
+ * a pedir a la DAO durante la medida.
+ * Ejecución: {@code java -jar target/benchmarks.jar DominioBenchmark -prof gc}
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DominioBenchmark {
+
+	@Param({ "50" })
+	public int usuarios;
+
+	@Param({ "10", "40" })
+	public int contactosPorUsuario;
+
+	@Param({ "100", "500" })
+	public int mensajesPorContacto;
+
+	private Usuario usuario;
+	private List<Contacto> contactos;
+	private String[] textos;
+	private int siguienteTexto;
+
+	@Setup
+	public void preparar() {
+		if (mensajesPorContacto > HistorialMensajes.TAMANO_PAGINA * HistorialMensajes.MAX_PAGINAS_RESIDENTES) {
+			throw new IllegalArgumentException("El historial no cabe en memoria: " + mensajesPorContacto + " mensajes");
+		}
+		GeneradorDatos.Datos datos = GeneradorDatos.generar(usuarios, contactosPorUsuario, mensajesPorContacto, 42);
+		usuario = TDSUsuarioDAO.getInstance().getUsuario(datos.idsUsuarios[0]);
+		contactos = usuario.getContactos();
+		// se recorre una vez el historial completo para cargar todos los mensajes
+		contactos.forEach(c -> c.getMensajesEnviados().forEach(m -> { }));
+		Random random = new Random(7);
+		textos = new String[64];
+		for (int i = 0; i < textos.length; i++) textos[i] = GeneradorDatos.palabra(random);
+	}
+
+	@Benchmark
+	public List<MensajeContextualizado> buscarMisMensajes() {
+		siguienteTexto = (siguienteTexto + 1) % textos.length;
+		return usuario.buscarMisMensajes(textos[siguienteTexto], null, null);
+	}
+
+	@Benchmark
+	public void getUltimoMensaje(Blackhole bh) {
+		for (Contacto contacto : contactos) {
+			bh.consume(contacto.getUltimoMensaje());
+		}
+	}
+}
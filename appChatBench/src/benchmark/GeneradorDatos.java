@@ -0,0 +1,135 @@
+package benchmark;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import dao.PoolDAO;
+import dao.ServicioPersistenciaMemoria;
+import dao.TDSContactoIndividualDAO;
+import dao.TDSFactoriaDAO;
+import dao.TDSUsuarioDAO;
+import dominio.ContactoIndividual;
+import dominio.Usuario;
+import tds.BubbleText;
+
+/**
+ * Genera datos sintéticos (usuarios × contactos × mensajes) para los benchmarks y los
+ * guarda mediante los DAO de TDS sobre un {@link ServicioPersistenciaMemoria}.
+ * <p>
+ * Al terminar se vacían las cachés de {@link PoolDAO}, de modo que los benchmarks parten de
+ * la persistencia y no de los objetos creados aquí. Con la misma semilla se generan
+ * siempre los mismos datos.
+ * </p>
+ */
+public final class GeneradorDatos {
+
+	private static final String[] PALABRAS = {
+			"hola", "mañana", "cena", "reunión", "clase", "examen", "fútbol", "viaje", "foto",
+			"película", "trabajo", "café", "lunes", "playa", "cumpleaños", "proyecto", "tren",
+			"libro", "música", "perro", "compra", "gimnasio", "concierto", "noche", "vale"
+	};
+
+	private static ServicioPersistenciaMemoria servicio;
+
+	private GeneradorDatos() {
+	}
+
+	/**
+	 * Identificadores de los datos generados.
+	 */
+	public static final class Datos {
+		/** Identificadores de los usuarios, en orden de registro. */
+		public final int[] idsUsuarios;
+		/** Identificadores de todos los mensajes registrados. */
+		public final int[] idsMensajes;
+
+		Datos(int[] idsUsuarios, int[] idsMensajes) {
+			this.idsUsuarios = idsUsuarios;
+			this.idsMensajes = idsMensajes;
+		}
+	}
+
+	/**
+	 * Genera y registra los datos.
+	 * @param usuarios Número de usuarios.
+	 * @param contactosPorUsuario Contactos individuales de cada usuario (como mucho, {@code usuarios - 1}).
+	 * @param mensajesPorContacto Mensajes de cada conversación.
+	 * @param semilla Semilla de los datos aleatorios.
+	 * @return Los identificadores de los datos generados.
+	 */
+	public static Datos generar(int usuarios, int contactosPorUsuario, int mensajesPorContacto, long semilla) {
+		instalarServicio();
+		Random random = new Random(semilla);
+		TDSUsuarioDAO usuarioDAO = TDSUsuarioDAO.getInstance();
+		TDSContactoIndividualDAO contactoDAO = TDSContactoIndividualDAO.getInstance();
+
+		// primero los usuarios, sin contactos, para que todos tengan id al enlazarlos
+		List<Usuario> registrados = new ArrayList<>(usuarios);
+		for (int i = 0; i < usuarios; i++) {
+			Usuario usuario = new Usuario.Builder("Usuario" + i, "Apellido" + i, "usuario" + i + "@appchat.es",
+					String.valueOf(600_000_000 + i), "clave" + i, LocalDate.of(1990, 1, 1).plusDays(i % 3650))
+					.build();
+			usuarioDAO.registrarUsuario(usuario);
+			registrados.add(usuario);
+		}
+
+		int contactos = Math.min(contactosPorUsuario, usuarios - 1);
+		List<Integer> idsMensajes = new ArrayList<>(usuarios * contactos * mensajesPorContacto);
+		for (int i = 0; i < usuarios; i++) {
+			Usuario usuario = registrados.get(i);
+			for (int c = 1; c <= contactos; c++) {
+				Usuario otro = registrados.get((i + c) % usuarios);
+				ContactoIndividual contacto = (ContactoIndividual) usuario.addContactoIndividual(otro, otro.getMovil());
+				for (int m = 0; m < mensajesPorContacto; m++) {
+					contacto.addMensaje(frase(random), (m % 2 == 0) ? BubbleText.SENT : BubbleText.RECEIVED);
+				}
+				contactoDAO.registrarContactoIndividual(contacto);
+				for (int id : contacto.getIdsMensajes()) idsMensajes.add(id);
+			}
+			usuarioDAO.updateUsuario(usuario);
+		}
+
+		vaciarCaches();
+		System.out.println("Datos generados: " + servicio.getNumeroEntidades() + " entidades");
+		return new Datos(registrados.stream().mapToInt(Usuario::getId).toArray(),
+				idsMensajes.stream().mapToInt(Integer::intValue).toArray());
+	}
+
+	/**
+	 * @param random Generador aleatorio.
+	 * @return Una de las palabras con las que se componen los mensajes.
+	 */
+	public static String palabra(Random random) {
+		return PALABRAS[random.nextInt(PALABRAS.length)];
+	}
+
+	/**
+	 * Vacía las cachés de entidades de {@link PoolDAO}.
+	 */
+	public static void vaciarCaches() {
+		PoolDAO.INSTANCE.getUsuarios().clear();
+		PoolDAO.INSTANCE.getContactos().clear();
+		PoolDAO.INSTANCE.getGrupos().clear();
+		PoolDAO.INSTANCE.getMensajes().clear();
+	}
+
+	private static synchronized void instalarServicio() {
+		// los DAO de TDS fijan su servicio al crearse: se instala uno solo por JVM
+		if (servicio == null) {
+			servicio = new ServicioPersistenciaMemoria();
+			TDSFactoriaDAO.setServicioPersistencia(servicio);
+		}
+	}
+
+	private static String frase(Random random) {
+		StringBuilder sb = new StringBuilder();
+		int palabras = 3 + random.nextInt(8);
+		for (int i = 0; i < palabras; i++) {
+			if (i > 0) sb.append(' ');
+			sb.append(palabra(random));
+		}
+		return sb.toString();
+	}
+}
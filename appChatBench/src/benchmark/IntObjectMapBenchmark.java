@@ -0,0 +1,103 @@
+package benchmark;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import utils.IntObjectMap;
+
+/**
+ * Compara {@link IntObjectMap} con el {@code HashMap<Integer, Object>} que usaba el pool
+ * de DAOs, en las dos cargas de trabajo del pool: la carga inicial de un usuario
+ * (inserción de muchos ids consecutivos) y las búsquedas posteriores por id.
+ * <p>
+ * Ejecución: {@code java -jar target/benchmarks.jar IntObjectMapBenchmark -prof gc}
+ * (el perfilador {@code gc} muestra las asignaciones por operación).
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IntObjectMapBenchmark {
+
+	@Param({ "1000", "100000" })
+	public int entradas;
+
+	private int[] ids;
+	private int[] busquedas;
+	private Object valor;
+
+	private HashMap<Integer, Object> hashMap;
+	private IntObjectMap<Object> intObjectMap;
+
+	@Setup
+	public void preparar() {
+		Random random = new Random(42);
+		valor = new Object();
+		// los ids de la persistencia son consecutivos, con huecos entre entidades de otros tipos
+		ids = new int[entradas];
+		int id = 1;
+		for (int i = 0; i < entradas; i++) {
+			id += 1 + random.nextInt(4);
+			ids[i] = id;
+		}
+		busquedas = new int[entradas];
+		for (int i = 0; i < entradas; i++) {
+			busquedas[i] = ids[random.nextInt(entradas)];
+		}
+		hashMap = new HashMap<>();
+		intObjectMap = new IntObjectMap<>();
+		for (int k : ids) {
+			hashMap.put(k, valor);
+			intObjectMap.put(k, valor);
+		}
+	}
+
+	@Benchmark
+	public HashMap<Integer, Object> cargaHashMap() {
+		HashMap<Integer, Object> mapa = new HashMap<>();
+		for (int k : ids) {
+			mapa.put(k, valor);
+		}
+		return mapa;
+	}
+
+	@Benchmark
+	public IntObjectMap<Object> cargaIntObjectMap() {
+		IntObjectMap<Object> mapa = new IntObjectMap<>();
+		for (int k : ids) {
+			mapa.put(k, valor);
+		}
+		return mapa;
+	}
+
+	@Benchmark
+	public void busquedaHashMap(Blackhole bh) {
+		for (int k : busquedas) {
+			bh.consume(hashMap.get(k));
+		}
+	}
+
+	@Benchmark
+	public void busquedaIntObjectMap(Blackhole bh) {
+		for (int k : busquedas) {
+			bh.consume(intObjectMap.get(k));
+		}
+	}
+}
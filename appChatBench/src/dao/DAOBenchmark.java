@@ -0,0 +1,100 @@
+package dao;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import benchmark.GeneradorDatos;
+import dominio.Contacto;
+import dominio.Mensaje;
+import dominio.Usuario;
+
+/**
+ * Rutas críticas de los DAO de TDS sobre un {@link ServicioPersistenciaMemoria}: la recuperación
+ * de un mensaje con y sin caché, la carga en frío de un usuario con su grafo de contactos y la
+ * serialización de los códigos de contactos que hace cada actualización de un usuario.
+ * <p>
+ * Está en el paquete {@code dao} para acceder a {@link TDSUsuarioDAO#obtenerCodigosContactos(List)}.
+ * Ejecución: {@code java -jar target/benchmarks.jar DAOBenchmark -prof gc}
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DAOBenchmark {
+
+	@Param({ "200" })
+	public int usuarios;
+
+	@Param({ "10", "100" })
+	public int contactosPorUsuario;
+
+	@Param({ "20" })
+	public int mensajesPorContacto;
+
+	private GeneradorDatos.Datos datos;
+	private List<Contacto> contactos;
+	private int siguienteMensaje;
+	private int siguienteUsuario;
+
+	/**
+	 * Vacía las cachés del pool antes de cada invocación, para medir las lecturas en frío.
+	 */
+	@State(Scope.Thread)
+	public static class CacheFria {
+		@Setup(Level.Invocation)
+		public void vaciar() {
+			GeneradorDatos.vaciarCaches();
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void preparar() {
+		datos = GeneradorDatos.generar(usuarios, contactosPorUsuario, mensajesPorContacto, 42);
+		Usuario usuario = TDSUsuarioDAO.getInstance().getUsuario(datos.idsUsuarios[0]);
+		contactos = usuario.getContactos();
+	}
+
+	@Benchmark
+	public Mensaje getMensajeEnCache() {
+		return TDSMensajeDAO.getInstance().getMensaje(siguienteMensaje());
+	}
+
+	@Benchmark
+	public Mensaje getMensajeSinCache(CacheFria cache) {
+		return TDSMensajeDAO.getInstance().getMensaje(siguienteMensaje());
+	}
+
+	@Benchmark
+	public Usuario getUsuarioSinCache(CacheFria cache) {
+		int[] ids = datos.idsUsuarios;
+		siguienteUsuario = (siguienteUsuario + 1) % ids.length;
+		return TDSUsuarioDAO.getInstance().getUsuario(ids[siguienteUsuario]);
+	}
+
+	@Benchmark
+	public String obtenerCodigosContactos() {
+		return TDSUsuarioDAO.obtenerCodigosContactos(contactos);
+	}
+
+	private int siguienteMensaje() {
+		int[] ids = datos.idsMensajes;
+		siguienteMensaje = (siguienteMensaje + 1) % ids.length;
+		return ids[siguienteMensaje];
+	}
+}